@@ -1,6 +1,7 @@
 package io.norberg.http2;
 
 import static io.norberg.http2.Hpack.writeDynamicTableSizeUpdate;
+import static io.norberg.http2.Http2Error.NO_ERROR;
 import static io.norberg.http2.Http2Error.PROTOCOL_ERROR;
 import static io.norberg.http2.Http2Exception.connectionError;
 import static io.norberg.http2.Http2Flags.ACK;
@@ -13,13 +14,21 @@ import static io.norberg.http2.Http2Protocol.DEFAULT_INITIAL_WINDOW_SIZE;
 import static io.norberg.http2.Http2Protocol.DEFAULT_MAX_FRAME_SIZE;
 import static io.norberg.http2.Http2WireFormat.FRAME_HEADER_LENGTH;
 import static io.norberg.http2.Http2WireFormat.FRAME_HEADER_SIZE;
+import static io.norberg.http2.Http2WireFormat.PING_FRAME_LENGTH;
 import static io.norberg.http2.Http2WireFormat.PING_FRAME_PAYLOAD_LENGTH;
+import static io.norberg.http2.Http2WireFormat.RST_STREAM_FRAME_LENGTH;
+import static io.norberg.http2.Http2WireFormat.SETTING_ENTRY_LENGTH;
 import static io.norberg.http2.Http2WireFormat.WINDOW_UPDATE_FRAME_LENGTH;
 import static io.norberg.http2.Http2WireFormat.writeFrameHeader;
+import static io.norberg.http2.Http2WireFormat.writePing;
+import static io.norberg.http2.Http2WireFormat.writeSettings;
+import static io.norberg.http2.Http2WireFormat.writeRstStream;
 import static io.norberg.http2.Http2WireFormat.writeWindowUpdate;
 import static java.lang.Integer.max;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 import com.spotify.netty.util.BatchFlusher;
 import io.netty.buffer.ByteBuf;
@@ -34,25 +43,48 @@ import io.netty.handler.codec.ByteToMessageDecoder;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.util.AsciiString;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.internal.PlatformDependent;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.function.Predicate;
 import org.slf4j.Logger;
 
 abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTION, STREAM>, STREAM extends Http2Stream> {
 
+  // DATA frame payloads at least this large are passed through to the channel instead of copied into the write buffer
+  static final int DEFAULT_ZERO_COPY_WRITE_THRESHOLD = 8 * 1024;
+
+  static final long DEFAULT_PING_TIMEOUT_NANOS = SECONDS.toNanos(10);
+
+  // The round trip time of a connection that has not been pinged yet
+  static final long UNKNOWN_RTT = -1;
+
   private final Logger log;
 
-  private final HpackEncoder headerEncoder = new HpackEncoder(DEFAULT_HEADER_TABLE_SIZE);
+  private final HpackEncoder headerEncoder;
 
   private final IntObjectHashMap<STREAM> streams = new IntObjectHashMap<>();
-  private final FlowController<ChannelHandlerContext, STREAM> flowController = new FlowController<>();
+  private final FlowController<ChannelHandlerContext, STREAM> flowController;
+  private final Http2Metrics metrics;
 
   private final SslContext sslContext;
   private final Channel channel;
   private final BatchFlusher flusher;
 
+  // Messages sent from outside the event loop, written by the event loop in batches
+  private final Queue<Submission> submissions = PlatformDependent.newMpscQueue();
+  private final AtomicBoolean submissionsScheduled = new AtomicBoolean();
+  private final Runnable writeSubmissions = this::writeSubmissions;
+
   private final Http2Settings localSettings = new Http2Settings();
 
   private final CompletableFuture<CONNECTION> connectFuture = new CompletableFuture<>();
@@ -62,15 +94,33 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
   private long remoteMaxConcurrentStreams = Long.MAX_VALUE;
   private long remoteMaxHeaderListSize = Long.MAX_VALUE;
 
-  private final int localInitialStreamWindow;
-  private final int localMaxConnectionWindow;
   private final int maxHeaderEncoderTableSize;
+  private final int zeroCopyWriteThreshold;
 
-  private final int localConnectionWindowUpdateThreshold;
-  private final int localStreamWindowUpdateThreshold;
+  // Grown up to the max adaptive window when adaptive windows are enabled
+  private int localInitialStreamWindow;
+  private int localMaxConnectionWindow;
+  private int localConnectionWindowUpdateThreshold;
+  private int localStreamWindowUpdateThreshold;
+
+  // Adaptive windows, disabled if zero. The bytes received while a PING is outstanding estimate the bandwidth-delay
+  // product.
+  private final int maxAdaptiveWindow;
+  private final Http2HeaderCache headerCache;
+  private long bytesSincePing;
 
   private int localConnectionWindow;
 
+  // PING keepalive and round trip time measurement, disabled if the interval is zero
+  private final long pingIntervalNanos;
+  private final long pingTimeoutNanos;
+  private long lastReadNanos;
+  private boolean pingOutstanding;
+  private long pingSentNanos;
+  private ScheduledFuture<?> pingTask;
+  private volatile long rttNanos = UNKNOWN_RTT;
+  private volatile long minRttNanos = UNKNOWN_RTT;
+
   // TODO: move this state into HpackEncoder
   private boolean headerTableSizeUpdatePending;
 
@@ -81,6 +131,19 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
         .orElse(DEFAULT_INITIAL_WINDOW_SIZE);
     this.maxHeaderEncoderTableSize = Optional.ofNullable(builder.maxHeaderEncoderTableSize)
         .orElse(DEFAULT_HEADER_TABLE_SIZE);
+    this.zeroCopyWriteThreshold = Optional.ofNullable(builder.zeroCopyWriteThreshold)
+        .orElse(DEFAULT_ZERO_COPY_WRITE_THRESHOLD);
+    this.metrics = Optional.ofNullable(builder.metrics).orElse(Http2Metrics.NOOP);
+    this.pingIntervalNanos = Optional.ofNullable(builder.pingIntervalNanos).orElse(0L);
+    this.pingTimeoutNanos = Optional.ofNullable(builder.pingTimeoutNanos).orElse(DEFAULT_PING_TIMEOUT_NANOS);
+    this.maxAdaptiveWindow = Optional.ofNullable(builder.maxAdaptiveWindow).orElse(0);
+    this.headerCache = Optional.ofNullable(builder.headerCache)
+        .orElseGet(() -> new Http2HeaderCache(Http2HeaderCache.DEFAULT_SIZE));
+    final Http2HeaderEncoding headerEncoding = Optional.ofNullable(builder.headerEncoding)
+        .<Http2HeaderEncoding>map(Supplier::get)
+        .orElse(Http2HeaderEncoding.DEFAULT);
+    this.headerEncoder = new HpackEncoder(DEFAULT_HEADER_TABLE_SIZE, headerEncoding);
+    this.flowController = new FlowController<>(metrics);
     this.log = log;
     this.localConnectionWindow = max(localMaxConnectionWindow, DEFAULT_INITIAL_WINDOW_SIZE);
     this.localStreamWindowUpdateThreshold = (localInitialStreamWindow + 1) / 2;
@@ -96,7 +159,7 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
       localSettings.maxFrameSize(builder.maxFrameSize);
     }
 
-    this.sslContext = requireNonNull(builder.sslContext, "sslContext");
+    this.sslContext = builder.sslContext;
     this.channel = requireNonNull(channel, "channel");
     this.flusher = BatchFlusher.of(channel, channel.eventLoop());
 
@@ -104,6 +167,14 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
   }
 
   private void connect() {
+    // Cleartext (h2c) with prior knowledge? Go straight to the HTTP/2 connection preface.
+    if (sslContext == null) {
+      channel().pipeline().addLast(
+          handshakeHandler(),
+          new ExceptionHandler());
+      return;
+    }
+
     final SslHandler sslHandler = sslContext().newHandler(channel().alloc());
 
     // XXX: Discard read bytes well before consolidating
@@ -136,6 +207,29 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
     return channel.closeFuture();
   }
 
+  /**
+   * Counts the bytes read and written by the handlers above it.
+   */
+  private class ByteCounter extends ChannelDuplexHandler {
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
+      if (msg instanceof ByteBuf) {
+        metrics.bytesRead(((ByteBuf) msg).readableBytes());
+      }
+      ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise)
+        throws Exception {
+      if (msg instanceof ByteBuf) {
+        metrics.bytesWritten(((ByteBuf) msg).readableBytes());
+      }
+      ctx.write(msg, promise);
+    }
+  }
+
   private class ExceptionHandler extends ChannelInboundHandlerAdapter {
 
     @Override
@@ -153,7 +247,7 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
     private STREAM stream;
 
     InboundHandler() {
-      this.reader = new Http2FrameReader(new HpackDecoder(DEFAULT_HEADER_TABLE_SIZE), this);
+      this.reader = new Http2FrameReader(new HpackDecoder(DEFAULT_HEADER_TABLE_SIZE, headerCache), this, metrics);
     }
 
     @Override
@@ -177,13 +271,25 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
     @Override
     public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
       super.channelInactive(ctx);
+      if (pingTask != null) {
+        pingTask.cancel(false);
+        pingTask = null;
+      }
       AbstractConnection.this.disconnected();
+      // Streams that are still open are closed with the connection
+      for (int i = 0; i < streams.size(); i++) {
+        metrics.streamClosed();
+      }
+      metrics.connectionClosed();
       disconnectFuture.complete(self());
     }
 
     @Override
     protected void decode(final ChannelHandlerContext ctx, final ByteBuf in, final List<Object> out)
         throws Exception {
+      if (pingIntervalNanos > 0) {
+        lastReadNanos = System.nanoTime();
+      }
       reader.readFrames(ctx, in);
     }
 
@@ -194,22 +300,36 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
       if (log.isDebugEnabled()) {
         log.debug("got data: streamId={}, data={}, padding={}, endOfStream={}", streamId, data, padding, endOfStream);
       }
-      final STREAM stream = existingStream(streamId);
+      final STREAM stream = stream(streamId);
       final int length = data.readableBytes();
 
-      readData(stream, data, padding, endOfStream);
+      if (stream != null) {
+        final int consumed = readData(stream, data, padding, endOfStream);
 
-      if (endOfStream) {
-        inboundEnd(stream);
+        if (endOfStream) {
+          inboundEnd(stream);
+        }
+
+        stream.localWindow -= length;
+        stream.localUnconsumed += length - consumed;
+      } else if (!closed(streamId)) {
+        throw connectionError(PROTOCOL_ERROR, "Unknown stream id: %d", streamId);
       }
 
-      stream.localWindow -= length;
+      // Data on closed streams is discarded but still counts against the connection window
       localConnectionWindow -= length;
 
+      if (maxAdaptiveWindow > 0) {
+        sampleBandwidthDelayProduct(length);
+      }
+
       // TODO: eagerly replenish windows even when idle?
 
+      // The connection window is replenished right away, unconsumed data is only held back on the stream window so
+      // that a slow stream does not stall the other streams on the connection.
       final boolean updateConnectionWindow = localConnectionWindow < localConnectionWindowUpdateThreshold;
-      final boolean updateStreamWindow = !endOfStream && stream.localWindow < localStreamWindowUpdateThreshold;
+      final int streamWindowIncrement = (endOfStream || stream == null) ? 0 : streamWindowUpdateIncrement(stream);
+      final boolean updateStreamWindow = streamWindowIncrement > 0;
       if (updateConnectionWindow || updateStreamWindow) {
         final int bufSize = (updateConnectionWindow ? WINDOW_UPDATE_FRAME_LENGTH : 0) +
             (updateStreamWindow ? WINDOW_UPDATE_FRAME_LENGTH : 0);
@@ -220,9 +340,8 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
           writeWindowUpdate(buf, 0, sizeIncrement);
         }
         if (updateStreamWindow) {
-          final int sizeIncrement = localInitialStreamWindow - stream.localWindow;
-          stream.localWindow = localInitialStreamWindow;
-          writeWindowUpdate(buf, streamId, sizeIncrement);
+          stream.localWindow += streamWindowIncrement;
+          writeWindowUpdate(buf, streamId, streamWindowIncrement);
         }
         ctx.write(buf);
         flusher.flush();
@@ -237,9 +356,11 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
             streamId, endOfStream);
       }
       if (stream == null) {
-        this.stream = inbound(streamId);
+        this.stream = inboundStream(streamId);
+      }
+      if (stream != null) {
+        startHeaders(stream, endOfStream);
       }
-      startHeaders(stream, endOfStream);
     }
 
     @Override
@@ -252,16 +373,19 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
             + "endOfStream={}", streamId, streamDependency, weight, exclusive, endOfStream);
       }
       if (stream == null) {
-        this.stream = inbound(streamId);
+        this.stream = inboundStream(streamId);
+      }
+      if (stream != null) {
+        startHeaders(stream, endOfStream);
       }
-      startHeaders(stream, endOfStream);
     }
 
     @Override
-    public void onHeaderRead(final Http2Header header) throws Http2Exception {
-      assert stream != null;
-      final AsciiString name = header.name();
-      final AsciiString value = header.value();
+    public void onHeaderRead(final AsciiString name, final AsciiString value) throws Http2Exception {
+      // Headers on closed streams are decoded to keep the decoder in sync, but otherwise ignored
+      if (stream == null) {
+        return;
+      }
       if (name.byteAt(0) == ':') {
         readPseudoHeader(stream, name, value);
       } else {
@@ -272,7 +396,9 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
     @Override
     public void onHeadersEnd(final ChannelHandlerContext ctx, final int streamId, final boolean endOfStream)
         throws Http2Exception {
-      assert stream != null;
+      if (stream == null) {
+        return;
+      }
       endHeaders(stream, endOfStream);
       if (endOfStream) {
         inboundEnd(stream);
@@ -289,12 +415,35 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
       }
     }
 
+    @Override
+    public void onPriorityUpdateRead(final ChannelHandlerContext ctx, final int prioritizedStreamId,
+        final AsciiString priorityFieldValue) throws Http2Exception {
+      if (log.isDebugEnabled()) {
+        log.debug("got priority update: prioritizedStreamId={}, priorityFieldValue={}",
+            prioritizedStreamId, priorityFieldValue);
+      }
+      priorityUpdate(prioritizedStreamId, priorityFieldValue);
+    }
+
     @Override
     public void onRstStreamRead(final ChannelHandlerContext ctx, final int streamId, final long errorCode)
         throws Http2Exception {
       if (log.isDebugEnabled()) {
         log.debug("got rst stream: streamId={}, errorCode={}", streamId, errorCode);
       }
+      if (streamId == 0) {
+        throw connectionError(PROTOCOL_ERROR, "RST_STREAM for stream 0");
+      }
+      final STREAM stream = stream(streamId);
+      if (stream == null) {
+        if (!closed(streamId)) {
+          throw connectionError(PROTOCOL_ERROR, "RST_STREAM for idle stream: %d", streamId);
+        }
+        // The stream might already be closed. That's ok.
+        return;
+      }
+      close(stream);
+      peerReset(stream, errorCode);
     }
 
     @Override
@@ -371,6 +520,31 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
       if (log.isDebugEnabled()) {
         log.debug("got ping ack");
       }
+      // Ignore acks of pings that we did not send or that have already timed out
+      if (!pingOutstanding || data.getLong(data.readerIndex()) != pingSentNanos) {
+        return;
+      }
+      pingOutstanding = false;
+      final long rtt = System.nanoTime() - pingSentNanos;
+
+      // Replace the timeout check with the next idle check, if keepalive is enabled
+      if (pingIntervalNanos > 0) {
+        schedulePingTick(pingIntervalNanos);
+      } else {
+        pingTask.cancel(false);
+        pingTask = null;
+      }
+
+      if (maxAdaptiveWindow > 0) {
+        adaptWindows(ctx);
+      }
+
+      final long srtt = rttNanos;
+      // Smooth like TCP does (RFC 6298)
+      rttNanos = (srtt == UNKNOWN_RTT) ? rtt : srtt - srtt / 8 + rtt / 8;
+      minRttNanos = (minRttNanos == UNKNOWN_RTT) ? rtt : Math.min(minRttNanos, rtt);
+      metrics.rtt(rtt);
+      rttMeasured(rttNanos, minRttNanos);
     }
 
     @Override
@@ -392,9 +566,14 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
     public void onGoAwayRead(final ChannelHandlerContext ctx, final int lastStreamId, final long errorCode,
         final ByteBuf debugData)
         throws Http2Exception {
-      log.error("got goaway, closing connection: lastStreamId={}, errorCode={}, debugData={}",
-          lastStreamId, errorCode, debugData.toString(UTF_8));
-      ctx.close();
+      if (errorCode != NO_ERROR.code()) {
+        log.error("got goaway: lastStreamId={}, errorCode={}, debugData={}",
+            lastStreamId, errorCode, debugData.toString(UTF_8));
+      } else if (log.isDebugEnabled()) {
+        log.debug("got goaway: lastStreamId={}, errorCode={}, debugData={}",
+            lastStreamId, errorCode, debugData.toString(UTF_8));
+      }
+      goAway(lastStreamId, errorCode);
     }
 
     @Override
@@ -426,6 +605,21 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
     }
   }
 
+  /**
+   * Look up the stream that an inbound frame belongs to, creating it if it is new. Returns null if the stream is
+   * closed, in which case the frame should be ignored.
+   */
+  private STREAM inboundStream(final int streamId) throws Http2Exception {
+    final STREAM stream = stream(streamId);
+    if (stream != null) {
+      return stream;
+    }
+    if (closed(streamId)) {
+      return null;
+    }
+    return inbound(streamId);
+  }
+
   protected final STREAM existingStream(final int streamId) throws Http2Exception {
     final STREAM stream = stream(streamId);
     if (stream == null) {
@@ -440,6 +634,9 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
     private int streamId = 1;
     private boolean inactive;
 
+    // The part of the current write buffer that has already been passed on to the channel
+    private int writtenIndex;
+
     private int nextStreamId() {
       streamId += 2;
       return streamId;
@@ -484,8 +681,25 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
       return FRAME_HEADER_SIZE + dynamicTableSizeUpdateSize() + headersPayloadSize(stream);
     }
 
+    @Override
+    public int estimateDataFrameSize(final ChannelHandlerContext ctx, final STREAM stream, final int payloadSize) {
+      if (zeroCopy(stream, payloadSize)) {
+        return FRAME_HEADER_SIZE;
+      }
+      return FRAME_HEADER_SIZE + payloadSize;
+    }
+
+    /**
+     * Should the payload be passed through to the channel instead of copied into the write buffer? Small payloads
+     * are cheaper to copy and coalesce. Heap buffers would be copied into direct memory by the transport anyway.
+     */
+    private boolean zeroCopy(final STREAM stream, final int payloadSize) {
+      return payloadSize >= zeroCopyWriteThreshold && stream.data.isDirect();
+    }
+
     @Override
     public ByteBuf writeStart(final ChannelHandlerContext ctx, final int bufferSize) {
+      writtenIndex = 0;
       return ctx.alloc().buffer(bufferSize);
     }
 
@@ -498,7 +712,14 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
       writeFrameHeader(buf, headerIndex, payloadSize, DATA, flags, stream.id);
       buf.writerIndex(headerIndex + FRAME_HEADER_LENGTH);
       // TODO: padding + fields
-      buf.writeBytes(stream.data, payloadSize);
+      if (zeroCopy(stream, payloadSize)) {
+        // Write everything up to and including the frame header, followed by the payload itself
+        ctx.write(buf.retainedSlice(writtenIndex, buf.writerIndex() - writtenIndex));
+        writtenIndex = buf.writerIndex();
+        ctx.write(stream.data.readRetainedSlice(payloadSize));
+      } else {
+        buf.writeBytes(stream.data, payloadSize);
+      }
     }
 
     @Override
@@ -517,6 +738,7 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
       }
 
       encodeHeaders(stream, headerEncoder, buf);
+      metrics.headerEncoderTableSize(headerEncoder.tableSize());
 
       final int blockSize = buf.writerIndex() - blockIndex;
 
@@ -529,7 +751,14 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
 
     @Override
     public void writeEnd(final ChannelHandlerContext ctx, final ByteBuf buf) {
-      ctx.write(buf);
+      if (writtenIndex == 0) {
+        ctx.write(buf);
+        return;
+      }
+      if (buf.writerIndex() > writtenIndex) {
+        ctx.write(buf.retainedSlice(writtenIndex, buf.writerIndex() - writtenIndex));
+      }
+      buf.release();
     }
 
     @Override
@@ -538,6 +767,59 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
     }
   }
 
+  /**
+   * The stream window increment to send to the peer, or zero if the stream window does not need to be updated yet.
+   */
+  private int streamWindowUpdateIncrement(final STREAM stream) {
+    if (stream.localWindow >= localStreamWindowUpdateThreshold) {
+      return 0;
+    }
+    return localInitialStreamWindow - stream.localWindow - stream.localUnconsumed;
+  }
+
+  /**
+   * Reset a stream: stop sending on it, forget about it and tell the peer using RST_STREAM. Frames subsequently
+   * received on the stream are ignored. Must be called on the event loop.
+   */
+  protected final void reset(final STREAM stream, final Http2Error error) {
+    close(stream);
+
+    // The peer has not seen a stream whose headers have not been written yet
+    if (stream.started && !stream.headersPending) {
+      final ByteBuf buf = channel.alloc().buffer(RST_STREAM_FRAME_LENGTH);
+      writeRstStream(buf, stream.id, error);
+      channel.write(buf);
+      flusher.flush();
+    }
+  }
+
+  /**
+   * Stop sending on a stream and forget about it.
+   */
+  private void close(final STREAM stream) {
+    if (stream.started) {
+      flowController.stop(stream);
+    }
+    deregisterStream(stream.id);
+  }
+
+  /**
+   * Signal that the application has consumed received data on a stream, replenishing the stream window if necessary.
+   * Must be called on the event loop.
+   */
+  protected final void consumed(final STREAM stream, final int bytes) {
+    stream.localUnconsumed -= bytes;
+    final int sizeIncrement = streamWindowUpdateIncrement(stream);
+    if (sizeIncrement <= 0) {
+      return;
+    }
+    stream.localWindow += sizeIncrement;
+    final ByteBuf buf = channel.alloc().buffer(WINDOW_UPDATE_FRAME_LENGTH);
+    writeWindowUpdate(buf, stream.id, sizeIncrement);
+    channel.write(buf);
+    flusher.flush();
+  }
+
   private int dynamicTableSizeUpdateSize() {
     if (headerTableSizeUpdatePending) {
       return Hpack.dynamicTableSizeUpdateSize(headerEncoder.maxTableSize());
@@ -559,11 +841,21 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
     private Integer connectionWindowSize;
     private Integer maxHeaderEncoderTableSize;
     private Integer initialStreamWindowSize;
+    private Integer zeroCopyWriteThreshold;
+    private Http2Metrics metrics;
+    private Long pingIntervalNanos;
+    private Long pingTimeoutNanos;
+    private Integer maxAdaptiveWindow;
+    private Http2HeaderCache headerCache;
+    private Supplier<? extends Http2HeaderEncoding> headerEncoding;
 
     SslContext sslContext() {
       return sslContext;
     }
 
+    /**
+     * The TLS context to use. If null, HTTP/2 is spoken in cleartext with prior knowledge (h2c).
+     */
     BUILDER sslContext(final SslContext sslContext) {
       this.sslContext = sslContext;
       return self();
@@ -614,14 +906,150 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
       return self();
     }
 
+    Integer zeroCopyWriteThreshold() {
+      return zeroCopyWriteThreshold;
+    }
+
+    /**
+     * DATA frame payloads of at least this many bytes are written to the channel as slices of the message content
+     * instead of being copied into the write buffer.
+     */
+    BUILDER zeroCopyWriteThreshold(final Integer zeroCopyWriteThreshold) {
+      this.zeroCopyWriteThreshold = zeroCopyWriteThreshold;
+      return self();
+    }
+
+    Http2Metrics metrics() {
+      return metrics;
+    }
+
+    Long pingIntervalNanos() {
+      return pingIntervalNanos;
+    }
+
+    /**
+     * Send a PING when nothing has been received for this long, to keep the connection alive and measure the round
+     * trip time. Disabled if null or zero.
+     */
+    BUILDER pingIntervalNanos(final Long pingIntervalNanos) {
+      this.pingIntervalNanos = pingIntervalNanos;
+      return self();
+    }
+
+    Long pingTimeoutNanos() {
+      return pingTimeoutNanos;
+    }
+
+    /**
+     * Close the connection if a PING is not answered within this long.
+     */
+    BUILDER pingTimeoutNanos(final Long pingTimeoutNanos) {
+      this.pingTimeoutNanos = pingTimeoutNanos;
+      return self();
+    }
+
+    Integer maxAdaptiveWindow() {
+      return maxAdaptiveWindow;
+    }
+
+    /**
+     * Grow the connection and stream windows up to this size, based on the bandwidth-delay product estimated using
+     * PINGs. Disabled if null or zero.
+     */
+    BUILDER maxAdaptiveWindow(final Integer maxAdaptiveWindow) {
+      if (maxAdaptiveWindow != null && maxAdaptiveWindow < 0) {
+        throw new IllegalArgumentException("Invalid max adaptive window: " + maxAdaptiveWindow);
+      }
+      this.maxAdaptiveWindow = maxAdaptiveWindow;
+      return self();
+    }
+
+    BUILDER metrics(final Http2Metrics metrics) {
+      this.metrics = metrics;
+      return self();
+    }
+
+    Http2HeaderCache headerCache() {
+      return headerCache;
+    }
+
+    /**
+     * Intern decoded header names and values in this cache. Defaults to a cache per connection if null.
+     */
+    BUILDER headerCache(final Http2HeaderCache headerCache) {
+      this.headerCache = headerCache;
+      return self();
+    }
+
+    /**
+     * Creates the header encoding strategy of each connection. Defaults to {@link Http2HeaderEncoding#DEFAULT} if null.
+     */
+    BUILDER headerEncoding(final Supplier<? extends Http2HeaderEncoding> headerEncoding) {
+      this.headerEncoding = headerEncoding;
+      return self();
+    }
+
     protected abstract BUILDER self();
   }
 
   void send(final Object message, final ChannelPromise promise) {
-    channel.write(message, promise);
+    if (channel.eventLoop().inEventLoop()) {
+      channel.write(message, promise);
+      flusher.flush();
+      return;
+    }
+
+    // Wake up the event loop once per batch instead of scheduling a write task per message
+    submissions.add(new Submission(message, promise));
+    if (submissionsScheduled.compareAndSet(false, true)) {
+      try {
+        channel.eventLoop().execute(writeSubmissions);
+      } catch (RejectedExecutionException e) {
+        failSubmissions(e);
+      }
+    }
+  }
+
+  private void writeSubmissions() {
+    // Clear the flag before draining so that messages submitted after the last poll schedule another batch
+    submissionsScheduled.set(false);
+    while (true) {
+      final Submission submission = submissions.poll();
+      if (submission == null) {
+        break;
+      }
+      channel.write(submission.message, submission.promise);
+    }
     flusher.flush();
   }
 
+  private void failSubmissions(final Throwable cause) {
+    while (true) {
+      final Submission submission = submissions.poll();
+      if (submission == null) {
+        return;
+      }
+      // The message is never written, release its content
+      if (submission.message instanceof Http2Message) {
+        ((Http2Message<?>) submission.message).release();
+      } else {
+        ReferenceCountUtil.release(submission.message);
+      }
+      submission.promise.tryFailure(cause);
+    }
+  }
+
+  private static class Submission {
+
+    private final Object message;
+    private final ChannelPromise promise;
+
+    private Submission(final Object message, final ChannelPromise promise) {
+      this.message = message;
+      this.promise = promise;
+    }
+  }
+
   protected final SslContext sslContext() {
     return sslContext;
   }
@@ -633,9 +1061,18 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
   protected final void handshakeDone() {
     // TODO: more robust pipeline setup
     channel.pipeline().remove(ExceptionHandler.class);
+    if (metrics != Http2Metrics.NOOP) {
+      channel.pipeline().addLast(new ByteCounter());
+    }
     channel.pipeline().addLast(new InboundHandler(),
         new OutboundHandler(),
         new ExceptionHandler());
+    metrics.connectionOpened();
+    if (pingIntervalNanos > 0) {
+      // Ping right away to get a round trip time for the new connection
+      lastReadNanos = System.nanoTime();
+      ping();
+    }
     connected();
     connectFuture.complete(self());
   }
@@ -646,10 +1083,154 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
 
   protected final void registerStream(STREAM stream) {
     streams.put(stream.id, stream);
+    metrics.streamOpened();
   }
 
   protected final STREAM deregisterStream(int id) {
-    return streams.remove(id);
+    final STREAM stream = streams.remove(id);
+    if (stream != null) {
+      metrics.streamClosed();
+    }
+    return stream;
+  }
+
+  /**
+   * Send a PING if the connection has been idle for the ping interval and close the connection if a PING goes
+   * unanswered for the ping timeout. Reschedules itself for when the next check is due.
+   */
+  private void pingTick() {
+    pingTask = null;
+    if (!channel.isActive()) {
+      return;
+    }
+    final long now = System.nanoTime();
+    if (pingOutstanding) {
+      final long waited = now - pingSentNanos;
+      if (waited >= pingTimeoutNanos) {
+        log.warn("PING timed out after {} ms, closing connection: {}", NANOSECONDS.toMillis(waited), channel);
+        channel.close();
+        return;
+      }
+      schedulePingTick(pingTimeoutNanos - waited);
+      return;
+    }
+    if (pingIntervalNanos == 0) {
+      // Keepalive disabled, the PING was only for adaptive windows
+      return;
+    }
+    final long idle = now - lastReadNanos;
+    if (idle >= pingIntervalNanos) {
+      ping();
+    } else {
+      schedulePingTick(pingIntervalNanos - idle);
+    }
+  }
+
+  private void ping() {
+    pingOutstanding = true;
+    pingSentNanos = System.nanoTime();
+    bytesSincePing = 0;
+    final ByteBuf buf = channel.alloc().buffer(PING_FRAME_LENGTH);
+    writePing(buf, pingSentNanos);
+    channel.write(buf);
+    flusher.flush();
+    schedulePingTick(pingTimeoutNanos);
+  }
+
+  private void schedulePingTick(final long delayNanos) {
+    if (pingTask != null) {
+      pingTask.cancel(false);
+    }
+    pingTask = channel.eventLoop().schedule(this::pingTick, delayNanos, NANOSECONDS);
+  }
+
+  /**
+   * Count received data and start a round trip with a PING if none is outstanding. The data received until the PING
+   * is acked is a sample of the bandwidth-delay product.
+   */
+  private void sampleBandwidthDelayProduct(final int length) {
+    if (!pingOutstanding && localMaxConnectionWindow < maxAdaptiveWindow) {
+      ping();
+    }
+    bytesSincePing += length;
+  }
+
+  /**
+   * Grow the connection and stream windows if the last bandwidth-delay product sample shows that the windows limit
+   * throughput, i.e. the peer used most of the connection window in a round trip. The windows are set to twice the
+   * sample, leaving room for the sample to grow further.
+   */
+  private void adaptWindows(final ChannelHandlerContext ctx) {
+    final long sample = bytesSincePing;
+    if (sample < (long) localMaxConnectionWindow * 2 / 3) {
+      return;
+    }
+    final int window = (int) Math.min(sample * 2, maxAdaptiveWindow);
+    if (window <= localMaxConnectionWindow && window <= localInitialStreamWindow) {
+      return;
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("growing windows: sample={}, window={}, rtt={}", sample, window, rttNanos);
+    }
+
+    final ByteBuf buf = ctx.alloc().buffer(WINDOW_UPDATE_FRAME_LENGTH + FRAME_HEADER_LENGTH + SETTING_ENTRY_LENGTH);
+
+    if (window > localMaxConnectionWindow) {
+      final int sizeIncrement = window - localMaxConnectionWindow;
+      localMaxConnectionWindow = window;
+      localConnectionWindow += sizeIncrement;
+      localConnectionWindowUpdateThreshold = (window + 1) / 2;
+      writeWindowUpdate(buf, 0, sizeIncrement);
+    }
+
+    // The peer applies the stream window change to open streams as well
+    if (window > localInitialStreamWindow) {
+      final int delta = window - localInitialStreamWindow;
+      localInitialStreamWindow = window;
+      localStreamWindowUpdateThreshold = (window + 1) / 2;
+      localSettings.initialWindowSize(window);
+      for (final STREAM stream : streams.values()) {
+        stream.localWindow += delta;
+      }
+      writeSettings(buf, new Http2Settings().initialWindowSize(window));
+    }
+
+    ctx.write(buf);
+    flusher.flush();
+  }
+
+  /**
+   * The smoothed PING round trip time, or {@link #UNKNOWN_RTT} if the connection has not been pinged. Can be called
+   * from any thread.
+   */
+  long rttNanos() {
+    return rttNanos;
+  }
+
+  /**
+   * The lowest PING round trip time seen, or {@link #UNKNOWN_RTT} if the connection has not been pinged. Can be
+   * called from any thread.
+   */
+  long minRttNanos() {
+    return minRttNanos;
+  }
+
+  /**
+   * Stop sending on and forget about all streams that match a predicate.
+   *
+   * @return The closed streams.
+   */
+  protected final List<STREAM> closeStreams(final Predicate<STREAM> predicate) {
+    final List<STREAM> closed = new ArrayList<>();
+    for (final STREAM stream : streams.values()) {
+      if (predicate.test(stream)) {
+        closed.add(stream);
+      }
+    }
+    for (final STREAM stream : closed) {
+      close(stream);
+    }
+    return closed;
   }
 
   protected final Http2Settings localSettings() {
@@ -690,12 +1271,40 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
 
   protected abstract void peerSettingsChanged(final Http2Settings settings);
 
-  protected abstract void readData(final STREAM stream, final ByteBuf data, final int padding,
+  /**
+   * Read the payload of a DATA frame.
+   *
+   * @return The number of bytes consumed. Unconsumed bytes are not refunded to the peer stream window until {@link
+   * #consumed} is called.
+   */
+  protected abstract int readData(final STREAM stream, final ByteBuf data, final int padding,
       final boolean endOfStream)
       throws Http2Exception;
 
   protected abstract STREAM inbound(final int streamId) throws Http2Exception;
 
+  /**
+   * Called when the peer has announced that it is shutting down the connection. Streams initiated by this endpoint
+   * with ids above the last stream id were not processed by the peer.
+   */
+  protected abstract void goAway(final int lastStreamId, final long errorCode);
+
+  /**
+   * Called on the event loop when a PING round trip time has been measured.
+   */
+  protected abstract void rttMeasured(final long rttNanos, final long minRttNanos);
+
+  /**
+   * Called when the peer has reset a stream. The stream has already been deregistered and will not be written to. The
+   * implementation should release any resources held by the stream.
+   */
+  protected abstract void peerReset(final STREAM stream, final long errorCode);
+
+  /**
+   * Is this stream closed? Only called for streams that are not registered.
+   */
+  protected abstract boolean closed(final int streamId);
+
   protected abstract void inboundEnd(final STREAM stream) throws Http2Exception;
 
   protected abstract boolean handlesOutbound(final Object msg, final ChannelPromise promise);
@@ -714,6 +1323,9 @@ abstract class AbstractConnection<CONNECTION extends AbstractConnection<CONNECTI
   protected abstract void readHeader(final STREAM stream, final AsciiString name, final AsciiString value)
       throws Http2Exception;
 
+  protected abstract void priorityUpdate(final int prioritizedStreamId, final AsciiString priorityFieldValue)
+      throws Http2Exception;
+
   protected abstract void readPseudoHeader(final STREAM stream, final AsciiString name, final AsciiString value)
       throws Http2Exception;
 }
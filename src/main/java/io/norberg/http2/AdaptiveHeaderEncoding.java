@@ -0,0 +1,81 @@
+package io.norberg.http2;
+
+import io.netty.util.AsciiString;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts, per header name, how often fields missing the dynamic table have a value that was recently seen. A name
+ * whose values are mostly new is high cardinality, and its values are then only indexed when they repeat.
+ */
+final class AdaptiveHeaderEncoding implements Http2HeaderEncoding {
+
+  // Names are indexed as usual until they have missed the dynamic table this many times
+  static final int MIN_SAMPLES = 16;
+
+  // The counts are halved when reaching this, so that the classification follows changes in traffic
+  private static final int MAX_SAMPLES = 256;
+
+  // The number of recent values remembered for each name
+  private static final int RECENT_VALUES = 8;
+
+  // Further names are always indexed
+  private static final int MAX_NAMES = 256;
+
+  private final Map<AsciiString, Stats> names = new HashMap<>();
+
+  @Override
+  public Indexing indexing(final AsciiString name, final AsciiString value) {
+    Stats stats = names.get(name);
+    if (stats == null) {
+      if (names.size() >= MAX_NAMES) {
+        return Indexing.INCREMENTAL;
+      }
+      stats = new Stats();
+      names.put(name, stats);
+    }
+    return stats.miss(value.hashCode()) ? Indexing.INCREMENTAL : Indexing.NONE;
+  }
+
+  private static final class Stats {
+
+    private final int[] recent = new int[RECENT_VALUES];
+    private int recentLength;
+    private int next;
+
+    private int misses;
+    private int repeats;
+
+    /**
+     * Record a value that missed the dynamic table.
+     *
+     * @return true if the value should be indexed.
+     */
+    boolean miss(final int valueHash) {
+      final boolean repeat = recent(valueHash);
+      if (repeat) {
+        repeats++;
+      } else {
+        recent[next] = valueHash;
+        next = (next + 1) % RECENT_VALUES;
+        recentLength = Math.min(recentLength + 1, RECENT_VALUES);
+      }
+      misses++;
+      if (misses == MAX_SAMPLES) {
+        misses /= 2;
+        repeats /= 2;
+      }
+      // Index values that repeat, and all values of names that are not yet known to be high cardinality
+      return repeat || misses < MIN_SAMPLES || repeats * 4 >= misses;
+    }
+
+    private boolean recent(final int valueHash) {
+      for (int i = 0; i < recentLength; i++) {
+        if (recent[i] == valueHash) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
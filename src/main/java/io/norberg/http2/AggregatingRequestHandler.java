@@ -0,0 +1,98 @@
+package io.norberg.http2;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AsciiString;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates streamed requests and hands each complete request to a {@link RequestHandler}, either on the connection
+ * event loop or on an executor.
+ */
+class AggregatingRequestHandler implements StreamingRequestHandler {
+
+  private static final Logger log = LoggerFactory.getLogger(AggregatingRequestHandler.class);
+
+  private final RequestHandler requestHandler;
+  private final boolean pooled;
+  private final Executor executor;
+
+  AggregatingRequestHandler(final RequestHandler requestHandler, final boolean pooled) {
+    this(requestHandler, pooled, null);
+  }
+
+  /**
+   * @param executor The executor to run the request handler on, or null to run it on the connection event loop.
+   */
+  AggregatingRequestHandler(final RequestHandler requestHandler, final boolean pooled, final Executor executor) {
+    this.requestHandler = requestHandler;
+    this.pooled = pooled;
+    this.executor = executor;
+  }
+
+  @Override
+  public RequestPayloadHandler handleRequest(final Http2RequestContext context, final Http2Request request) {
+    return new Aggregator(context, request);
+  }
+
+  private class Aggregator implements RequestPayloadHandler, Runnable {
+
+    private final Http2RequestContext context;
+    private final Http2Request request;
+
+    private Aggregator(final Http2RequestContext context, final Http2Request request) {
+      this.context = context;
+      this.request = request;
+    }
+
+    @Override
+    public int data(final ByteBuf data) {
+      final ByteBuf content = request.content();
+      final ByteBuf aggregated = ContentAggregator.aggregate(content, data, request, pooled);
+      if (aggregated != content) {
+        request.content(aggregated);
+      }
+      return data.readableBytes();
+    }
+
+    @Override
+    public void trailer(final AsciiString name, final AsciiString value) {
+      // Trailer fields are appended to the headers of the aggregated request
+      request.header(name, value);
+    }
+
+    @Override
+    public void end() {
+      if (executor == null) {
+        requestHandler.handleRequest(context, request);
+        return;
+      }
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        // Shed load when the executor is saturated
+        request.release();
+        context.respond(request.response(SERVICE_UNAVAILABLE));
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        requestHandler.handleRequest(context, request);
+      } catch (Exception e) {
+        log.error("Request handler threw exception", e);
+        context.fail();
+      }
+    }
+
+    @Override
+    public void reset() {
+      request.release();
+    }
+  }
+}
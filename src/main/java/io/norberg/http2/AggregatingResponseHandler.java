@@ -0,0 +1,50 @@
+package io.norberg.http2;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Aggregates a streamed response and hands the complete response to a {@link Http2ResponseHandler}.
+ */
+class AggregatingResponseHandler implements Http2StreamingResponseHandler {
+
+  private final Http2ResponseHandler responseHandler;
+  private final boolean pooled;
+
+  private Http2Response response;
+
+  AggregatingResponseHandler(final Http2ResponseHandler responseHandler, final boolean pooled) {
+    this.responseHandler = responseHandler;
+    this.pooled = pooled;
+  }
+
+  @Override
+  public void headers(final Http2Response response) {
+    this.response = response;
+  }
+
+  @Override
+  public void data(final ByteBuf data) {
+    final ByteBuf content = response.content();
+    final ByteBuf aggregated = ContentAggregator.aggregate(content, data, response, pooled);
+    if (aggregated != content) {
+      response.content(aggregated);
+    }
+  }
+
+  @Override
+  public void end() {
+    final Http2Response response = this.response;
+    this.response = null;
+    responseHandler.response(response);
+  }
+
+  @Override
+  public void failure(final Throwable e) {
+    final Http2Response response = this.response;
+    this.response = null;
+    if (response != null) {
+      response.release();
+    }
+    responseHandler.failure(e);
+  }
+}
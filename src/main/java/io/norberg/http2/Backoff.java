@@ -0,0 +1,48 @@
+package io.norberg.http2;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exponential backoff with jitter. Each delay is picked at random from the upper half of a ceiling that doubles with
+ * each consecutive failure, so that clients that lost their connections at the same time do not reconnect in lockstep.
+ */
+class Backoff {
+
+  // Doubling more often than this overflows any sensible max delay anyway
+  private static final int MAX_DOUBLINGS = 30;
+
+  private final long initialDelayNanos;
+  private final long maxDelayNanos;
+  private final AtomicInteger failures = new AtomicInteger();
+
+  Backoff(final long initialDelayNanos, final long maxDelayNanos) {
+    if (initialDelayNanos <= 0) {
+      throw new IllegalArgumentException("Invalid initial delay: " + initialDelayNanos);
+    }
+    if (maxDelayNanos < initialDelayNanos) {
+      throw new IllegalArgumentException("Invalid max delay: " + maxDelayNanos);
+    }
+    this.initialDelayNanos = initialDelayNanos;
+    this.maxDelayNanos = maxDelayNanos;
+  }
+
+  /**
+   * Record a failure and get the delay before the next attempt.
+   */
+  long failure() {
+    final int doublings = Math.min(failures.getAndIncrement(), MAX_DOUBLINGS);
+    final long ceiling = (initialDelayNanos > maxDelayNanos >> doublings)
+        ? maxDelayNanos
+        : initialDelayNanos << doublings;
+    final long half = ceiling / 2;
+    return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+  }
+
+  /**
+   * Record a success, starting over from the initial delay.
+   */
+  void success() {
+    failures.set(0);
+  }
+}
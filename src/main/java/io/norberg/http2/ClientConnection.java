@@ -5,6 +5,7 @@ import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
 import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.norberg.http2.Http2Error.CANCEL;
 import static io.norberg.http2.Http2Error.PROTOCOL_ERROR;
 import static io.norberg.http2.Http2WireFormat.CLIENT_PREFACE;
 import static io.norberg.http2.Http2WireFormat.FRAME_HEADER_SIZE;
@@ -17,7 +18,6 @@ import static io.norberg.http2.PseudoHeaders.SCHEME;
 import static java.util.Objects.requireNonNull;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -27,6 +27,7 @@ import io.netty.channel.DefaultChannelPromise;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.util.AsciiString;
 import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,28 +39,144 @@ class ClientConnection extends AbstractConnection<ClientConnection, ClientConnec
   private static final AsciiString BAD_REQUEST_TEXT = BAD_REQUEST.codeAsText();
   private static final AsciiString INTERNAL_SERVER_ERROR_TEXT = INTERNAL_SERVER_ERROR.codeAsText();
 
+  static final long NO_DEADLINE = Long.MAX_VALUE;
+
   private final Listener listener;
+  private final DeadlineWheel<ClientStream> deadlines;
+
+  // Requests sent on this connection that have not yet completed. Updated from application threads and the event loop.
+  private final AtomicInteger outstanding = new AtomicInteger();
+
+  private volatile long maxConcurrentStreams = Long.MAX_VALUE;
+  private volatile long lastActivityNanos = System.nanoTime();
+  private volatile boolean draining;
+  private volatile boolean goingAway;
 
   private int streamId = 1;
 
   private ClientConnection(final Builder builder, final Channel channel) {
     super(builder, channel, log);
     this.listener = requireNonNull(builder.listener, "listener");
+    this.deadlines = new DeadlineWheel<>(channel.eventLoop(), this::deadlineExceeded);
   }
 
-  void send(final Http2Request request, final Http2ResponseHandler responseHandler) {
-    final RequestPromise promise = new RequestPromise(channel(), responseHandler);
+  void send(final Http2Request request, final Http2StreamingResponseHandler responseHandler) {
+    send(request, responseHandler, NO_DEADLINE);
+  }
+
+  /**
+   * Send a request, resetting the stream and failing the request with a {@link RequestTimeoutException} if the
+   * response has not been received by the deadline.
+   *
+   * @param deadlineNanos The deadline, in terms of {@link System#nanoTime()}, or {@link #NO_DEADLINE}.
+   */
+  void send(final Http2Request request, final Http2StreamingResponseHandler responseHandler,
+      final long deadlineNanos) {
+    outstanding.incrementAndGet();
+    final RequestPromise promise = new RequestPromise(channel(), responseHandler, deadlineNanos);
     send(request, promise);
   }
 
+  String id() {
+    return channel().id().asShortText();
+  }
+
+  /**
+   * The number of requests sent on this connection that have not yet completed.
+   */
+  int outstanding() {
+    return outstanding.get();
+  }
+
+  /**
+   * The number of additional streams that the peer currently allows on this connection.
+   */
+  long freeStreams() {
+    return maxConcurrentStreams - outstanding.get();
+  }
+
+  long maxConcurrentStreams() {
+    return maxConcurrentStreams;
+  }
+
+  long lastActivityNanos() {
+    return lastActivityNanos;
+  }
+
+  /**
+   * Close this connection once all outstanding requests have completed.
+   */
+  void drain() {
+    draining = true;
+    if (outstanding.get() == 0) {
+      close();
+    }
+  }
+
+  boolean isDraining() {
+    return draining;
+  }
+
+  private void requestDone() {
+    lastActivityNanos = System.nanoTime();
+    final int n = outstanding.decrementAndGet();
+    if (draining && n == 0) {
+      close();
+    }
+  }
+
   private void dispatchResponse(final ClientStream stream) {
     deregisterStream(stream.id);
+    if (stream.deadline != null) {
+      stream.deadline.cancel();
+    }
+    if (stream.request != null) {
+      stream.request.release();
+      stream.request = null;
+    }
     Http2Response response = stream.response;
-    Http2ResponseHandler responseHandler = stream.responseHandler;
+    Http2StreamingResponseHandler responseHandler = stream.responseHandler;
     stream.responseHandler = null;
     stream.response = null;
     succeed(responseHandler, response);
-//    response.release();
+  }
+
+  private void deadlineExceeded(final ClientStream stream) {
+    reset(stream, CANCEL);
+    failStream(stream, new RequestTimeoutException());
+  }
+
+  private void failStream(final ClientStream stream, final Throwable cause) {
+    if (stream.deadline != null) {
+      stream.deadline.cancel();
+    }
+    if (stream.request != null) {
+      stream.request.release();
+      stream.request = null;
+    }
+    final Http2StreamingResponseHandler responseHandler = stream.responseHandler;
+    stream.responseHandler = null;
+    stream.response = null;
+    fail(responseHandler, cause);
+  }
+
+  /**
+   * Hand a request that the server did not process back to the client, to be sent on another connection.
+   */
+  private void retryStream(final ClientStream stream) {
+    if (stream.deadline != null) {
+      stream.deadline.cancel();
+    }
+    final Http2Request request = stream.request;
+    if (request.hasContent()) {
+      request.content().readerIndex(stream.contentIndex);
+    }
+    final Http2StreamingResponseHandler responseHandler = stream.responseHandler;
+    stream.request = null;
+    stream.responseHandler = null;
+    stream.response = null;
+    requestDone();
+    listener.retry(this, request, responseHandler, stream.deadlineNanos);
   }
 
   private int nextStreamId() {
@@ -83,12 +200,37 @@ class ClientConnection extends AbstractConnection<ClientConnection, ClientConnec
 
   @Override
   protected void disconnected() {
+    for (final ClientStream stream : closeStreams(stream -> true)) {
+      failStream(stream, new ConnectionClosedException());
+    }
+  }
+
+  @Override
+  protected void rttMeasured(final long rttNanos, final long minRttNanos) {
+    listener.rttMeasured(this);
+  }
+
+  @Override
+  protected void goAway(final int lastStreamId, final long errorCode) {
+    // Stop sending requests on this connection and have the client replace it
+    goingAway = true;
+    listener.goingAway(this);
+
+    // Streams above the last stream id were not processed by the server and can safely be retried
+    for (final ClientStream stream : closeStreams(stream -> stream.id > lastStreamId)) {
+      retryStream(stream);
+    }
+
+    // Let the remaining streams complete before closing the connection
+    drain();
   }
 
   @Override
   protected void peerSettingsChanged(final Http2Settings settings) {
+    if (settings.maxConcurrentStreams().isPresent()) {
+      maxConcurrentStreams = settings.maxConcurrentStreams().getAsLong();
+    }
     listener.peerSettingsChanged(this, settings);
-    // TODO
   }
 
   @Override
@@ -101,6 +243,20 @@ class ClientConnection extends AbstractConnection<ClientConnection, ClientConnec
     final Http2Request request = (Http2Request) msg;
     final RequestPromise requestPromise = (RequestPromise) promise;
 
+    // Deadline exceeded while queued? Fail fast.
+    if (requestPromise.deadlineNanos != NO_DEADLINE && requestPromise.deadlineNanos - System.nanoTime() <= 0) {
+      request.release();
+      fail(requestPromise.responseHandler, new RequestTimeoutException());
+      return null;
+    }
+
+    // The server is going away? Retry on another connection.
+    if (goingAway) {
+      requestDone();
+      listener.retry(this, request, requestPromise.responseHandler, requestPromise.deadlineNanos);
+      return null;
+    }
+
     // Already at max concurrent streams? Fail fast.
     if (activeStreams() >= remoteMaxConcurrentStreams()) {
       fail(requestPromise.responseHandler, new MaxConcurrentStreamsLimitReachedException());
@@ -112,21 +268,37 @@ class ClientConnection extends AbstractConnection<ClientConnection, ClientConnec
     final ClientStream
         stream =
         new ClientStream(streamId, localInitialStreamWindow(), request, requestPromise.responseHandler);
+    Http2Priority.apply(stream, request);
 
     registerStream(stream);
 
+    if (requestPromise.responseHandler instanceof TimedResponseHandler) {
+      ((TimedResponseHandler) requestPromise.responseHandler).started();
+    }
+
+    stream.deadlineNanos = requestPromise.deadlineNanos;
+    if (requestPromise.deadlineNanos != NO_DEADLINE) {
+      stream.deadline = deadlines.add(stream, requestPromise.deadlineNanos);
+    }
+
     return stream;
   }
 
   @Override
   protected void outboundEnd(final ClientStream stream) {
-    stream.request.release();
-    stream.request = null;
+    // Keep the request until the response has been received, it is retried if the server goes away before processing it
   }
 
   @Override
   protected int headersPayloadSize(final ClientStream stream) {
     final Http2Request request = stream.request;
+    final Http2RequestTemplate template = request.template();
+    if (template != null) {
+      return FRAME_HEADER_SIZE +
+          template.headers().size() +
+          Http2Header.size(PATH, request.path()) +
+          Http2WireFormat.headersPayloadSize(request);
+    }
     return FRAME_HEADER_SIZE +
         Http2Header.size(METHOD, request.method().asciiName()) +
         Http2Header.size(AUTHORITY, request.authority()) +
@@ -139,11 +311,16 @@ class ClientConnection extends AbstractConnection<ClientConnection, ClientConnec
   protected void encodeHeaders(final ClientStream stream, final HpackEncoder headerEncoder,
       final ByteBuf buf) throws Http2Exception {
     final Http2Request request = stream.request;
-    headerEncoder.encodeRequest(buf,
-        request.method().asciiName(),
-        request.scheme(),
-        request.authority(),
-        request.path());
+    final Http2RequestTemplate template = request.template();
+    if (template != null) {
+      headerEncoder.encodeRequest(buf, template.headers(), request.path());
+    } else {
+      headerEncoder.encodeRequest(buf,
+          request.method().asciiName(),
+          request.scheme(),
+          request.authority(),
+          request.path());
+    }
     for (int i = 0; i < request.numHeaders(); i++) {
       headerEncoder.encodeHeader(buf, request.headerName(i), request.headerValue(i), false);
     }
@@ -161,6 +338,12 @@ class ClientConnection extends AbstractConnection<ClientConnection, ClientConnec
     stream.response.header(name, value);
   }
 
+  @Override
+  protected void priorityUpdate(final int prioritizedStreamId, final AsciiString priorityFieldValue)
+      throws Http2Exception {
+    throw new Http2Exception(PROTOCOL_ERROR, "Got PRIORITY_UPDATE from server");
+  }
+
   @Override
   protected void readPseudoHeader(final ClientStream stream, final AsciiString name,
       final AsciiString value) throws Http2Exception {
@@ -185,20 +368,18 @@ class ClientConnection extends AbstractConnection<ClientConnection, ClientConnec
 
   @Override
   protected void endHeaders(final ClientStream stream, final boolean endOfStream) {
+    if (!stream.headersReceived) {
+      stream.headersReceived = true;
+      stream.responseHandler.headers(stream.response);
+    }
   }
 
   @Override
-  protected void readData(final ClientStream stream, final ByteBuf data, final int padding,
+  protected int readData(final ClientStream stream, final ByteBuf data, final int padding,
       final boolean endOfStream) {
-
-    // TODO: allow user to provide codec that can be used to parse payload directly without copying it
-
-    ByteBuf content = stream.response.content();
-    if (content == null) {
-      stream.response.content(Unpooled.copiedBuffer(data));
-    } else {
-      content.writeBytes(data);
-    }
+    final int length = data.readableBytes();
+    stream.responseHandler.data(data);
+    return length;
   }
 
   @Override
@@ -206,6 +387,17 @@ class ClientConnection extends AbstractConnection<ClientConnection, ClientConnec
     return existingStream(streamId);
   }
 
+  @Override
+  protected void peerReset(final ClientStream stream, final long errorCode) {
+    failStream(stream, new StreamResetException(errorCode));
+  }
+
+  @Override
+  protected boolean closed(final int streamId) {
+    // Streams that we have opened and forgotten about, e.g. because they were reset
+    return streamId <= this.streamId;
+  }
+
   @Override
   protected void inboundEnd(final ClientStream stream) throws Http2Exception {
     dispatchResponse(stream);
@@ -214,25 +406,33 @@ class ClientConnection extends AbstractConnection<ClientConnection, ClientConnec
   protected static class ClientStream extends Http2Stream {
 
     private Http2Request request;
-    private Http2ResponseHandler responseHandler;
+    private Http2StreamingResponseHandler responseHandler;
     private Http2Response response = new Http2Response();
+    private boolean headersReceived;
+    private final int contentIndex;
+    private long deadlineNanos;
+    private DeadlineWheel.Deadline<ClientStream> deadline;
 
     public ClientStream(final int id, final int localWindow, final Http2Request request,
-        final Http2ResponseHandler responseHandler) {
+        final Http2StreamingResponseHandler responseHandler) {
       super(id, request.content(), true);
       this.localWindow = localWindow;
       this.request = request;
       this.responseHandler = responseHandler;
+      this.contentIndex = request.hasContent() ? request.content().readerIndex() : 0;
     }
   }
 
   private class RequestPromise extends DefaultChannelPromise {
 
-    private final Http2ResponseHandler responseHandler;
+    private final Http2StreamingResponseHandler responseHandler;
+    private final long deadlineNanos;
 
-    public RequestPromise(final Channel channel, final Http2ResponseHandler responseHandler) {
+    public RequestPromise(final Channel channel, final Http2StreamingResponseHandler responseHandler,
+        final long deadlineNanos) {
       super(channel);
       this.responseHandler = responseHandler;
+      this.deadlineNanos = deadlineNanos;
     }
 
     @Override
@@ -258,12 +458,14 @@ class ClientConnection extends AbstractConnection<ClientConnection, ClientConnec
     }
   }
 
-  private void succeed(final Http2ResponseHandler responseHandler, final Http2Response response) {
+  private void succeed(final Http2StreamingResponseHandler responseHandler, final Http2Response response) {
+    requestDone();
     listener.responseReceived(ClientConnection.this, response);
-    responseHandler.response(response);
+    responseHandler.end();
   }
 
-  private void fail(final Http2ResponseHandler responseHandler, final Throwable t) {
+  private void fail(final Http2StreamingResponseHandler responseHandler, final Throwable t) {
+    requestDone();
     listener.requestFailed(ClientConnection.this);
     responseHandler.failure(t);
   }
@@ -282,6 +484,23 @@ class ClientConnection extends AbstractConnection<ClientConnection, ClientConnec
     void requestFailed(ClientConnection connection);
 
     void responseReceived(ClientConnection connection, Http2Response response);
+
+    /**
+     * Called when the server has announced that it is going away. No new requests will be sent on the connection and
+     * it is closed when the outstanding requests have completed.
+     */
+    void goingAway(ClientConnection connection);
+
+    /**
+     * Called with a request that the server did not process, to be retried on another connection.
+     */
+    void retry(ClientConnection connection, Http2Request request, Http2StreamingResponseHandler responseHandler,
+        long deadlineNanos);
+
+    /**
+     * Called when a PING round trip time has been measured.
+     */
+    void rttMeasured(ClientConnection connection);
   }
 
   static class Builder extends AbstractConnection.Builder<Builder> {
@@ -0,0 +1,74 @@
+package io.norberg.http2;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.AsciiString;
+
+/**
+ * Aggregates DATA frame payloads into message content.
+ */
+class ContentAggregator {
+
+  // Do not allocate more than this up front based on a content-length supplied by the peer. A peer could otherwise
+  // reserve large buffers on many streams while only sending a few bytes. Larger content grows as DATA arrives.
+  static final int MAX_PRESIZED_CONTENT = 64 * 1024;
+
+  /**
+   * Add a DATA frame payload to the content aggregated so far.
+   *
+   * <p>If the message has a content-length, the content is aggregated into a buffer of that size, up to {@link
+   * #MAX_PRESIZED_CONTENT}, which then grows if the content is larger. Otherwise, pooled content is aggregated into a
+   * composite of retained slices of the inbound buffer, avoiding any copying. This is safe as the decoder never
+   * discards or overwrites bytes of an inbound buffer that is still referenced elsewhere.
+   *
+   * @param content The content aggregated so far, or null for the first payload.
+   * @param data    The payload. Only valid for the duration of the call.
+   * @param message The message the content belongs to.
+   * @param pooled  Allocate content using the allocator of the connection. Pooled content must be released.
+   * @return The aggregated content.
+   */
+  static ByteBuf aggregate(ByteBuf content, final ByteBuf data, final Http2Message<?> message,
+      final boolean pooled) {
+    if (content == null) {
+      final int contentLength = contentLength(message);
+      if (contentLength >= 0) {
+        content = pooled ? data.alloc().buffer(contentLength) : Unpooled.buffer(contentLength);
+      } else if (pooled) {
+        content = data.alloc().compositeBuffer(Integer.MAX_VALUE);
+      } else {
+        return Unpooled.copiedBuffer(data);
+      }
+    }
+    if (content instanceof CompositeByteBuf) {
+      ((CompositeByteBuf) content).addComponent(true, data.retainedSlice());
+    } else {
+      content.writeBytes(data, data.readerIndex(), data.readableBytes());
+    }
+    return content;
+  }
+
+  /**
+   * The content-length of a message, capped at {@link #MAX_PRESIZED_CONTENT}, or -1 if absent or invalid.
+   */
+  static int contentLength(final Http2Message<?> message) {
+    for (int i = 0; i < message.numHeaders(); i++) {
+      if (!CONTENT_LENGTH.equals(message.headerName(i))) {
+        continue;
+      }
+      final AsciiString value = message.headerValue(i);
+      try {
+        final long contentLength = value.parseLong();
+        if (contentLength < 0) {
+          return -1;
+        }
+        return (int) Math.min(contentLength, MAX_PRESIZED_CONTENT);
+      } catch (NumberFormatException e) {
+        return -1;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,177 @@
+package io.norberg.http2;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import io.netty.util.concurrent.EventExecutor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+
+/**
+ * A hashed wheel of deadlines, ticked by an event loop. Adding and cancelling a deadline is O(1), which matters as
+ * almost all request deadlines are cancelled long before they expire. Deadlines expire up to one tick late.
+ *
+ * <p>The wheel only ticks while it has pending deadlines. Not thread safe, must only be used on the event loop.
+ */
+class DeadlineWheel<T> {
+
+  static final long DEFAULT_TICK_NANOS = MILLISECONDS.toNanos(10);
+  static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+  private final EventExecutor executor;
+  private final Consumer<T> listener;
+  private final long tickNanos;
+  private final Deadline<T>[] wheel;
+  private final int mask;
+  private final long origin = System.nanoTime();
+
+  // All ticks up to and including this one have been expired
+  private long expiredTick;
+  private int size;
+  private ScheduledFuture<?> ticker;
+
+  DeadlineWheel(final EventExecutor executor, final Consumer<T> listener) {
+    this(executor, listener, DEFAULT_TICK_NANOS, DEFAULT_TICKS_PER_WHEEL);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  DeadlineWheel(final EventExecutor executor, final Consumer<T> listener, final long tickNanos,
+      final int ticksPerWheel) {
+    if (tickNanos <= 0) {
+      throw new IllegalArgumentException("Invalid tick: " + tickNanos);
+    }
+    if (ticksPerWheel <= 0 || Integer.bitCount(ticksPerWheel) != 1) {
+      throw new IllegalArgumentException("Ticks per wheel must be a positive power of two: " + ticksPerWheel);
+    }
+    this.executor = executor;
+    this.listener = listener;
+    this.tickNanos = tickNanos;
+    this.wheel = (Deadline<T>[]) new Deadline[ticksPerWheel];
+    this.mask = ticksPerWheel - 1;
+  }
+
+  /**
+   * Add a deadline. The listener is called with the value when the deadline expires, unless it is cancelled first.
+   *
+   * @param deadlineNanos The deadline, in terms of {@link System#nanoTime()}.
+   */
+  Deadline<T> add(final T value, final long deadlineNanos) {
+    // Round up so that deadlines never expire early
+    final long tick = Math.max(Math.floorDiv(deadlineNanos - origin + tickNanos - 1, tickNanos), expiredTick + 1);
+    final Deadline<T> deadline = new Deadline<>(this, value, tick);
+    final int bucket = (int) (tick & mask);
+    final Deadline<T> head = wheel[bucket];
+    if (head != null) {
+      head.prev = deadline;
+      deadline.next = head;
+    }
+    wheel[bucket] = deadline;
+    deadline.linked = true;
+    size++;
+    if (ticker == null) {
+      ticker = executor.scheduleAtFixedRate(this::tick, tickNanos, tickNanos, NANOSECONDS);
+    }
+    return deadline;
+  }
+
+  /**
+   * The number of pending deadlines.
+   */
+  int size() {
+    return size;
+  }
+
+  private void tick() {
+    expire(System.nanoTime());
+  }
+
+  /**
+   * Expire all deadlines up to and including the tick of a point in time.
+   */
+  void expire(final long nowNanos) {
+    final long nowTick = Math.floorDiv(nowNanos - origin, tickNanos);
+    if (nowTick <= expiredTick) {
+      return;
+    }
+
+    // Visit each bucket at most once, deadlines for later rounds of the wheel stay put
+    final long ticks = Math.min(nowTick - expiredTick, wheel.length);
+    Deadline<T> expired = null;
+    for (long t = expiredTick + 1; t <= expiredTick + ticks; t++) {
+      Deadline<T> deadline = wheel[(int) (t & mask)];
+      while (deadline != null) {
+        final Deadline<T> next = deadline.next;
+        if (deadline.tick <= nowTick) {
+          unlink(deadline);
+          deadline.next = expired;
+          expired = deadline;
+        }
+        deadline = next;
+      }
+    }
+    expiredTick = nowTick;
+
+    // Call the listener last as it might add and cancel deadlines
+    while (expired != null) {
+      final Deadline<T> next = expired.next;
+      expired.next = null;
+      listener.accept(expired.value);
+      expired = next;
+    }
+
+    if (size == 0 && ticker != null) {
+      ticker.cancel(false);
+      ticker = null;
+    }
+  }
+
+  private void cancel(final Deadline<T> deadline) {
+    if (!deadline.linked) {
+      return;
+    }
+    unlink(deadline);
+    if (size == 0 && ticker != null) {
+      ticker.cancel(false);
+      ticker = null;
+    }
+  }
+
+  private void unlink(final Deadline<T> deadline) {
+    if (deadline.prev != null) {
+      deadline.prev.next = deadline.next;
+    } else {
+      wheel[(int) (deadline.tick & mask)] = deadline.next;
+    }
+    if (deadline.next != null) {
+      deadline.next.prev = deadline.prev;
+    }
+    deadline.prev = null;
+    deadline.next = null;
+    deadline.linked = false;
+    size--;
+  }
+
+  static final class Deadline<T> {
+
+    private final DeadlineWheel<T> wheel;
+    private final T value;
+    private final long tick;
+
+    private Deadline<T> prev;
+    private Deadline<T> next;
+    private boolean linked;
+
+    private Deadline(final DeadlineWheel<T> wheel, final T value, final long tick) {
+      this.wheel = wheel;
+      this.value = value;
+      this.tick = tick;
+    }
+
+    /**
+     * Cancel this deadline. Does nothing if it has already expired or been cancelled.
+     */
+    void cancel() {
+      wheel.cancel(this);
+    }
+  }
+}
@@ -9,31 +9,47 @@ import static java.lang.Math.min;
 import io.netty.buffer.ByteBuf;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.List;
-import java.util.Set;
 
 class FlowController<CTX, STREAM extends Http2Stream> {
 
+  private static final Comparator<Http2Stream> PRIORITY_ORDER = FlowController::comparePriority;
+
   private final List<STREAM> newStreams = new ArrayList<>();
   private final List<STREAM> updatedStreams = new ArrayList<>();
   private final Deque<STREAM> connectionWindowBlockedStreams = new ArrayDeque<>();
   private final List<STREAM> streamWindowUpdatedStreams = new ArrayList<>();
 
+  // The streams to write in the current flush, in priority order
+  private final List<STREAM> scheduledStreams = new ArrayList<>();
+  private long flushes;
+
   private int remoteInitialStreamWindow;
   private int remoteConnectionWindow;
   private int remoteMaxFramePayloadSize = DEFAULT_MAX_FRAME_SIZE;
 
   private boolean remoteConnectionWindowUpdated;
 
+  private final Http2Metrics metrics;
+
   FlowController() {
-    this(DEFAULT_INITIAL_WINDOW_SIZE, DEFAULT_INITIAL_WINDOW_SIZE);
+    this(Http2Metrics.NOOP);
+  }
+
+  FlowController(final Http2Metrics metrics) {
+    this(DEFAULT_INITIAL_WINDOW_SIZE, DEFAULT_INITIAL_WINDOW_SIZE, metrics);
   }
 
   FlowController(final int remoteConnectionWindow, final int remoteInitialStreamWindow) {
+    this(remoteConnectionWindow, remoteInitialStreamWindow, Http2Metrics.NOOP);
+  }
+
+  FlowController(final int remoteConnectionWindow, final int remoteInitialStreamWindow, final Http2Metrics metrics) {
     this.remoteInitialStreamWindow = remoteInitialStreamWindow;
     this.remoteConnectionWindow = remoteConnectionWindow;
+    this.metrics = metrics;
   }
 
   int remoteConnectionWindow() {
@@ -102,6 +118,7 @@ class FlowController<CTX, STREAM extends Http2Stream> {
     // Write frames
     writeFrames(ctx, writer, bufferSize);
 
+    scheduledStreams.clear();
     streamWindowUpdatedStreams.clear();
     newStreams.clear();
     updatedStreams.clear();
@@ -110,95 +127,42 @@ class FlowController<CTX, STREAM extends Http2Stream> {
   private void writeFrames(final CTX ctx, final StreamWriter<CTX, STREAM> writer, final int bufferSize)
       throws Http2Exception {
 
-    final ByteBuf buf = (bufferSize == 0)
-        ? null
-        : writer.writeStart(ctx, bufferSize);
-
-    // Write data frames for streams that had window updates
-    if (!streamWindowUpdatedStreams.isEmpty()) {
-      writeWindowUpdatedStreams(ctx, writer, buf);
-    }
-
-    // Write data frames for streams that were blocking on a connection window update
-    if (remoteConnectionWindowUpdated) {
-      writeConnectionWindowBlockedStreams(ctx, writer, buf);
-    }
-
-    if (!updatedStreams.isEmpty()) {
-      writeUpdatedStreams(ctx, writer, buf);
-    }
-
-    // Write headers and data frames for new outgoing streams
-    if (!newStreams.isEmpty()) {
-      writeNewStreams(ctx, writer, buf);
-    }
-
-    // Finish write if there was anything to write
-    if (buf != null) {
-      writer.writeEnd(ctx, buf);
+    if (bufferSize == 0) {
+      // Nothing to write, but streams that are still blocked on the connection window must be queued up again
+      requeueConnectionWindowBlockedStreams();
+      return;
     }
-  }
 
-  private void writeNewStreams(final CTX ctx, final StreamWriter<CTX, STREAM> writer, final ByteBuf buf)
-      throws Http2Exception {
+    final ByteBuf buf = writer.writeStart(ctx, bufferSize);
 
     // Was the remote connection window exhausted?
     final boolean remoteConnectionWindowExhausted = (remoteConnectionWindow == 0);
 
+    // Write the headers of new streams in the order they were started, i.e. in stream id order. Priority must not
+    // reorder them: opening a stream implicitly closes all idle streams with lower ids.
     for (int i = 0; i < newStreams.size(); i++) {
       final STREAM stream = newStreams.get(i);
-      final boolean hasData = hasData(stream);
-      final boolean onlyHeaders = !hasData && stream.endOfStream;
-
-      // Write headers
+      final boolean onlyHeaders = !hasData(stream) && stream.endOfStream;
       writer.writeInitialHeadersFrame(ctx, buf, stream, onlyHeaders);
 
       // End stream here?
       if (onlyHeaders) {
         writer.streamEnd(stream);
-        continue;
-      }
-
-      // Any data to write?
-      if (!hasData) {
-        // Wait for an update
-        continue;
-      }
-
-      // Write data
-      final int size = stream.fragmentSize;
-      if (size > 0) {
-        final boolean allDataWritten = (stream.data.readableBytes() == size);
-        final boolean endOfStream = allDataWritten && stream.endOfStream;
-        writeDataFrames(writer, ctx, buf, stream, size, endOfStream);
-        if (endOfStream) {
-          writer.streamEnd(stream);
-        }
-      }
-
-      // Check if the stream was blocked on an exhausted connection window.
-      if (remoteConnectionWindowExhausted &&
-          stream.data.readableBytes() > 0 &&
-          stream.remoteWindow > 0) {
-        stream.pending = true;
-        connectionWindowBlockedStreams.add(stream);
       }
     }
-  }
-
-  private void writeUpdatedStreams(final CTX ctx, final StreamWriter<CTX, STREAM> writer, final ByteBuf buf)
-      throws Http2Exception {
-
-    // Was the remote connection window exhausted?
-    final boolean remoteConnectionWindowExhausted = (remoteConnectionWindow == 0);
 
-    for (int i = 0; i < updatedStreams.size(); i++) {
-      final STREAM stream = updatedStreams.get(i);
+    // Write data frames in the same order as they were prepared
+    for (int i = 0; i < scheduledStreams.size(); i++) {
+      final STREAM stream = scheduledStreams.get(i);
       final boolean hasData = hasData(stream);
-      final boolean endOfStreamNoData = !hasData && stream.endOfStream;
 
-      // End stream here?
-      if (endOfStreamNoData) {
+      if (stream.headersPending) {
+        // The headers were written above, did they end the stream?
+        stream.headersPending = false;
+        if (!hasData && stream.endOfStream) {
+          continue;
+        }
+      } else if (!hasData && stream.endOfStream) {
         // Write an empty data frame to end the stream
         writeDataFrames(writer, ctx, buf, stream, 0, true);
         writer.streamEnd(stream);
@@ -207,7 +171,7 @@ class FlowController<CTX, STREAM extends Http2Stream> {
 
       // Any data to write?
       if (!hasData) {
-        // Wait for another update
+        // Wait for an update
         continue;
       }
 
@@ -219,6 +183,7 @@ class FlowController<CTX, STREAM extends Http2Stream> {
         writeDataFrames(writer, ctx, buf, stream, size, endOfStream);
         if (endOfStream) {
           writer.streamEnd(stream);
+          continue;
         }
       }
 
@@ -228,134 +193,97 @@ class FlowController<CTX, STREAM extends Http2Stream> {
           stream.remoteWindow > 0) {
         stream.pending = true;
         connectionWindowBlockedStreams.add(stream);
+        metrics.connectionWindowStalled();
+      } else if (stream.data.readableBytes() > 0 && stream.remoteWindow == 0) {
+        // Blocked on the stream window, wait for a window update
+        metrics.streamWindowStalled();
       }
     }
-  }
-
-  private void writeConnectionWindowBlockedStreams(final CTX ctx, final StreamWriter<CTX, STREAM> writer,
-      final ByteBuf buf) throws Http2Exception {
-
-    // Was the remote connection window exhausted?
-    final boolean remoteConnectionWindowExhausted = (remoteConnectionWindow == 0);
-
-    while (true) {
-      final STREAM stream = connectionWindowBlockedStreams.peekFirst();
-      if (stream == null) {
-        break;
-      }
 
-      assert hasData(stream);
-
-      // Bail if the connection window was exhausted before this stream could get any quota.
-      // All following streams in the queue will still be blocked on the connection window.
-      final int size = stream.fragmentSize;
-      if (size == 0) {
-        break;
-      }
-
-      // Write data
-      final boolean allDataWritten = (stream.data.readableBytes() == size);
-      final boolean endOfStream = allDataWritten && stream.endOfStream;
-      writeDataFrames(writer, ctx, buf, stream, size, endOfStream);
-      if (endOfStream) {
-        writer.streamEnd(stream);
-      }
-
-      // Bail if the connection window was exhausted by this stream.
-      // All following streams in the queue will still be blocked on the connection window.
-      if (remoteConnectionWindowExhausted &&
-          stream.data.readableBytes() > 0 &&
-          stream.remoteWindow > 0) {
-        break;
-      }
-
-      // This stream is no longer blocking on the connection window. Remove it from the queue.
-      stream.pending = false;
-      connectionWindowBlockedStreams.removeFirst();
-    }
-
-    remoteConnectionWindowUpdated = false;
+    writer.writeEnd(ctx, buf);
   }
 
-  private void writeWindowUpdatedStreams(final CTX ctx, final StreamWriter<CTX, STREAM> writer, final ByteBuf buf)
-      throws Http2Exception {
-
-    // Was the remote connection window exhausted?
-    final boolean remoteConnectionWindowExhausted = (remoteConnectionWindow == 0);
-
-    for (int i = 0; i < streamWindowUpdatedStreams.size(); i++) {
-      final STREAM stream = streamWindowUpdatedStreams.get(i);
-
-      assert hasData(stream);
-
-      // Write data frames
-      final int size = stream.fragmentSize;
-      final boolean allDataWritten = (stream.data.readableBytes() == size);
-      final boolean endOfStream = allDataWritten && stream.endOfStream;
-      if (size > 0) {
-        writeDataFrames(writer, ctx, buf, stream, size, endOfStream);
-        if (endOfStream) {
-          writer.streamEnd(stream);
-        }
-      }
-
-      // Check if the stream was blocked on an exhausted connection window.
-      if (remoteConnectionWindowExhausted &&
-          stream.data.readableBytes() > 0 &&
-          stream.remoteWindow > 0) {
+  private void requeueConnectionWindowBlockedStreams() {
+    for (int i = 0; i < scheduledStreams.size(); i++) {
+      final STREAM stream = scheduledStreams.get(i);
+      if (hasData(stream) && stream.remoteWindow > 0) {
         stream.pending = true;
         connectionWindowBlockedStreams.add(stream);
+        metrics.connectionWindowStalled();
+      } else if (hasData(stream)) {
+        metrics.streamWindowStalled();
       }
     }
   }
 
   private int prepare(final CTX ctx, final StreamWriter<CTX, STREAM> writer) throws Http2Exception {
-    int size = 0;
 
-    // Prepare data frames for all streams that had window updates
-    for (int i = 0; i < streamWindowUpdatedStreams.size(); i++) {
-      final STREAM stream = streamWindowUpdatedStreams.get(i);
-      stream.pending = false;
-      size += prepareDataFrames(writer, stream, ctx);
+    // Streams that were blocking on a connection window update get another chance
+    if (remoteConnectionWindowUpdated) {
+      scheduledStreams.addAll(connectionWindowBlockedStreams);
+      connectionWindowBlockedStreams.clear();
+      remoteConnectionWindowUpdated = false;
     }
 
-    // Prepare data frames for all streams that were blocking on a connection window update
-    if (remoteConnectionWindowUpdated) {
-      for (final STREAM stream : connectionWindowBlockedStreams) {
-        final int n = prepareDataFrames(writer, stream, ctx);
-        if (n == 0) {
-          // Connection window exhausted again, bail here as the rest will remain blocked
-          break;
-        }
-        size += n;
-      }
+    // Followed by streams that had window updates, updated streams and new outgoing streams
+    scheduledStreams.addAll(streamWindowUpdatedStreams);
+    scheduledStreams.addAll(updatedStreams);
+    scheduledStreams.addAll(newStreams);
+
+    if (scheduledStreams.isEmpty()) {
+      return 0;
+    }
+
+    // Hand out window in priority order, streams of equal priority keep their order. This only orders data, the headers
+    // of new streams are written in stream id order.
+    if (scheduledStreams.size() > 1) {
+      scheduledStreams.sort(PRIORITY_ORDER);
     }
 
-    // Prepare data frames for updated streams
-    for (int i = 0; i < updatedStreams.size(); i++) {
-      final STREAM stream = updatedStreams.get(i);
+    flushes++;
+
+    int size = 0;
+    for (int i = 0; i < scheduledStreams.size(); i++) {
+      final STREAM stream = scheduledStreams.get(i);
       stream.pending = false;
-      // End stream here with an empty data frame?
-      // TODO: Do not send empty data frame if stream has trailers
-      // TODO: refactor prepareDataFrames to handle this case
-      if (stream.endOfStream && !hasData(stream)) {
+      stream.fragmentSize = 0;
+
+      if (stream.headersPending) {
+        // Prepare headers and data frames for new outgoing streams
+        size += writer.estimateInitialHeadersFrameSize(ctx, stream);
+        size += prepareDataFrames(writer, stream, ctx);
+      } else if (stream.endOfStream && !hasData(stream)) {
+        // End stream here with an empty data frame?
+        // TODO: Do not send empty data frame if stream has trailers
         size += prepareEndOfStreamDataFrame(writer, stream, ctx);
       } else {
         size += prepareDataFrames(writer, stream, ctx);
       }
-    }
 
-    // Prepare headers and data frames for new outgoing streams
-    for (int i = 0; i < newStreams.size(); i++) {
-      final STREAM stream = newStreams.get(i);
-      stream.pending = false;
-      size += writer.estimateInitialHeadersFrameSize(ctx, stream);
-      size += prepareDataFrames(writer, stream, ctx);
+      if (stream.fragmentSize > 0) {
+        stream.lastScheduled = flushes;
+      }
     }
 
     return size;
   }
 
+  /**
+   * Most urgent first. Incremental streams of equal urgency take turns, the least recently scheduled first.
+   */
+  private static int comparePriority(final Http2Stream a, final Http2Stream b) {
+    if (a.urgency != b.urgency) {
+      return Integer.compare(a.urgency, b.urgency);
+    }
+    if (a.incremental != b.incremental) {
+      return a.incremental ? 1 : -1;
+    }
+    if (a.incremental) {
+      return Long.compare(a.lastScheduled, b.lastScheduled);
+    }
+    return 0;
+  }
+
   private int prepareEndOfStreamDataFrame(StreamWriter<CTX, STREAM> writer, STREAM stream, CTX ctx)
       throws Http2Exception {
     stream.fragmentSize = 0;
@@ -378,6 +306,7 @@ class FlowController<CTX, STREAM extends Http2Stream> {
     assert !stream.started;
     stream.started = true;
     stream.pending = true;
+    stream.headersPending = true;
     stream.remoteWindow = remoteInitialStreamWindow;
     newStreams.add(stream);
   }
@@ -393,10 +322,16 @@ class FlowController<CTX, STREAM extends Http2Stream> {
 
   void stop(final STREAM stream) {
     assert stream.started;
-    final Set<STREAM> s = Collections.singleton(stream);
-    newStreams.removeAll(s);
-    connectionWindowBlockedStreams.removeAll(s);
-    streamWindowUpdatedStreams.removeAll(s);
+    // A stream is in at most one of the lists, and only while pending
+    if (!stream.pending) {
+      return;
+    }
+    stream.pending = false;
+    if (!newStreams.remove(stream) &&
+        !updatedStreams.remove(stream) &&
+        !connectionWindowBlockedStreams.remove(stream)) {
+      streamWindowUpdatedStreams.remove(stream);
+    }
   }
 
   void remoteConnectionWindowUpdate(final int sizeIncrement) throws Http2Exception {
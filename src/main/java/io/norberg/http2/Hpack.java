@@ -34,7 +34,14 @@ class Hpack {
     return 2 + (32 - numberOfLeadingZeros(i >> 7) + 6) / 7;
   }
 
-  static void writeString(final ByteBuf buf, final AsciiString s) {
+  /**
+   * Write a string literal, huffman encoded if {@code huffman} is true and that makes it shorter.
+   */
+  static void writeString(final ByteBuf buf, final AsciiString s, final boolean huffman) {
+    if (!huffman) {
+      writeRawString(buf, s);
+      return;
+    }
     final int encodedLength = Huffman.encodedLength(s);
     if (encodedLength < s.length()) {
       writeHuffmanString(buf, s, encodedLength);
@@ -92,35 +99,15 @@ class Hpack {
     return prefix;
   }
 
-  static AsciiString readAsciiString(final ByteBuf in) throws HpackDecodingException {
-    final int b = in.readUnsignedByte();
-    final int length = readInteger(b, in, 7);
-    if ((b & 0b1000_0000) != 0) {
-      return readHuffmanAsciiString(in, length);
-    } else {
-      return readAsciiString(in, length);
-    }
-  }
-
-  static AsciiString readAsciiString(final ByteBuf in, final int length) throws HpackDecodingException {
-    final byte[] bytes = new byte[length];
-    in.readBytes(bytes);
-    return new AsciiString(bytes, false);
-  }
-
-  static AsciiString readHuffmanAsciiString(final ByteBuf in, final int length) throws HpackDecodingException {
-    return Huffman.decode(in, length);
-  }
-
   /**
    * https://tools.ietf.org/html/rfc7541#section-6.2.1
    *
    * Figure 6: Literal Header Field with Incremental Indexing -- Indexed Name
    */
   static void writeLiteralHeaderFieldIncrementalIndexing(final ByteBuf out, final int nameIndex,
-      final AsciiString value) {
+      final AsciiString value, final boolean huffman) {
     writeInteger(out, 0b0100_0000, 6, nameIndex);
-    writeString(out, value);
+    writeString(out, value, huffman);
   }
 
   /**
@@ -129,10 +116,10 @@ class Hpack {
    * Figure 7: Literal Header Field with Incremental Indexing -- New Name
    */
   static void writeLiteralHeaderFieldIncrementalIndexingNewName(final ByteBuf out, final AsciiString name,
-      final AsciiString value) {
+      final AsciiString value, final boolean huffman) {
     out.writeByte(0b0100_0000);
-    writeString(out, name);
-    writeString(out, value);
+    writeString(out, name, huffman);
+    writeString(out, value, huffman);
   }
 
   /**
@@ -141,9 +128,9 @@ class Hpack {
    * Figure 8: Literal Header Field without Indexing -- Indexed Name
    */
   static void writeLiteralHeaderFieldWithoutIndexing(final ByteBuf out, final int nameIndex,
-      final AsciiString value) {
+      final AsciiString value, final boolean huffman) {
     writeInteger(out, 0b0000_0000, 4, nameIndex);
-    writeString(out, value);
+    writeString(out, value, huffman);
   }
 
   /**
@@ -152,10 +139,10 @@ class Hpack {
    * Figure 9: Literal Header Field without Indexing -- New Name
    */
   static void writeLiteralHeaderFieldWithoutIndexingNewName(final ByteBuf out, final AsciiString name,
-      final AsciiString value) {
+      final AsciiString value, final boolean huffman) {
     out.writeByte(0);
-    writeString(out, name);
-    writeString(out, value);
+    writeString(out, name, huffman);
+    writeString(out, value, huffman);
   }
 
   /**
@@ -164,9 +151,9 @@ class Hpack {
    * Figure 10: Literal Header Field Never Indexed -- Indexed Name
    */
   static void writeLiteralHeaderFieldNeverIndexed(final ByteBuf out, final int nameIndex,
-      final AsciiString value) {
+      final AsciiString value, final boolean huffman) {
     writeInteger(out, 0b0001_0000, 4, nameIndex);
-    writeString(out, value);
+    writeString(out, value, huffman);
   }
 
   /**
@@ -175,9 +162,9 @@ class Hpack {
    * Figure 11: Literal Header Field Never Indexed -- New Name
    */
   static void writeLiteralHeaderFieldNeverIndexedNewName(final ByteBuf out, final AsciiString name,
-      final AsciiString value) {
+      final AsciiString value, final boolean huffman) {
     out.writeByte(0b0001_0000);
-    writeString(out, name);
-    writeString(out, value);
+    writeString(out, name, huffman);
+    writeString(out, value, huffman);
   }
 }
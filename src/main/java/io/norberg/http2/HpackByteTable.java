@@ -0,0 +1,214 @@
+package io.norberg.http2;
+
+import io.netty.util.AsciiString;
+
+/**
+ * A dynamic table that copies the names and values of its entries into a ring buffer of bytes, with a ring of
+ * offsets, lengths and hash codes as index. Unlike {@link HpackDynamicTable} it does not retain any header objects,
+ * so adding and evicting entries does not allocate. The rings grow on demand, following the bytes actually stored
+ * rather than the maximum table size, and are then reused.
+ */
+class HpackByteTable implements HpackTable {
+
+  private static final int INITIAL_CAPACITY = 256;
+  private static final int INITIAL_ENTRIES = 16;
+
+  // Entry bytes, names immediately followed by values, wrapping around at the end
+  private byte[] bytes = new byte[INITIAL_CAPACITY];
+  private int byteStart;
+  private int byteLength;
+
+  // Entry index, oldest entry at tail
+  private int[] offsets = new int[INITIAL_ENTRIES];
+  private int[] nameLengths = new int[INITIAL_ENTRIES];
+  private int[] valueLengths = new int[INITIAL_ENTRIES];
+  private int[] nameHashes = new int[INITIAL_ENTRIES];
+  private int[] valueHashes = new int[INITIAL_ENTRIES];
+  private int tail;
+  private int length;
+
+  void addFirst(final AsciiString name, final AsciiString value) {
+    final int size = name.length() + value.length();
+    if (bytes.length - byteLength < size) {
+      growBytes(byteLength + size);
+    }
+    if (length == offsets.length) {
+      growEntries();
+    }
+    final int offset = (byteStart + byteLength) & (bytes.length - 1);
+    write(offset, name);
+    write((offset + name.length()) & (bytes.length - 1), value);
+    byteLength += size;
+
+    final int ix = (tail + length) & (offsets.length - 1);
+    offsets[ix] = offset;
+    nameLengths[ix] = name.length();
+    valueLengths[ix] = value.length();
+    nameHashes[ix] = name.hashCode();
+    valueHashes[ix] = value.hashCode();
+    length++;
+  }
+
+  void removeLast() {
+    assert length > 0;
+    final int size = nameLengths[tail] + valueLengths[tail];
+    byteStart = (byteStart + size) & (bytes.length - 1);
+    byteLength -= size;
+    tail = (tail + 1) & (offsets.length - 1);
+    length--;
+  }
+
+  void clear() {
+    byteStart = 0;
+    byteLength = 0;
+    tail = 0;
+    length = 0;
+  }
+
+  /**
+   * The HPACK size of an entry.
+   */
+  int size(final int index) {
+    final int ix = ix(index);
+    return nameLengths[ix] + valueLengths[ix] + 32;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public int nameHash(final int index) {
+    return nameHashes[ix(index)];
+  }
+
+  @Override
+  public int valueHash(final int index) {
+    return valueHashes[ix(index)];
+  }
+
+  @Override
+  public boolean nameEquals(final int index, final AsciiString name) {
+    final int ix = ix(index);
+    return equals(offsets[ix], nameLengths[ix], name);
+  }
+
+  @Override
+  public boolean valueEquals(final int index, final AsciiString value) {
+    final int ix = ix(index);
+    return equals(valueOffset(ix), valueLengths[ix], value);
+  }
+
+  @Override
+  public boolean nameEquals(final int index, final int otherIndex) {
+    final int ix = ix(index);
+    final int otherIx = ix(otherIndex);
+    return equals(offsets[ix], nameLengths[ix], offsets[otherIx], nameLengths[otherIx]);
+  }
+
+  @Override
+  public boolean valueEquals(final int index, final int otherIndex) {
+    final int ix = ix(index);
+    final int otherIx = ix(otherIndex);
+    return equals(valueOffset(ix), valueLengths[ix], valueOffset(otherIx), valueLengths[otherIx]);
+  }
+
+  /**
+   * Copy an entry out of the table.
+   */
+  @Override
+  public Http2Header header(final int index) {
+    final int ix = ix(index);
+    return new Http2Header(read(offsets[ix], nameLengths[ix]), read(valueOffset(ix), valueLengths[ix]), false);
+  }
+
+  private int ix(final int index) {
+    assert index >= 0;
+    assert index < length;
+    return (tail + length - 1 - index) & (offsets.length - 1);
+  }
+
+  private int valueOffset(final int ix) {
+    return (offsets[ix] + nameLengths[ix]) & (bytes.length - 1);
+  }
+
+  private void write(final int offset, final AsciiString s) {
+    final int n = s.length();
+    final int first = Math.min(n, bytes.length - offset);
+    System.arraycopy(s.array(), s.arrayOffset(), bytes, offset, first);
+    System.arraycopy(s.array(), s.arrayOffset() + first, bytes, 0, n - first);
+  }
+
+  private AsciiString read(final int offset, final int n) {
+    final byte[] s = new byte[n];
+    final int first = Math.min(n, bytes.length - offset);
+    System.arraycopy(bytes, offset, s, 0, first);
+    System.arraycopy(bytes, 0, s, first, n - first);
+    return new AsciiString(s, false);
+  }
+
+  private boolean equals(final int offset, final int n, final AsciiString s) {
+    if (s.length() != n) {
+      return false;
+    }
+    final byte[] array = s.array();
+    final int arrayOffset = s.arrayOffset();
+    final int mask = bytes.length - 1;
+    for (int i = 0; i < n; i++) {
+      if (bytes[(offset + i) & mask] != array[arrayOffset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean equals(final int offset, final int n, final int otherOffset, final int otherN) {
+    if (n != otherN) {
+      return false;
+    }
+    final int mask = bytes.length - 1;
+    for (int i = 0; i < n; i++) {
+      if (bytes[(offset + i) & mask] != bytes[(otherOffset + i) & mask]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void growBytes(final int minCapacity) {
+    int capacity = bytes.length * 2;
+    while (capacity < minCapacity) {
+      capacity *= 2;
+    }
+    // Unwrap the entries to the start of the new ring
+    final byte[] newBytes = new byte[capacity];
+    final int first = Math.min(byteLength, bytes.length - byteStart);
+    System.arraycopy(bytes, byteStart, newBytes, 0, first);
+    System.arraycopy(bytes, 0, newBytes, first, byteLength - first);
+    for (int i = 0; i < length; i++) {
+      final int ix = (tail + i) & (offsets.length - 1);
+      offsets[ix] = (offsets[ix] - byteStart) & (bytes.length - 1);
+    }
+    bytes = newBytes;
+    byteStart = 0;
+  }
+
+  private void growEntries() {
+    final int n = offsets.length;
+    offsets = unwrap(offsets);
+    nameLengths = unwrap(nameLengths);
+    valueLengths = unwrap(valueLengths);
+    nameHashes = unwrap(nameHashes);
+    valueHashes = unwrap(valueHashes);
+    tail = 0;
+    assert offsets.length == n * 2;
+  }
+
+  private int[] unwrap(final int[] ring) {
+    final int[] newRing = new int[ring.length * 2];
+    System.arraycopy(ring, tail, newRing, 0, ring.length - tail);
+    System.arraycopy(ring, 0, newRing, ring.length - tail, tail);
+    return newRing;
+  }
+}
@@ -1,40 +1,62 @@
 package io.norberg.http2;
 
-import static io.norberg.http2.Hpack.readAsciiString;
 import static io.norberg.http2.Hpack.readInteger;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.util.AsciiString;
-
+import java.util.Arrays;
+
+/**
+ * Decodes header blocks without allocating for indexed header fields. Literal strings are decoded into a reusable
+ * arena and copied out into exactly sized {@link AsciiString}s, so each literal costs one string and only fields that
+ * are added to the dynamic table are wrapped in a {@link Http2Header}. Short literals are interned in a {@link
+ * Http2HeaderCache}, so repeated literals cost nothing.
+ */
 class HpackDecoder {
 
+  private static final int INITIAL_ARENA_SIZE = 256;
+
   private final HpackDynamicTable dynamicTable = new HpackDynamicTable();
+  private final Http2HeaderCache cache;
+
+  private byte[] arena = new byte[INITIAL_ARENA_SIZE];
 
   private int tableSize;
   private int maxTableSize;
 
   HpackDecoder(final int maxTableSize) {
+    this(maxTableSize, new Http2HeaderCache(Http2HeaderCache.DEFAULT_SIZE));
+  }
+
+  HpackDecoder(final int maxTableSize, final Http2HeaderCache cache) {
     this.maxTableSize = maxTableSize;
+    this.cache = cache;
   }
 
   void decode(final ByteBuf in, final Listener listener) throws Http2Exception {
     while (in.isReadable()) {
       final int b = in.readUnsignedByte();
-      final Http2Header header;
+      final AsciiString name;
+      final AsciiString value;
+      final boolean sensitive;
       if ((b & 0b1000_0000) != 0) {
         // 6.1 Indexed Header Field Representation
         final int index = readInteger(b, in, 7);
-        header = header(index);
+        final Http2Header header = header(index);
+        listener.header(header.name(), header.value(), header.sensitive());
+        continue;
       } else if ((b & 0b0100_0000) != 0) {
         // 6.2.1 Literal Header Field with Incremental Indexing
         if (b != 0b0100_0000) {
           // Literal Header Field with Incremental Indexing — Indexed Name
-          header = readLiteralHeaderFieldIndexedName(b, in, 6, false);
+          name = readIndexedName(b, in, 6);
         } else {
           // Literal Header Field with Incremental Indexing — New Name
-          header = readLiteralHeaderFieldNewName(in, false);
+          name = readName(in);
         }
-        addHeader(header);
+        value = readValue(in);
+        sensitive = false;
+        addHeader(new Http2Header(name, value, false));
       } else if ((b & 0b0010_0000) != 0) {
         final int maxSize = readInteger(b, in, 5);
         setMaxTableSize(maxSize);
@@ -43,22 +65,26 @@ class HpackDecoder {
         // 6.2.3 Literal Header Field Never Indexed
         if (b != 0b0001_0000) {
           // Literal Header Field Never Indexed — Indexed Name
-          header = readLiteralHeaderFieldIndexedName(b, in, 4, true);
+          name = readIndexedName(b, in, 4);
         } else {
           // Literal Header Field Never Indexed — New Name
-          header = readLiteralHeaderFieldNewName(in, true);
+          name = readName(in);
         }
+        value = readValue(in);
+        sensitive = true;
       } else {
         // 6.2.2 Literal Header Field without Indexing
         if (b != 0) {
           // Literal Header Field without Indexing — Indexed Name
-          header = readLiteralHeaderFieldIndexedName(b, in, 4, false);
+          name = readIndexedName(b, in, 4);
         } else {
           // Literal Header Field without Indexing — New Name
-          header = readLiteralHeaderFieldNewName(in, false);
+          name = readName(in);
         }
+        value = readValue(in);
+        sensitive = false;
       }
-      listener.header(header);
+      listener.header(name, value, sensitive);
     }
   }
 
@@ -88,21 +114,55 @@ class HpackDecoder {
     dynamicTable.addFirst(header);
   }
 
-  private Http2Header readLiteralHeaderFieldIndexedName(final int b, final ByteBuf in, final int n,
-      final boolean sensitive)
-      throws HpackDecodingException {
+  private AsciiString readIndexedName(final int b, final ByteBuf in, final int n) throws HpackDecodingException {
     final int index = readInteger(b, in, n);
-    final Http2Header template = header(index);
-    final AsciiString name = template.name();
-    final AsciiString value = readAsciiString(in);
-    return Http2Header.of(name, value, sensitive);
+    return header(index).name();
+  }
+
+  private AsciiString readName(final ByteBuf in) throws HpackDecodingException {
+    return readString(in, true);
+  }
+
+  private AsciiString readValue(final ByteBuf in) throws HpackDecodingException {
+    return readString(in, false);
   }
 
-  static Http2Header readLiteralHeaderFieldNewName(final ByteBuf in, final boolean sensitive)
-      throws HpackDecodingException {
-    final AsciiString name = readAsciiString(in);
-    final AsciiString value = readAsciiString(in);
-    return Http2Header.of(name, value, sensitive);
+  private AsciiString readString(final ByteBuf in, final boolean name) throws HpackDecodingException {
+    final int b = in.readUnsignedByte();
+    final int length = readInteger(b, in, 7);
+    if (length > in.readableBytes()) {
+      throw new HpackDecodingException();
+    }
+    final boolean huffman = (b & 0b1000_0000) != 0;
+    if (length > Http2HeaderCache.MAX_ENCODED_LENGTH) {
+      return decodeString(in, length, huffman);
+    }
+    final int hash = Http2HeaderCache.hash(in, length, huffman);
+    final AsciiString cached = cache.get(in, length, huffman, hash);
+    if (cached != null) {
+      in.skipBytes(length);
+      return cached;
+    }
+    final int offset = in.readerIndex();
+    final AsciiString decoded = decodeString(in, length, huffman);
+    final AsciiString value = name ? HpackStaticTable.name(decoded) : decoded;
+    cache.put(in, offset, length, huffman, hash, value);
+    return value;
+  }
+
+  private AsciiString decodeString(final ByteBuf in, final int length, final boolean huffman) {
+    if (!huffman) {
+      final byte[] bytes = new byte[length];
+      in.readBytes(bytes);
+      return new AsciiString(bytes, false);
+    }
+    // The shortest huffman code is 5 bits, so a huffman string decodes to less than twice its length
+    final int maxLength = length * 2;
+    if (arena.length < maxLength) {
+      arena = new byte[Math.max(maxLength, arena.length * 2)];
+    }
+    final int n = Huffman.decode(in, arena, length);
+    return new AsciiString(Arrays.copyOf(arena, n), false);
   }
 
   private Http2Header header(final int index) throws HpackDecodingException {
@@ -142,7 +202,10 @@ class HpackDecoder {
 
   interface Listener {
 
-    void header(Http2Header header) throws Http2Exception;
+    /**
+     * Called for each decoded header field. Indexed fields are passed straight from the header tables.
+     */
+    void header(AsciiString name, AsciiString value, boolean sensitive) throws Http2Exception;
   }
 
 }
@@ -2,7 +2,9 @@ package io.norberg.http2;
 
 import static java.lang.Integer.bitCount;
 
-class HpackDynamicTable {
+import io.netty.util.AsciiString;
+
+class HpackDynamicTable implements HpackTable {
 
   private int head;
   private int tail;
@@ -32,11 +34,43 @@ class HpackDynamicTable {
     return header;
   }
 
-  Http2Header header(final int index) {
+  @Override
+  public Http2Header header(final int index) {
     return table[ix(index)];
   }
 
-  int length() {
+  @Override
+  public int nameHash(final int index) {
+    return header(index).name().hashCode();
+  }
+
+  @Override
+  public int valueHash(final int index) {
+    return header(index).value().hashCode();
+  }
+
+  @Override
+  public boolean nameEquals(final int index, final AsciiString name) {
+    return header(index).name().equals(name);
+  }
+
+  @Override
+  public boolean valueEquals(final int index, final AsciiString value) {
+    return header(index).value().equals(value);
+  }
+
+  @Override
+  public boolean nameEquals(final int index, final int otherIndex) {
+    return header(index).name().equals(header(otherIndex).name());
+  }
+
+  @Override
+  public boolean valueEquals(final int index, final int otherIndex) {
+    return header(index).value().equals(header(otherIndex).value());
+  }
+
+  @Override
+  public int length() {
     return (head - tail) & (table.length - 1);
   }
 
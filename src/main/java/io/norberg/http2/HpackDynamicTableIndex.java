@@ -27,9 +27,9 @@ final class HpackDynamicTableIndex {
 
   private int seq = 0;
 
-  private final HpackDynamicTable headerTable;
+  private final HpackTable headerTable;
 
-  HpackDynamicTableIndex(final HpackDynamicTable headerTable) {
+  HpackDynamicTableIndex(final HpackTable headerTable) {
     this.headerTable = headerTable;
     this.growthThreshold = (int) (loadFactor * table.length / 2);
   }
@@ -46,20 +46,32 @@ final class HpackDynamicTableIndex {
     return lookup(name, value, table, headerTable, seq);
   }
 
-  void insert(Http2Header header) {
+  /**
+   * Index the most recently added table entry.
+   */
+  void insert() {
     seq++;
     if (headerTable.length() > growthThreshold) {
       rehash(table.length << 1);
       return;
     }
-    insert(table, header.name(), header.value(), hash(header.name(), header.value()), seq, seq, headerTable);
-    insert(table, header.name(), null, hash(header.name()), seq, seq, headerTable);
+    final int nameHash = headerTable.nameHash(0);
+    final int valueHash = headerTable.valueHash(0);
+    insert(table, true, hash(nameHash, valueHash), seq, seq, headerTable);
+    insert(table, false, hash(nameHash), seq, seq, headerTable);
   }
 
   void remove(Http2Header header) {
+    remove(header.name().hashCode(), header.value().hashCode());
+  }
+
+  /**
+   * Remove the entry that was just evicted from the table, given the hash codes of its name and value.
+   */
+  void remove(final int nameHash, final int valueHash) {
     int headerSeq = seq - headerTable.length();
-    remove0(table, headerSeq, hash(header.name(), header.value()));
-    remove0(table, headerSeq, hash(header.name()));
+    remove0(table, headerSeq, hash(nameHash, valueHash));
+    remove0(table, headerSeq, hash(nameHash));
   }
 
   void clear() {
@@ -79,22 +91,22 @@ final class HpackDynamicTableIndex {
     final int insertSeq = this.seq;
     int seq = insertSeq - headerTable.length();
     for (int i = headerTable.length() - 1; i >= 0; i--) {
-      final Http2Header header = headerTable.header(i);
+      final int nameHash = headerTable.nameHash(i);
+      final int valueHash = headerTable.valueHash(i);
       seq++;
-      insert(table, header.name(), header.value(), hash(header.name(), header.value()), seq, insertSeq, headerTable);
-      insert(table, header.name(), null, hash(header.name()), seq, insertSeq, headerTable);
+      insert(table, true, hash(nameHash, valueHash), seq, insertSeq, headerTable);
+      insert(table, false, hash(nameHash), seq, insertSeq, headerTable);
     }
   }
 
-  static void insert(final long[] table, final AsciiString insertName, final AsciiString insertValue,
-      final int insertHash, final int insertSeq,
-      final int tableSeq, final HpackDynamicTable headerTable) {
+  static void insert(final long[] table, final boolean header, final int insertHash, final int insertSeq,
+      final int tableSeq, final HpackTable headerTable) {
     final int capacity = table.length;
     final int mask = capacity - 1;
     final int insertIB = ib(insertHash, mask);
 
-    AsciiString name = insertName;
-    AsciiString value = insertValue;
+    // The table index of the entry being inserted, or -1 once it has been placed and a displaced entry is carried
+    int insertTableIndex = entryTableIndex(tableSeq, insertSeq);
     int seq = insertSeq;
     int hash = insertHash;
     int dist = 0;
@@ -119,9 +131,9 @@ final class HpackDynamicTableIndex {
       final int entryTableIndex = entryTableIndex(tableSeq, entrySeq);
 
       // Is the entry identical?
-      if (hash == entryHash && name != null) {
-        final Http2Header probeHeader = headerTable.header(entryTableIndex);
-        if (probeHeader.name().equals(name) && (value == null || probeHeader.value().equals(value))) {
+      if (hash == entryHash && insertTableIndex != -1) {
+        if (headerTable.nameEquals(entryTableIndex, insertTableIndex) &&
+            (!header || headerTable.valueEquals(entryTableIndex, insertTableIndex))) {
           table[pos] = entry(seq, hash);
           return;
         }
@@ -136,7 +148,7 @@ final class HpackDynamicTableIndex {
         seq = entrySeq;
         hash = entryHash;
         dist = entryDIB;
-        name = null;
+        insertTableIndex = -1;
       }
 
       dist++;
@@ -199,18 +211,18 @@ final class HpackDynamicTableIndex {
   }
 
   private static int lookup(AsciiString name, AsciiString value, final long[] table,
-      final HpackDynamicTable headerTable,
+      final HpackTable headerTable,
       final int seq) {
     return lookup0(table, headerTable, seq, name, value, hash(name, value));
   }
 
-  private static int lookup(final AsciiString name, final long[] table, final HpackDynamicTable headerTable,
+  private static int lookup(final AsciiString name, final long[] table, final HpackTable headerTable,
       final int seq) {
     return lookup0(table, headerTable, seq, name, null, hash(name));
   }
 
 
-  private static int lookup0(final long[] table, final HpackDynamicTable headerTable, final int seq,
+  private static int lookup0(final long[] table, final HpackTable headerTable, final int seq,
       final AsciiString name, final AsciiString value,
       final int hash) {
     final int mask = table.length - 1;
@@ -239,9 +251,8 @@ final class HpackDynamicTableIndex {
       final int entryTableIndex = entryTableIndex(seq, entrySeq);
 
       if (hash == entryHash) {
-        final Http2Header entryHeader = headerTable.header(entryTableIndex);
-        if (entryHeader.name().equals(name) &&
-            (value == null || entryHeader.value().equals(value))) {
+        if (headerTable.nameEquals(entryTableIndex, name) &&
+            (value == null || headerTable.valueEquals(entryTableIndex, value))) {
           return entryTableIndex + 1;
         }
       }
@@ -276,14 +287,22 @@ final class HpackDynamicTableIndex {
   }
 
   private static int hash(AsciiString name, AsciiString value) {
-    final int hash = mix((31 * name.hashCode()) ^ value.hashCode()) | HEADER;
+    return hash(name.hashCode(), value.hashCode());
+  }
+
+  private static int hash(AsciiString name) {
+    return hash(name.hashCode());
+  }
+
+  private static int hash(final int nameHash, final int valueHash) {
+    final int hash = mix((31 * nameHash) ^ valueHash) | HEADER;
     return (hash == 0)
         ? 1_190_494_759
         : hash;
   }
 
-  private static int hash(AsciiString name) {
-    final int hash = mix(name.hashCode()) & ~HEADER;
+  private static int hash(final int nameHash) {
+    final int hash = mix(nameHash) & ~HEADER;
     return (hash == 0)
         ? 1_190_494_759
         : hash;
@@ -342,7 +361,7 @@ final class HpackDynamicTableIndex {
     validate(table, headerTable, seq);
   }
 
-  private static void validate(long[] table, HpackDynamicTable headerTable, int seq) {
+  private static void validate(long[] table, HpackTable headerTable, int seq) {
     final int mask = table.length - 1;
     Set<Http2Header> headers = new HashSet<>();
     Set<AsciiString> names = new HashSet<>();
@@ -11,30 +11,91 @@ import static io.norberg.http2.PseudoHeaders.STATUS;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.util.AsciiString;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 class HpackEncoder {
 
-  private final HpackDynamicTable dynamicTable = new HpackDynamicTable();
+  private final Http2HeaderEncoding encoding;
+  private final HpackByteTable dynamicTable = new HpackByteTable();
   private final HpackDynamicTableIndex tableIndex;
   private int tableSize;
   private int maxTableSize;
 
+  // The number of headers ever added to the dynamic table, numbering the entries
+  private long insertions;
+
+  // The dynamic table entry numbers of the fields of each template encoded by this encoder, or zero if not indexed
+  private final Map<HpackTemplate, long[]> templates = new WeakHashMap<>();
+
   HpackEncoder(final int maxTableSize) {
+    this(maxTableSize, Http2HeaderEncoding.DEFAULT);
+  }
+
+  HpackEncoder(final int maxTableSize, final Http2HeaderEncoding encoding) {
     this.maxTableSize = maxTableSize;
+    this.encoding = encoding;
     this.tableIndex = new HpackDynamicTableIndex(dynamicTable);
   }
 
   void encodeRequest(final ByteBuf out, final AsciiString method, final AsciiString scheme, final AsciiString authority,
       final AsciiString path) {
-    writeIndexedHeaderField(out, methodIndex(method), method);
-    writeIndexedHeaderField(out, schemeIndex(scheme), scheme);
-    writeIndexedHeaderField(out, authorityIndex(authority), authority);
-    writeIndexedHeaderField(out, pathIndex(path), path);
+    writeIndexedHeaderField(out, methodIndex(method), METHOD, method);
+    writeIndexedHeaderField(out, schemeIndex(scheme), SCHEME, scheme);
+    writeIndexedHeaderField(out, authorityIndex(authority), AUTHORITY, authority);
+    writeIndexedHeaderField(out, pathIndex(path), PATH, path);
+  }
+
+  /**
+   * Encode the pseudo header fields of a template, then the path, then the regular header fields of the template.
+   */
+  void encodeRequest(final ByteBuf out, final HpackTemplate template, final AsciiString path)
+      throws HpackEncodingException {
+    encodeTemplate(out, template, 0, template.pseudoHeaders());
+    writeIndexedHeaderField(out, pathIndex(path), PATH, path);
+    encodeTemplate(out, template, template.pseudoHeaders(), template.length());
+  }
+
+  void encodeTemplate(final ByteBuf out, final HpackTemplate template, final int from, final int to)
+      throws HpackEncodingException {
+    long[] entries = templates.get(template);
+    if (entries == null) {
+      entries = new long[template.length()];
+      templates.put(template, entries);
+    }
+    for (int i = from; i < to; i++) {
+      final int staticIndex = template.staticIndex(i);
+      if (staticIndex != 0) {
+        Hpack.writeIndexedHeaderField(out, staticIndex);
+        continue;
+      }
+      final int dynamicIndex = dynamicIndex(entries[i]);
+      if (dynamicIndex != 0) {
+        Hpack.writeIndexedHeaderField(out, dynamicIndex + HpackStaticTable.length());
+        continue;
+      }
+      // Not indexed yet or evicted, encode and remember where it ended up
+      final Http2Header header = template.header(i);
+      encodeHeader(out, header.name(), header.value());
+      final int index = tableIndex.lookup(header.name(), header.value());
+      entries[i] = (index == 0) ? 0 : insertions - index + 1;
+    }
+  }
+
+  /**
+   * The dynamic table index of an entry, counting from 1, or zero if it has been evicted.
+   */
+  private int dynamicIndex(final long entry) {
+    if (entry == 0) {
+      return 0;
+    }
+    final long age = insertions - entry;
+    return age < dynamicTable.length() ? (int) age + 1 : 0;
   }
 
   void encodeResponse(final ByteBuf out, final AsciiString status) {
     final int statusIndex = statusIndex(status);
-    writeIndexedHeaderField(out, statusIndex, status);
+    writeIndexedHeaderField(out, statusIndex, STATUS, status);
   }
 
   void encodeHeader(final ByteBuf out, final AsciiString name, final AsciiString value, final boolean sensitive)
@@ -49,29 +110,17 @@ class HpackEncoder {
   void encodeHeader(final ByteBuf out, final AsciiString name, final AsciiString value)
       throws HpackEncodingException {
     final int index = headerIndex(name, value);
-    if (index != 0) {
-      if (isIndexedName(index)) {
-        final int nameIndex = nameIndex(index);
-        // TODO: use name instead?
-        indexHeader(name(nameIndex), value);
-        Hpack.writeLiteralHeaderFieldIncrementalIndexing(out, nameIndex, value);
-      } else {
-        Hpack.writeIndexedHeaderField(out, index);
-      }
-    } else {
-      indexHeader(name, value);
-      Hpack.writeLiteralHeaderFieldIncrementalIndexingNewName(out, name, value);
-    }
+    writeIndexedHeaderField(out, index, name, value);
   }
 
   void encodeSensitiveHeader(final ByteBuf out, final AsciiString name, final AsciiString value)
       throws HpackEncodingException {
-    final int index = nameIndex(name);
-    if (index != 0) {
-      final int nameIndex = nameIndex(index);
-      Hpack.writeLiteralHeaderFieldNeverIndexed(out, nameIndex, value);
+    final int nameIndex = nameIndex(name);
+    final boolean huffman = encoding.huffman(name, value);
+    if (nameIndex != 0) {
+      Hpack.writeLiteralHeaderFieldNeverIndexed(out, nameIndex, value, huffman);
     } else {
-      Hpack.writeLiteralHeaderFieldNeverIndexedNewName(out, name, value);
+      Hpack.writeLiteralHeaderFieldNeverIndexedNewName(out, name, value, huffman);
     }
   }
 
@@ -135,13 +184,40 @@ class HpackEncoder {
     return staticIndex;
   }
 
-  private void writeIndexedHeaderField(final ByteBuf out, final int index, final AsciiString value) {
-    if (isIndexedName(index)) {
-      final int nameIndex = nameIndex(index);
-      indexHeader(name(nameIndex), value);
-      Hpack.writeLiteralHeaderFieldIncrementalIndexing(out, nameIndex, value);
-    } else {
+  private void writeIndexedHeaderField(final ByteBuf out, final int index, final AsciiString name,
+      final AsciiString value) {
+    if (isIndexedField(index)) {
       Hpack.writeIndexedHeaderField(out, index);
+      return;
+    }
+    // Not in any table, let the encoding strategy decide how to represent it
+    final int nameIndex = (index != 0) ? nameIndex(index) : 0;
+    final boolean huffman = encoding.huffman(name, value);
+    switch (encoding.indexing(name, value)) {
+      case INCREMENTAL:
+        indexHeader(name, value);
+        if (nameIndex != 0) {
+          Hpack.writeLiteralHeaderFieldIncrementalIndexing(out, nameIndex, value, huffman);
+        } else {
+          Hpack.writeLiteralHeaderFieldIncrementalIndexingNewName(out, name, value, huffman);
+        }
+        break;
+      case NONE:
+        if (nameIndex != 0) {
+          Hpack.writeLiteralHeaderFieldWithoutIndexing(out, nameIndex, value, huffman);
+        } else {
+          Hpack.writeLiteralHeaderFieldWithoutIndexingNewName(out, name, value, huffman);
+        }
+        break;
+      case NEVER:
+        if (nameIndex != 0) {
+          Hpack.writeLiteralHeaderFieldNeverIndexed(out, nameIndex, value, huffman);
+        } else {
+          Hpack.writeLiteralHeaderFieldNeverIndexedNewName(out, name, value, huffman);
+        }
+        break;
+      default:
+        throw new AssertionError();
     }
   }
 
@@ -158,9 +234,7 @@ class HpackEncoder {
   }
 
   private void indexHeader(final AsciiString name, final AsciiString value) {
-    // TODO: eliminate header object garbage
-    final Http2Header header = Http2Header.of(name, value);
-    final int headerSize = header.size();
+    final int headerSize = Http2Header.size(name, value);
     int newTableSize = tableSize + headerSize;
     if (newTableSize > maxTableSize) {
       if (headerSize > maxTableSize) {
@@ -170,30 +244,32 @@ class HpackEncoder {
         return;
       }
       while (newTableSize > maxTableSize) {
-        final int index = dynamicTable.length();
-        final Http2Header removed = dynamicTable.removeLast();
-        tableIndex.remove(removed);
-        newTableSize -= removed.size();
+        newTableSize -= evictLast();
       }
     }
     tableSize = newTableSize;
-    dynamicTable.addFirst(header);
-    tableIndex.insert(header);
-  }
-
-  private static int nameIndex(final int index) {
-    return HpackStaticTable.nameIndex(index);
+    dynamicTable.addFirst(name, value);
+    tableIndex.insert();
+    insertions++;
   }
 
-  private AsciiString name(final int index) {
-    return header(index & (~INDEXED_NAME)).name();
+  /**
+   * Evict the oldest entry.
+   *
+   * @return The size of the evicted entry.
+   */
+  private int evictLast() {
+    final int last = dynamicTable.length() - 1;
+    final int size = dynamicTable.size(last);
+    final int nameHash = dynamicTable.nameHash(last);
+    final int valueHash = dynamicTable.valueHash(last);
+    dynamicTable.removeLast();
+    tableIndex.remove(nameHash, valueHash);
+    return size;
   }
 
-  private Http2Header header(final int index) {
-    if (index <= HpackStaticTable.length()) {
-      return HpackStaticTable.header(index);
-    }
-    return dynamicTable.header(index - HpackStaticTable.length() - 1);
+  private static int nameIndex(final int index) {
+    return HpackStaticTable.nameIndex(index);
   }
 
   private int headerIndex(final AsciiString name, final AsciiString value) throws HpackEncodingException {
@@ -214,26 +290,33 @@ class HpackEncoder {
     return dynamicIndex;
   }
 
+  /**
+   * The index of a name in the static or dynamic table, or zero if it is in neither.
+   */
   private int nameIndex(final AsciiString name) throws HpackEncodingException {
     final int staticIndex = HpackStaticTable.nameIndex(name);
     if (staticIndex != 0) {
       return staticIndex;
     }
-    return tableIndex.lookup(name) + HpackStaticTable.length();
+    final int dynamicIndex = tableIndex.lookup(name);
+    return (dynamicIndex != 0) ? dynamicIndex + HpackStaticTable.length() : 0;
   }
 
   int tableLength() {
     return dynamicTable.length();
   }
 
+  int tableSize() {
+    return tableSize;
+  }
+
   int maxTableSize() {
     return maxTableSize;
   }
 
   void setMaxTableSize(int maxTableSize) {
     while (tableSize > maxTableSize) {
-      final Http2Header removed = dynamicTable.removeLast();
-      tableSize -= removed.size();
+      tableSize -= evictLast();
     }
     this.maxTableSize = maxTableSize;
   }
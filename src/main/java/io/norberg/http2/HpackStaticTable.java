@@ -132,6 +132,7 @@ class HpackStaticTable {
   }
 
   private static final Map<AsciiString, List<Entry>> index = index(TABLE);
+  private static final Map<AsciiString, AsciiString> names = names(TABLE);
 
   private static Map<AsciiString, List<Entry>> index(Http2Header[] table) {
     // TODO: cache friendly index
@@ -144,6 +145,14 @@ class HpackStaticTable {
     return index;
   }
 
+  private static Map<AsciiString, AsciiString> names(Http2Header[] table) {
+    final Map<AsciiString, AsciiString> names = new HashMap<>();
+    for (final Http2Header header : table) {
+      names.putIfAbsent(header.name(), header.name());
+    }
+    return names;
+  }
+
   private static Http2Header h(final CharSequence name, final CharSequence value) {
     return Http2Header.of(name, value);
   }
@@ -152,6 +161,13 @@ class HpackStaticTable {
     return TABLE[index - 1];
   }
 
+  /**
+   * The table instance of a header name, or the name itself if it is not in the table.
+   */
+  static AsciiString name(final AsciiString name) {
+    return names.getOrDefault(name, name);
+  }
+
   static int length() {
     return TABLE_LENGTH;
   }
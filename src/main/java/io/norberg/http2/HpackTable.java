@@ -0,0 +1,32 @@
+package io.norberg.http2;
+
+import io.netty.util.AsciiString;
+
+/**
+ * A HPACK dynamic table as seen by {@link HpackDynamicTableIndex}. Entries are numbered from 0, the most recently
+ * added entry.
+ */
+interface HpackTable {
+
+  int length();
+
+  /**
+   * The {@link AsciiString#hashCode()} of the name of an entry.
+   */
+  int nameHash(int index);
+
+  /**
+   * The {@link AsciiString#hashCode()} of the value of an entry.
+   */
+  int valueHash(int index);
+
+  boolean nameEquals(int index, AsciiString name);
+
+  boolean valueEquals(int index, AsciiString value);
+
+  boolean nameEquals(int index, int otherIndex);
+
+  boolean valueEquals(int index, int otherIndex);
+
+  Http2Header header(int index);
+}
@@ -0,0 +1,68 @@
+package io.norberg.http2;
+
+import static io.norberg.http2.HpackStaticTable.isIndexedField;
+
+import java.util.List;
+
+/**
+ * A fixed list of header fields that is encoded repeatedly. Fields that are in the static table are looked up once,
+ * and a {@link HpackEncoder} remembers where the other fields are in its dynamic table, so that a template can be
+ * encoded as indexed fields without looking anything up.
+ */
+final class HpackTemplate {
+
+  private final Http2Header[] headers;
+  private final int[] staticIndices;
+  private final int pseudoHeaders;
+  private final int size;
+
+  HpackTemplate(final List<Http2Header> headers) throws HpackEncodingException {
+    this.headers = headers.toArray(new Http2Header[0]);
+    this.staticIndices = new int[this.headers.length];
+    int pseudoHeaders = 0;
+    int size = 0;
+    for (int i = 0; i < this.headers.length; i++) {
+      final Http2Header header = this.headers[i];
+      final int staticIndex = HpackStaticTable.headerIndex(header.name(), header.value());
+      staticIndices[i] = isIndexedField(staticIndex) ? staticIndex : 0;
+      if (header.name().byteAt(0) == ':') {
+        if (pseudoHeaders != i) {
+          throw new IllegalArgumentException("Pseudo header after regular headers: " + header.name());
+        }
+        pseudoHeaders++;
+      }
+      size += header.size();
+    }
+    this.pseudoHeaders = pseudoHeaders;
+    this.size = size;
+  }
+
+  int length() {
+    return headers.length;
+  }
+
+  Http2Header header(final int i) {
+    return headers[i];
+  }
+
+  /**
+   * The full static table index of a field, or zero if it is not in the static table.
+   */
+  int staticIndex(final int i) {
+    return staticIndices[i];
+  }
+
+  /**
+   * The number of pseudo header fields, which come before all regular header fields.
+   */
+  int pseudoHeaders() {
+    return pseudoHeaders;
+  }
+
+  /**
+   * The total size of the fields, as counted by HPACK.
+   */
+  int size() {
+    return size;
+  }
+}
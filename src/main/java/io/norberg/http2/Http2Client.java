@@ -2,9 +2,12 @@ package io.norberg.http2;
 
 import static io.netty.handler.codec.http.HttpMethod.GET;
 import static io.netty.handler.codec.http.HttpMethod.POST;
+import static io.netty.handler.codec.http.HttpScheme.HTTP;
 import static io.netty.handler.codec.http.HttpScheme.HTTPS;
 import static io.norberg.http2.Util.allOf;
 import static io.norberg.http2.Util.completableFuture;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import io.netty.bootstrap.Bootstrap;
@@ -15,7 +18,7 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.ssl.SslContext;
 import io.netty.util.AsciiString;
 import io.netty.util.AttributeKey;
@@ -25,43 +28,80 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 public class Http2Client implements ClientConnection.Listener {
 
   private static final int DEFAULT_PORT = HTTPS.port();
+  private static final int DEFAULT_CLEARTEXT_PORT = HTTP.port();
+
+  private static final long POOL_MAINTENANCE_INTERVAL_MILLIS = 1000;
 
   private final ConcurrentLinkedQueue<QueuedRequest> queue = new ConcurrentLinkedQueue<>();
+
+  // Established connections, in order of establishment
+  private final CopyOnWriteArrayList<ClientConnection> connections = new CopyOnWriteArrayList<>();
+
+  // Connections that are handshaking
+  private final Set<ClientConnection> handshakingConnections = ConcurrentHashMap.newKeySet();
+
+  // Connection attempts that are in flight
+  private final AtomicInteger pendingConnections = new AtomicInteger();
+
+  // An established connection that is kept ready to replace a connection that is lost
+  private final AtomicReference<ClientConnection> standby = new AtomicReference<>();
+
   private final LongAdder outstanding = new LongAdder();
 
   private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(
       0, new DefaultThreadFactory(Http2Client.class, true));
 
   private final InetSocketAddress address;
+  private final AsciiString scheme;
+  private final Transport transport;
   private final EventLoopGroup workerGroup;
   private final AsciiString authority;
 
   private final CompletableFuture<Void> closeFuture = new CompletableFuture<>();
   private final Listener listener;
 
+  private final int minConnections;
+  private final int maxConnections;
+  private final long idleConnectionTimeoutNanos;
+  private final long requestTimeoutNanos;
+  private final boolean pooledContent;
+  private final LatencyRecorder latencyRecorder;
+  private final boolean standbyConnection;
+  private final Backoff connectBackoff;
+
   private volatile long remoteMaxConcurrentStreams = Long.MAX_VALUE;
 
-  private volatile ClientConnection pendingConnection;
-  private volatile ClientConnection connection;
   private volatile boolean closed;
   private ClientConnection.Builder connectionBuilder;
 
   private Http2Client(final Builder builder) {
     Objects.requireNonNull(builder.address, "address");
+    this.scheme = builder.cleartext ? HTTP.name() : HTTPS.name();
+    this.pooledContent = builder.pooledContent;
+    this.latencyRecorder = builder.latencyRecorder;
     if (builder.address.getPort() == 0) {
-      this.address = InetSocketAddress.createUnresolved(builder.address.getHostString(), DEFAULT_PORT);
+      final int port = builder.cleartext ? DEFAULT_CLEARTEXT_PORT : DEFAULT_PORT;
+      this.address = InetSocketAddress.createUnresolved(builder.address.getHostString(), port);
       this.authority = new AsciiString(address.getHostString());
     } else {
       this.address = builder.address;
@@ -71,33 +111,63 @@ public class Http2Client implements ClientConnection.Listener {
     if (builder.maxConcurrentStreams != null && builder.maxConcurrentStreams < 0) {
       throw new IllegalArgumentException("Invalid maxConcurrentStreams: " + builder.maxConcurrentStreams);
     }
+    if (builder.minConnections < 1) {
+      throw new IllegalArgumentException("Invalid minConnections: " + builder.minConnections);
+    }
+    if (builder.maxConnections < builder.minConnections) {
+      throw new IllegalArgumentException("Invalid maxConnections: " + builder.maxConnections);
+    }
+
+    this.minConnections = builder.minConnections;
+    this.maxConnections = builder.maxConnections;
+    this.idleConnectionTimeoutNanos = builder.idleConnectionTimeoutNanos;
+    this.requestTimeoutNanos = builder.requestTimeoutNanos;
+    this.standbyConnection = builder.standbyConnection;
+    this.connectBackoff = new Backoff(builder.initialConnectBackoffNanos, builder.maxConnectBackoffNanos);
 
-    this.workerGroup = Util.defaultEventLoopGroup();
+    this.transport = builder.transport.resolve();
+    this.workerGroup = transport.defaultEventLoopGroup();
     this.listener = Optional.ofNullable(builder.listener).orElse(new ListenerAdapter());
 
     this.connectionBuilder = ClientConnection.builder()
         .listener(this)
-        .sslContext(Optional.ofNullable(builder.sslContext).orElseGet(Util::defaultClientSslContext))
+        .sslContext(builder.cleartext
+            ? null
+            : Optional.ofNullable(builder.sslContext).orElseGet(Util::defaultClientSslContext))
         .maxConcurrentStreams(builder.maxConcurrentStreams)
         .maxFrameSize(builder.maxFrameSize)
         .connectionWindowSize(builder.connectionWindow)
-        .initialStreamWindowSize(builder.streamWindow);
+        .initialStreamWindowSize(builder.streamWindow)
+        .zeroCopyWriteThreshold(builder.zeroCopyWriteThreshold)
+        .metrics(builder.metrics)
+        .pingIntervalNanos(builder.pingIntervalNanos)
+        .pingTimeoutNanos(builder.pingTimeoutNanos)
+        .maxAdaptiveWindow(builder.maxAdaptiveWindow)
+        .headerCache(builder.headerCache)
+        .headerEncoding(builder.headerEncoding);
+
+    for (int i = 0; i < minConnections; i++) {
+      connect();
+    }
 
-    connect();
+    scheduler.scheduleWithFixedDelay(this::maintainPool,
+        POOL_MAINTENANCE_INTERVAL_MILLIS, POOL_MAINTENANCE_INTERVAL_MILLIS, MILLISECONDS);
   }
 
   public CompletableFuture<Void> close() {
     closed = true;
     scheduler.shutdownNow();
     final List<CompletableFuture<?>> closeFutures = new ArrayList<>();
-    final ClientConnection pendingConnection = this.pendingConnection;
-    if (pendingConnection != null) {
-      closeFutures.add(completableFuture(pendingConnection.close()));
+    for (final ClientConnection connection : handshakingConnections) {
+      closeFutures.add(completableFuture(connection.close()));
     }
-    final ClientConnection connection = this.connection;
-    if (connection != null) {
+    for (final ClientConnection connection : connections) {
       closeFutures.add(completableFuture(connection.close()));
     }
+    final ClientConnection standby = this.standby.getAndSet(null);
+    if (standby != null) {
+      closeFutures.add(completableFuture(standby.close()));
+    }
     allOf(closeFutures).whenComplete((ignore, ex) -> closeFuture.complete(null));
     return closeFuture;
   }
@@ -120,30 +190,156 @@ public class Http2Client implements ClientConnection.Listener {
     return send(request);
   }
 
+  /**
+   * Create a template for requests that share a method and headers. The headers of the template are encoded once per
+   * connection and then sent as references to the HPACK dynamic table, which is cheaper than encoding them for every
+   * request. Templates should be created once and reused.
+   */
+  public Http2RequestTemplate template(final HttpMethod method,
+      final Iterable<Entry<AsciiString, AsciiString>> headers) {
+    final List<Http2Header> fields = new ArrayList<>();
+    fields.add(new Http2Header(PseudoHeaders.METHOD, method.asciiName(), false));
+    fields.add(new Http2Header(PseudoHeaders.SCHEME, scheme, false));
+    fields.add(new Http2Header(PseudoHeaders.AUTHORITY, authority, false));
+    for (final Entry<AsciiString, AsciiString> header : headers) {
+      final AsciiString name = header.getKey();
+      if (name.isEmpty() || name.byteAt(0) == ':' || !Http2WireFormat.isValidHeaderName(name)) {
+        throw new IllegalArgumentException("Invalid header name: " + name);
+      }
+      fields.add(new Http2Header(name, header.getValue(), false));
+    }
+    try {
+      return new Http2RequestTemplate(this, method, new HpackTemplate(fields));
+    } catch (HpackEncodingException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
   public void send(final Http2Request request, final Http2ResponseHandler responseHandler) {
+    send(request, new AggregatingResponseHandler(responseHandler, pooledContent));
+  }
+
+  /**
+   * Send a request and receive the response headers and payload as they arrive, without aggregating the payload.
+   */
+  public void send(final Http2Request request, final Http2StreamingResponseHandler handler) {
+    if (request.template() != null && request.template().client() != this) {
+      handler.failure(new IllegalArgumentException("Request template belongs to another client"));
+      return;
+    }
     // Racy but that's fine, the real limiting happens on the connection.
     // This is just to put a bound on the request and write queues.
     final long outstanding = this.outstanding.longValue();
-    if (outstanding > remoteMaxConcurrentStreams) {
-      responseHandler.failure(new OutstandingRequestLimitReachedException());
+    if (outstanding > maxOutstanding()) {
+      handler.failure(new OutstandingRequestLimitReachedException());
       return;
     }
     this.outstanding.increment();
 
-    final ClientConnection connection = this.connection;
+    final Http2StreamingResponseHandler responseHandler = (latencyRecorder == null)
+        ? handler
+        : new TimedResponseHandler(handler, latencyRecorder);
 
-    // Connected? Send immediately.
-    if (connection != null) {
-      send(connection, request, responseHandler);
+    final long deadlineNanos = deadline(request);
+    final ClientConnection connection = leastLoadedConnection();
+
+    // Connected and not saturated? Send immediately.
+    if (connection != null && (connection.freeStreams() > 0 || !grow())) {
+      send(connection, request, responseHandler, deadlineNanos);
       return;
     }
 
-    queue.add(new QueuedRequest(request, responseHandler));
+    queue.add(new QueuedRequest(request, responseHandler, deadlineNanos));
 
     // Guard against connection race
     pump();
   }
 
+  /**
+   * The deadline of a request, counted from when it is submitted to the client so that time spent queued counts.
+   */
+  private long deadline(final Http2Request request) {
+    final long timeoutNanos = request.timeoutNanos() > 0 ? request.timeoutNanos() : requestTimeoutNanos;
+    if (timeoutNanos <= 0) {
+      return ClientConnection.NO_DEADLINE;
+    }
+    final long now = System.nanoTime();
+    final long deadlineNanos = now + timeoutNanos;
+    return deadlineNanos - now < 0 ? ClientConnection.NO_DEADLINE : deadlineNanos;
+  }
+
+  private long maxOutstanding() {
+    final long remoteMaxConcurrentStreams = this.remoteMaxConcurrentStreams;
+    if (remoteMaxConcurrentStreams > Long.MAX_VALUE / maxConnections) {
+      return Long.MAX_VALUE;
+    }
+    return remoteMaxConcurrentStreams * maxConnections;
+  }
+
+  /**
+   * Select the connection with the most free stream slots relative to the peer's max concurrent streams limit.
+   */
+  private ClientConnection leastLoadedConnection() {
+    ClientConnection best = null;
+    long bestFree = Long.MIN_VALUE;
+    for (final ClientConnection connection : connections) {
+      if (connection.isDraining() || connection.isDisconnected()) {
+        continue;
+      }
+      final long free = connection.freeStreams();
+      // Break ties by round trip time, if known
+      if (free > bestFree || (free == bestFree && rtt(connection) < rtt(best))) {
+        best = connection;
+        bestFree = free;
+      }
+    }
+    return best;
+  }
+
+  private static long rtt(final ClientConnection connection) {
+    final long rtt = connection.rttNanos();
+    return rtt == AbstractConnection.UNKNOWN_RTT ? Long.MAX_VALUE : rtt;
+  }
+
+  /**
+   * Open a new connection if the pool has room for it and none is already being established.
+   *
+   * @return true if the pool is growing and requests can be queued for the new connection.
+   */
+  private boolean grow() {
+    while (true) {
+      final int pending = pendingConnections.get();
+      if (pending > 0) {
+        return true;
+      }
+      if (connections.size() + pending >= maxConnections) {
+        return false;
+      }
+      if (pendingConnections.compareAndSet(pending, pending + 1)) {
+        connect0();
+        return true;
+      }
+    }
+  }
+
+  private void maintainPool() {
+    final long now = System.nanoTime();
+    for (final ClientConnection connection : connections) {
+      listener.connectionLoad(Http2Client.this, connection.id(), connection.outstanding(),
+          connection.maxConcurrentStreams());
+
+      // Shrink the pool by retiring connections that have been idle for too long
+      if (maxConnections > minConnections &&
+          connections.size() > minConnections &&
+          connection.outstanding() == 0 &&
+          now - connection.lastActivityNanos() > idleConnectionTimeoutNanos) {
+        if (connections.remove(connection)) {
+          connection.drain();
+        }
+      }
+    }
+  }
+
   public CompletableFuture<Http2Response> send(final Http2Request request) {
     final CompletableFuture<Http2Response> future = new CompletableFuture<>();
     send(request, new Http2ResponseHandler() {
@@ -161,20 +357,26 @@ public class Http2Client implements ClientConnection.Listener {
   }
 
   private void send(final ClientConnection connection, final Http2Request request,
-      final Http2ResponseHandler responseHandler) {
+      final Http2StreamingResponseHandler responseHandler, final long deadlineNanos) {
     request.authority(authority);
-    request.scheme(HTTPS.name());
-    connection.send(request, responseHandler);
+    request.scheme(scheme);
+    connection.send(request, responseHandler, deadlineNanos);
   }
 
   private void connect() {
+    pendingConnections.incrementAndGet();
+    connect0();
+  }
+
+  private void connect0() {
     // Do nothing if the client is closed
     if (closed) {
+      pendingConnections.decrementAndGet();
       return;
     }
     final Bootstrap b = new Bootstrap()
         .group(workerGroup)
-        .channel(NioSocketChannel.class)
+        .channel(transport.socketChannelClass())
         .option(ChannelOption.SO_KEEPALIVE, true)
         .remoteAddress(address)
         .handler(new ConnectionInitializer())
@@ -191,38 +393,99 @@ public class Http2Client implements ClientConnection.Listener {
   }
 
   private void connectFailed(final Throwable cause) {
-    // Fail outstanding requests
-    // TODO: let requests time out instead?
-    while (true) {
-      final QueuedRequest request = queue.poll();
-      if (request == null) {
-        break;
+    pendingConnections.decrementAndGet();
+
+    // Fail outstanding requests if there is no other connection to send them on. Requests are otherwise left queued
+    // for a connection that is still being established, and failed if that connection fails as well.
+    if (connections.isEmpty()) {
+      promoteStandby();
+    }
+    if (connections.isEmpty() && pendingConnections.get() == 0) {
+      while (true) {
+        final QueuedRequest request = queue.poll();
+        if (request == null) {
+          break;
+        }
+        outstanding.decrement();
+        request.responseHandler.failure(new ConnectionClosedException(cause));
       }
-      outstanding.decrement();
-      request.responseHandler.failure(cause);
+    } else {
+      pump();
+    }
+
+    // Only retry if the pool is below its minimum size or lacks a standby connection
+    if (connections.size() + pendingConnections.get() >= minConnections && !standbyWanted()) {
+      return;
     }
 
     // Retry
     try {
-      // TODO: exponential backoff
-      scheduler.schedule(this::connect, 1, SECONDS);
+      scheduler.schedule(this::connect, connectBackoff.failure(), NANOSECONDS);
     } catch (RejectedExecutionException ignore) {
       // Client is closed, ignore
     }
   }
 
-  private void pump() {
-    final ClientConnection connection = this.connection;
-    if (connection == null) {
+  private boolean standbyWanted() {
+    return standbyConnection && !closed && standby.get() == null;
+  }
+
+  /**
+   * Establish a standby connection if one is wanted and no connection is already being established.
+   */
+  private void maintainStandby() {
+    if (standbyWanted() && pendingConnections.get() == 0) {
+      connect();
+    }
+  }
+
+  /**
+   * Promote the standby connection, if any, to replace a connection that has been removed from the pool.
+   */
+  private void promoteStandby() {
+    final ClientConnection standby = this.standby.getAndSet(null);
+    if (standby == null) {
       return;
     }
-    while (!connection.isDisconnected()) {
+    if (standby.isDisconnected() || standby.isDraining()) {
+      return;
+    }
+    connections.add(standby);
+    pump();
+  }
+
+  private void pump() {
+    while (true) {
+      final ClientConnection connection = leastLoadedConnection();
+      if (connection == null) {
+        return;
+      }
+      // Hold requests for a connection that is being established instead of piling them onto a saturated one
+      if (connection.freeStreams() <= 0 && pendingConnections.get() > 0) {
+        return;
+      }
       final QueuedRequest queuedRequest = queue.poll();
       if (queuedRequest == null) {
-        break;
+        return;
       }
-      send(connection, queuedRequest.request, queuedRequest.responseHandler);
+      send(connection, queuedRequest.request, queuedRequest.responseHandler, queuedRequest.deadlineNanos);
+    }
+  }
+
+  private void connectionClosed(final ClientConnection connection) {
+    standby.compareAndSet(connection, null);
+    if (connections.remove(connection)) {
+      promoteStandby();
     }
+
+    // Notify listener that the connection was closed
+    listener.connectionClosed(Http2Client.this);
+
+    // Keep the pool at its minimum size. Connection failures are retried with backoff.
+    if (connections.size() + pendingConnections.get() < minConnections) {
+      connect();
+    }
+    maintainStandby();
   }
 
   @Override
@@ -234,22 +497,65 @@ public class Http2Client implements ClientConnection.Listener {
   @Override
   public void requestFailed(final ClientConnection connection) {
     outstanding.decrement();
+    pumpIfQueued();
   }
 
   @Override
   public void responseReceived(final ClientConnection connection, final Http2Response response) {
     outstanding.decrement();
+    pumpIfQueued();
+  }
+
+  /**
+   * Send requests held for a pending connection when a stream is freed up before it is established.
+   */
+  private void pumpIfQueued() {
+    if (!queue.isEmpty()) {
+      pump();
+    }
+  }
+
+  @Override
+  public void goingAway(final ClientConnection connection) {
+    standby.compareAndSet(connection, null);
+
+    // Replace the connection right away, it is closed when its outstanding requests have completed
+    if (connections.remove(connection)) {
+      promoteStandby();
+      if (connections.size() + pendingConnections.get() < minConnections) {
+        connect();
+      }
+    }
+    maintainStandby();
+  }
+
+  @Override
+  public void retry(final ClientConnection connection, final Http2Request request,
+      final Http2StreamingResponseHandler responseHandler, final long deadlineNanos) {
+    queue.add(new QueuedRequest(request, responseHandler, deadlineNanos));
+    if (leastLoadedConnection() == null) {
+      grow();
+    }
+    pump();
+  }
+
+  @Override
+  public void rttMeasured(final ClientConnection connection) {
+    listener.connectionRtt(this, connection.id(), connection.rttNanos(), connection.minRttNanos());
   }
 
   private static class QueuedRequest {
 
     private final Http2Request request;
-    private final Http2ResponseHandler responseHandler;
+    private final Http2StreamingResponseHandler responseHandler;
+    private final long deadlineNanos;
 
-    public QueuedRequest(final Http2Request request, final Http2ResponseHandler responseHandler) {
+    public QueuedRequest(final Http2Request request, final Http2StreamingResponseHandler responseHandler,
+        final long deadlineNanos) {
 
       this.request = request;
       this.responseHandler = responseHandler;
+      this.deadlineNanos = deadlineNanos;
     }
   }
 
@@ -281,11 +587,34 @@ public class Http2Client implements ClientConnection.Listener {
     private InetSocketAddress address;
     private Listener listener;
     private SslContext sslContext;
+    private Transport transport = Transport.AUTO;
+    private boolean cleartext;
+    private boolean pooledContent;
+
+    private static final long DEFAULT_IDLE_CONNECTION_TIMEOUT_NANOS = SECONDS.toNanos(60);
+    private static final long DEFAULT_INITIAL_CONNECT_BACKOFF_NANOS = MILLISECONDS.toNanos(100);
+    private static final long DEFAULT_MAX_CONNECT_BACKOFF_NANOS = SECONDS.toNanos(10);
 
     private Integer maxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
     private Integer maxFrameSize;
     private Integer connectionWindow;
     private Integer streamWindow;
+    private Integer zeroCopyWriteThreshold;
+    private Http2Metrics metrics;
+    private Integer maxAdaptiveWindow;
+    private Http2HeaderCache headerCache;
+    private Supplier<? extends Http2HeaderEncoding> headerEncoding;
+
+    private int minConnections = 1;
+    private int maxConnections = 1;
+    private long idleConnectionTimeoutNanos = DEFAULT_IDLE_CONNECTION_TIMEOUT_NANOS;
+    private long requestTimeoutNanos;
+    private long initialConnectBackoffNanos = DEFAULT_INITIAL_CONNECT_BACKOFF_NANOS;
+    private long maxConnectBackoffNanos = DEFAULT_MAX_CONNECT_BACKOFF_NANOS;
+    private long pingIntervalNanos;
+    private long pingTimeoutNanos = AbstractConnection.DEFAULT_PING_TIMEOUT_NANOS;
+    private boolean standbyConnection;
+    private LatencyRecorder latencyRecorder;
 
     public Builder address(final String host) {
       return address(InetSocketAddress.createUnresolved(host, 0));
@@ -309,6 +638,33 @@ public class Http2Client implements ClientConnection.Listener {
       return this;
     }
 
+    /**
+     * The network transport to use. Defaults to {@link Transport#AUTO}.
+     */
+    public Builder transport(final Transport transport) {
+      this.transport = Objects.requireNonNull(transport, "transport");
+      return this;
+    }
+
+    /**
+     * Speak HTTP/2 over plain TCP with prior knowledge (h2c) instead of over TLS. Only use this for traffic within a
+     * trusted network. Defaults to false.
+     */
+    public Builder cleartext(final boolean cleartext) {
+      this.cleartext = cleartext;
+      return this;
+    }
+
+    /**
+     * Aggregate response content into buffers from the pooled allocator of the connection, avoiding copies where
+     * possible. The application must then release the content of each response, e.g. using {@link
+     * Http2Response#release()}. Defaults to false.
+     */
+    public Builder pooledContent(final boolean pooledContent) {
+      this.pooledContent = pooledContent;
+      return this;
+    }
+
     public Builder maxConcurrentStreams(final int maxConcurrentStreams) {
       this.maxConcurrentStreams = maxConcurrentStreams;
       return this;
@@ -329,6 +685,135 @@ public class Http2Client implements ClientConnection.Listener {
       return this;
     }
 
+    /**
+     * DATA frame payloads of at least this many bytes are passed through to the network as slices of the request
+     * content instead of being copied. Only applies to direct buffers, heap buffers are always copied. Smaller payloads
+     * are copied and coalesced into a single write. Defaults to 8 KiB.
+     */
+    public Builder zeroCopyWriteThreshold(final Integer zeroCopyWriteThreshold) {
+      this.zeroCopyWriteThreshold = zeroCopyWriteThreshold;
+      return this;
+    }
+
+    /**
+     * Receive connection, stream, frame and flow control events, e.g. to tune window sizes and concurrency. The same
+     * instance is shared by all connections. Defaults to {@link Http2Metrics#NOOP}.
+     */
+    public Builder metrics(final Http2Metrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * Grow the connection and stream windows automatically, up to this size, when they limit the throughput of large
+     * responses. The bandwidth-delay product is estimated from the data received during the round trip of a PING, so this
+     * adapts to high latency links without reserving large windows up front. Disabled by default.
+     */
+    public Builder maxAdaptiveWindow(final Integer maxAdaptiveWindow) {
+      this.maxAdaptiveWindow = maxAdaptiveWindow;
+      return this;
+    }
+
+    /**
+     * Intern header names and values of received responses in this cache, shared by all connections. Defaults to a
+     * separate cache of 256 strings per connection.
+     */
+    public Builder headerCache(final Http2HeaderCache headerCache) {
+      this.headerCache = headerCache;
+      return this;
+    }
+
+    /**
+     * Decide how the headers of requests are HPACK encoded, e.g. using {@link Http2HeaderEncoding#adaptive()}. Called once
+     * for each connection. Defaults to {@link Http2HeaderEncoding#DEFAULT}.
+     */
+    public Builder headerEncoding(final Supplier<? extends Http2HeaderEncoding> headerEncoding) {
+      this.headerEncoding = headerEncoding;
+      return this;
+    }
+
+    /**
+     * Record the queue time, time to headers and time to last byte of each request. Disabled by default.
+     */
+    public Builder latencyRecorder(final LatencyRecorder latencyRecorder) {
+      this.latencyRecorder = latencyRecorder;
+      return this;
+    }
+
+    /**
+     * The number of connections to keep open to the server. Defaults to 1.
+     */
+    public Builder minConnections(final int minConnections) {
+      this.minConnections = minConnections;
+      return this;
+    }
+
+    /**
+     * The max number of connections to open when all connections are saturated. Defaults to 1.
+     */
+    public Builder maxConnections(final int maxConnections) {
+      this.maxConnections = maxConnections;
+      return this;
+    }
+
+    /**
+     * Close connections in excess of {@link #minConnections(int)} after they have been idle for this long.
+     */
+    public Builder idleConnectionTimeout(final long timeout, final TimeUnit unit) {
+      this.idleConnectionTimeoutNanos = unit.toNanos(timeout);
+      return this;
+    }
+
+    /**
+     * Failed connection attempts are retried after a delay that doubles with each consecutive failure, from the initial
+     * delay up to the max delay, with random jitter. Defaults to 100 milliseconds and 10 seconds.
+     */
+    public Builder connectBackoff(final long initialDelay, final long maxDelay, final TimeUnit unit) {
+      this.initialConnectBackoffNanos = unit.toNanos(initialDelay);
+      this.maxConnectBackoffNanos = unit.toNanos(maxDelay);
+      return this;
+    }
+
+    /**
+     * Keep an extra connection established, without sending requests on it, and promote it to replace a connection
+     * that closes or that the server shuts down. This saves the replacement connection handshake on the request path
+     * at the cost of an idle connection. Defaults to false.
+     */
+    public Builder standbyConnection(final boolean standbyConnection) {
+      this.standbyConnection = standbyConnection;
+      return this;
+    }
+
+    /**
+     * Fail requests with a {@link RequestTimeoutException} and cancel them if the response has not been received within
+     * this time after they were sent. Can be overridden per request using {@link Http2Request#timeout(long,
+     * TimeUnit)}. Requests do not time out by default.
+     */
+    public Builder requestTimeout(final long timeout, final TimeUnit unit) {
+      this.requestTimeoutNanos = unit.toNanos(timeout);
+      return this;
+    }
+
+    /**
+     * Send a PING on connections that have not received anything for this long. This detects dead connections, e.g.
+     * behind NAT gateways and load balancers that silently drop idle connections, and measures the round trip time of
+     * each connection. Connections are also pinged right after they are established. Disabled by default.
+     *
+     * @see Listener#connectionRtt(Http2Client, String, long, long)
+     */
+    public Builder pingInterval(final long interval, final TimeUnit unit) {
+      this.pingIntervalNanos = unit.toNanos(interval);
+      return this;
+    }
+
+    /**
+     * Close connections that do not answer a PING within this time. Defaults to 10 seconds.
+     */
+    public Builder pingTimeout(final long timeout, final TimeUnit unit) {
+      this.pingTimeoutNanos = unit.toNanos(timeout);
+      return this;
+    }
+
     public Http2Client build() {
       return new Http2Client(this);
     }
@@ -350,6 +835,28 @@ public class Http2Client implements ClientConnection.Listener {
      * Called when a client connection is closed.
      */
     void connectionClosed(Http2Client client);
+
+    /**
+     * Called periodically for each pooled connection. Does nothing by default.
+     *
+     * @param connection The connection identifier.
+     * @param activeStreams The number of requests in flight on the connection.
+     * @param maxConcurrentStreams The max number of concurrent streams allowed by the server on the connection.
+     */
+    default void connectionLoad(Http2Client client, String connection, int activeStreams,
+        long maxConcurrentStreams) {
+    }
+
+    /**
+     * Called when the round trip time of a connection has been measured using a PING. Does nothing by default.
+     *
+     * @param connection The connection identifier.
+     * @param rttNanos The smoothed round trip time.
+     * @param minRttNanos The lowest round trip time seen on the connection.
+     * @see Builder#pingInterval(long, TimeUnit)
+     */
+    default void connectionRtt(Http2Client client, String connection, long rttNanos, long minRttNanos) {
+    }
   }
 
   public static class ListenerAdapter implements Listener {
@@ -368,6 +875,18 @@ public class Http2Client implements ClientConnection.Listener {
     public void connectionClosed(final Http2Client client) {
 
     }
+
+    @Override
+    public void connectionLoad(final Http2Client client, final String connection, final int activeStreams,
+        final long maxConcurrentStreams) {
+
+    }
+
+    @Override
+    public void connectionRtt(final Http2Client client, final String connection, final long rttNanos,
+        final long minRttNanos) {
+
+    }
   }
 
   private class ConnectionInitializer extends ChannelInboundHandlerAdapter {
@@ -376,19 +895,30 @@ public class Http2Client implements ClientConnection.Listener {
     public void channelActive(final ChannelHandlerContext ctx) throws Exception {
 
       final ClientConnection pendingConnection = connectionBuilder.build(ctx.channel());
-      Http2Client.this.pendingConnection = pendingConnection;
+      handshakingConnections.add(pendingConnection);
       ctx.channel().attr(AttributeKey.valueOf(Http2Client.class, ClientConnection.class.getSimpleName()))
           .set(pendingConnection);
 
       pendingConnection.connectFuture().whenComplete((c, ex) -> {
+        handshakingConnections.remove(pendingConnection);
+
         // TODO: move this to listener?
         if (ex != null) {
           connectFailed(ex);
           return;
         }
 
+        connectBackoff.success();
+
+        // Keep the connection on standby unless the pool needs it right away
+        final boolean poolNeedsConnection = connections.size() < minConnections || !queue.isEmpty();
+        final boolean isStandby = standbyConnection && !poolNeedsConnection && standby.compareAndSet(null, c);
+
         // Connection and handshake succeeded, publish the new connection
-        connection = c;
+        if (!isStandby) {
+          connections.add(c);
+        }
+        pendingConnections.decrementAndGet();
 
         // Bail if we were closed while connecting
         if (closed) {
@@ -397,20 +927,15 @@ public class Http2Client implements ClientConnection.Listener {
         }
 
         // Reconnect on disconnect
-        c.disconnectFuture().whenComplete((dc, dex) -> {
-
-          // Notify listener that the connection was closed
-          listener.connectionClosed(Http2Client.this);
-
-          // TODO: backoff
-          connect();
-        });
+        c.disconnectFuture().whenComplete((dc, dex) -> connectionClosed(c));
 
         // Notify listener that the connection was established
         listener.connectionEstablished(Http2Client.this);
 
         // Send queued requests
         pump();
+
+        maintainStandby();
       });
 
       ctx.pipeline().remove(this);
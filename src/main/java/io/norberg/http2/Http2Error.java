@@ -25,4 +25,16 @@ enum Http2Error {
   int code() {
     return code;
   }
+
+  /**
+   * The error with this code, or null if the code is unknown.
+   */
+  static Http2Error of(final long code) {
+    for (final Http2Error error : values()) {
+      if (error.code == code) {
+        return error;
+      }
+    }
+    return null;
+  }
 }
@@ -2,6 +2,7 @@ package io.norberg.http2;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AsciiString;
 
 interface Http2FrameListener {
 
@@ -16,7 +17,7 @@ interface Http2FrameListener {
   void onHeadersRead(ChannelHandlerContext ctx, int streamId, int streamDependency, short weight, boolean exclusive,
       boolean endOfStream) throws Http2Exception;
 
-  void onHeaderRead(Http2Header header)
+  void onHeaderRead(AsciiString name, AsciiString value)
       throws Http2Exception;
 
   void onHeadersEnd(ChannelHandlerContext ctx, int streamId, final boolean endOfStream)
@@ -26,6 +27,9 @@ interface Http2FrameListener {
       short weight, boolean exclusive)
       throws Http2Exception;
 
+  void onPriorityUpdateRead(ChannelHandlerContext ctx, int prioritizedStreamId, AsciiString priorityFieldValue)
+      throws Http2Exception;
+
   void onRstStreamRead(ChannelHandlerContext ctx, int streamId, long errorCode)
       throws Http2Exception;
 
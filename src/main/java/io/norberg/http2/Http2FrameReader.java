@@ -1,5 +1,6 @@
 package io.norberg.http2;
 
+import static io.norberg.http2.Http2Error.FRAME_SIZE_ERROR;
 import static io.norberg.http2.Http2Error.PROTOCOL_ERROR;
 import static io.norberg.http2.Http2Exception.connectionError;
 import static io.norberg.http2.Http2Flags.ACK;
@@ -15,6 +16,7 @@ import static java.util.Objects.requireNonNull;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AsciiString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,6 +25,7 @@ class Http2FrameReader implements HpackDecoder.Listener, AutoCloseable {
 
   private final HpackDecoder hpackDecoder;
   private final Http2FrameListener listener;
+  private final Http2Metrics metrics;
 
   private int length = -1;
   private short type;
@@ -34,8 +37,13 @@ class Http2FrameReader implements HpackDecoder.Listener, AutoCloseable {
   private short headersFlags;
 
   Http2FrameReader(final HpackDecoder hpackDecoder, final Http2FrameListener listener) {
+    this(hpackDecoder, listener, Http2Metrics.NOOP);
+  }
+
+  Http2FrameReader(final HpackDecoder hpackDecoder, final Http2FrameListener listener, final Http2Metrics metrics) {
     this.hpackDecoder = requireNonNull(hpackDecoder, "hpackDecoder");
     this.listener = requireNonNull(listener, "listener");
+    this.metrics = requireNonNull(metrics, "metrics");
   }
 
   @Override
@@ -77,6 +85,7 @@ class Http2FrameReader implements HpackDecoder.Listener, AutoCloseable {
       }
 
       // Read payload
+      metrics.frameRead(type, length);
       final int mark = in.readerIndex();
       switch (type) {
         case Http2FrameTypes.DATA:
@@ -109,6 +118,9 @@ class Http2FrameReader implements HpackDecoder.Listener, AutoCloseable {
         case Http2FrameTypes.CONTINUATION:
           readContinuationFrame(ctx, in);
           break;
+        case Http2FrameTypes.PRIORITY_UPDATE:
+          readPriorityUpdateFrame(ctx, in);
+          break;
         default:
           // Discard unknown frame types
           in.skipBytes(length);
@@ -120,6 +132,11 @@ class Http2FrameReader implements HpackDecoder.Listener, AutoCloseable {
     }
   }
 
+  private void decodeHeaderBlock(final ByteBuf block) throws Http2Exception {
+    hpackDecoder.decode(block, this);
+    metrics.headerDecoderTableSize(hpackDecoder.tableSize());
+  }
+
   private int readInt31(final ByteBuf in) {
     return in.readInt() & 0x7FFFFFFF;
   }
@@ -187,7 +204,7 @@ class Http2FrameReader implements HpackDecoder.Listener, AutoCloseable {
     in.writerIndex(in.readerIndex() + blockLength);
     final boolean endOfStream = readFlag(END_STREAM);
     listener.onHeadersRead(ctx, streamId, streamDependency, weight, exclusive, endOfStream);
-    hpackDecoder.decode(in, this);
+    decodeHeaderBlock(in);
     listener.onHeadersEnd(ctx, streamId, endOfStream);
     in.writerIndex(writerMark);
   }
@@ -200,7 +217,7 @@ class Http2FrameReader implements HpackDecoder.Listener, AutoCloseable {
     final int writerMark = in.writerIndex();
     in.writerIndex(in.readerIndex() + blockLength);
     listener.onHeadersRead(ctx, streamId, endOfStream);
-    hpackDecoder.decode(in, this);
+    decodeHeaderBlock(in);
     listener.onHeadersEnd(ctx, streamId, endOfStream);
     in.writerIndex(writerMark);
   }
@@ -230,7 +247,7 @@ class Http2FrameReader implements HpackDecoder.Listener, AutoCloseable {
       } else {
         listener.onHeadersRead(ctx, streamId, endOfStream);
       }
-      hpackDecoder.decode(headersBlock, this);
+      decodeHeaderBlock(headersBlock);
       listener.onHeadersEnd(ctx, streamId, endOfStream);
       headersBlock.release();
       headersBlock = null;
@@ -246,6 +263,19 @@ class Http2FrameReader implements HpackDecoder.Listener, AutoCloseable {
     listener.onPriorityRead(ctx, streamId, streamDependency, weight, exclusive);
   }
 
+  private void readPriorityUpdateFrame(final ChannelHandlerContext ctx, final ByteBuf in) throws Http2Exception {
+    if (streamId != 0) {
+      throw connectionError(PROTOCOL_ERROR, "PRIORITY_UPDATE on stream %d", streamId);
+    }
+    if (length < INT_FIELD_LENGTH) {
+      throw connectionError(FRAME_SIZE_ERROR, "PRIORITY_UPDATE frame too short: %d", length);
+    }
+    final int prioritizedStreamId = readInt31(in);
+    final byte[] value = new byte[length - INT_FIELD_LENGTH];
+    in.readBytes(value);
+    listener.onPriorityUpdateRead(ctx, prioritizedStreamId, new AsciiString(value, false));
+  }
+
   private void readRstStreamFrame(final ChannelHandlerContext ctx, final ByteBuf in) throws Http2Exception {
     final long errorCode = in.readUnsignedInt();
     listener.onRstStreamRead(ctx, streamId, errorCode);
@@ -279,16 +309,26 @@ class Http2FrameReader implements HpackDecoder.Listener, AutoCloseable {
     final int writerMark = in.writerIndex();
     in.writerIndex(in.readerIndex() + blockLength);
     listener.onPushPromiseRead(ctx, streamId, promisedStreamId, padding);
-    hpackDecoder.decode(in, this);
+    decodeHeaderBlock(in);
     listener.onPushPromiseHeadersEnd(ctx, streamId);
     in.writerIndex(writerMark);
   }
 
   private void readPingFrame(final ChannelHandlerContext ctx, final ByteBuf in)
       throws Http2Exception {
+    if (streamId != 0) {
+      throw connectionError(PROTOCOL_ERROR, "PING on stream %d", streamId);
+    }
+    if (length != PING_FRAME_PAYLOAD_LENGTH) {
+      throw connectionError(FRAME_SIZE_ERROR, "Invalid PING frame length: %d", length);
+    }
     final int writerMark = in.writerIndex();
     in.writerIndex(in.readerIndex() + PING_FRAME_PAYLOAD_LENGTH);
-    listener.onPingRead(ctx, in);
+    if (readFlag(ACK)) {
+      listener.onPingAckRead(ctx, in);
+    } else {
+      listener.onPingRead(ctx, in);
+    }
     in.writerIndex(writerMark);
   }
 
@@ -310,7 +350,8 @@ class Http2FrameReader implements HpackDecoder.Listener, AutoCloseable {
   }
 
   @Override
-  public void header(final Http2Header header) throws Http2Exception {
-    listener.onHeaderRead(header);
+  public void header(final AsciiString name, final AsciiString value, final boolean sensitive)
+      throws Http2Exception {
+    listener.onHeaderRead(name, value);
   }
 }
@@ -12,6 +12,7 @@ class Http2FrameTypes {
   static final byte GOAWAY = 0x7;
   static final byte WINDOW_UPDATE = 0x8;
   static final byte CONTINUATION = 0x9;
+  static final byte PRIORITY_UPDATE = 0x10;
 
   static String toString(short type) {
     switch (type) {
@@ -35,6 +36,8 @@ class Http2FrameTypes {
         return "WINDOW_UPDATE";
       case CONTINUATION:
         return "CONTINUATION";
+      case PRIORITY_UPDATE:
+        return "PRIORITY_UPDATE";
       default:
         throw new IllegalArgumentException();
     }
@@ -0,0 +1,109 @@
+package io.norberg.http2;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AsciiString;
+
+/**
+ * Interns decoded header names and values, so that headers repeated across requests share a single {@link
+ * AsciiString} with a cached hash code. Strings are looked up by their HPACK encoded bytes, which also skips huffman
+ * decoding of cached strings. Well known header names resolve to the same instances the HPACK static table uses.
+ *
+ * <p>The cache is a fixed size table where colliding strings evict each other, so it never grows. A string is only
+ * cached the second time it is seen, so values that never repeat cost nothing beyond the decoded string. Lookups do
+ * not lock, so a cache can be shared by all connections of a client or server.
+ */
+public final class Http2HeaderCache {
+
+  static final int DEFAULT_SIZE = 256;
+
+  /**
+   * Longer strings are unlikely to repeat and are not cached.
+   */
+  static final int MAX_ENCODED_LENGTH = 64;
+
+  private final Entry[] entries;
+  private final int mask;
+
+  // The hash of the last string that missed each slot. A string is only admitted when it misses twice in a row, so
+  // that unique values such as request ids neither allocate entries nor evict strings that repeat.
+  private final int[] candidates;
+
+  /**
+   * @param size The number of cached strings, rounded up to a power of two.
+   */
+  public Http2HeaderCache(final int size) {
+    if (size <= 0 || size > (1 << 30)) {
+      throw new IllegalArgumentException("Invalid header cache size: " + size);
+    }
+    final int capacity = Integer.highestOneBit(size - 1) << 1;
+    this.entries = new Entry[Math.max(capacity, 1)];
+    this.candidates = new int[entries.length];
+    this.mask = entries.length - 1;
+  }
+
+  /**
+   * Look up an encoded string, starting at the reader index of {@code in}. Does not move the reader index.
+   *
+   * @return The cached string, or null.
+   */
+  AsciiString get(final ByteBuf in, final int length, final boolean huffman, final int hash) {
+    final Entry entry = entries[hash & mask];
+    if (entry == null || !entry.matches(in, length, huffman, hash)) {
+      return null;
+    }
+    return entry.value;
+  }
+
+  /**
+   * Cache a string that missed, if it also was the last string to miss its slot.
+   */
+  void put(final ByteBuf in, final int offset, final int length, final boolean huffman, final int hash,
+      final AsciiString value) {
+    final int ix = hash & mask;
+    if (candidates[ix] != hash) {
+      candidates[ix] = hash;
+      return;
+    }
+    final byte[] key = new byte[length];
+    in.getBytes(offset, key);
+    entries[ix] = new Entry(key, huffman, hash, value);
+  }
+
+  static int hash(final ByteBuf in, final int length, final boolean huffman) {
+    final int offset = in.readerIndex();
+    int hash = huffman ? 1 : 0;
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + in.getByte(offset + i);
+    }
+    // Spread the high bits so that the table index does not only depend on the last bytes
+    return hash ^ (hash >>> 16);
+  }
+
+  private static final class Entry {
+
+    private final byte[] key;
+    private final boolean huffman;
+    private final int hash;
+    private final AsciiString value;
+
+    Entry(final byte[] key, final boolean huffman, final int hash, final AsciiString value) {
+      this.key = key;
+      this.huffman = huffman;
+      this.hash = hash;
+      this.value = value;
+    }
+
+    boolean matches(final ByteBuf in, final int length, final boolean huffman, final int hash) {
+      if (this.hash != hash || this.huffman != huffman || key.length != length) {
+        return false;
+      }
+      final int offset = in.readerIndex();
+      for (int i = 0; i < length; i++) {
+        if (key[i] != in.getByte(offset + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package io.norberg.http2;
+
+import io.netty.util.AsciiString;
+
+/**
+ * Decides how the HPACK encoder of a connection represents header fields that are not already in its static or dynamic
+ * table. Each connection has its own instance, which is only called on the event loop of the connection, so
+ * implementations may keep state without synchronization.
+ *
+ * <p>Fields marked as sensitive are always encoded as never indexed, regardless of the strategy.
+ */
+public interface Http2HeaderEncoding {
+
+  /**
+   * Index every field and huffman encode strings when that makes them shorter.
+   */
+  Http2HeaderEncoding DEFAULT = (name, value) -> Indexing.INCREMENTAL;
+
+  /**
+   * https://tools.ietf.org/html/rfc7541#section-6.2
+   */
+  enum Indexing {
+
+    /**
+     * Add the field to the dynamic table, so that later occurrences are encoded as an index.
+     */
+    INCREMENTAL,
+
+    /**
+     * Encode the field as a literal without adding it to the dynamic table. Intermediaries may index it when
+     * forwarding.
+     */
+    NONE,
+
+    /**
+     * Encode the field as a literal that is never indexed, also not by intermediaries.
+     */
+    NEVER
+  }
+
+  /**
+   * How to represent a field that is not in the static or dynamic table.
+   */
+  Indexing indexing(AsciiString name, AsciiString value);
+
+  /**
+   * Whether to huffman encode the literal name and value of a field when that makes them shorter. Defaults to true.
+   */
+  default boolean huffman(final AsciiString name, final AsciiString value) {
+    return true;
+  }
+
+  /**
+   * An encoding that learns the cardinality of the values of each header name on a connection. Values of names that
+   * rarely repeat, e.g. request ids and timestamps, are only indexed when seen again, so that they do not evict
+   * entries that are reused.
+   */
+  static Http2HeaderEncoding adaptive() {
+    return new AdaptiveHeaderEncoding();
+  }
+}
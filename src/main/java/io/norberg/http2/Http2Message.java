@@ -54,6 +54,44 @@ abstract class Http2Message<T extends Http2Message<T>> {
     return self();
   }
 
+  /**
+   * Set the RFC 9218 priority of this message, replacing any priority header it already has. More urgent messages are
+   * sent before less urgent messages on the same connection. Incremental messages of equal urgency are interleaved.
+   *
+   * @param urgency     0 (most urgent) to 7 (least urgent). Defaults to 3.
+   * @param incremental Whether the message can be processed incrementally by the peer. Defaults to false.
+   */
+  public T priority(final int urgency, final boolean incremental) {
+    return replaceHeader(Http2Priority.PRIORITY, Http2Priority.format(urgency, incremental));
+  }
+
+  /**
+   * Set the value of the first header with a name, ignoring case, and remove any others. Adds the header if the message
+   * does not have it.
+   */
+  private T replaceHeader(final AsciiString name, final AsciiString value) {
+    boolean replaced = false;
+    int j = 0;
+    for (int i = 0; i < headerIx; i += 2) {
+      if (name.contentEqualsIgnoreCase(headers[i])) {
+        if (replaced) {
+          continue;
+        }
+        headers[i + 1] = value;
+        replaced = true;
+      }
+      headers[j] = headers[i];
+      headers[j + 1] = headers[i + 1];
+      j += 2;
+    }
+    if (!replaced) {
+      return header(name, value);
+    }
+    Arrays.fill(headers, j, headerIx, null);
+    headerIx = j;
+    return self();
+  }
+
   public T headers(Iterable<Entry<AsciiString, AsciiString>> headers) {
     headers.forEach(e -> header(e.getKey(), e.getValue()));
     return self();
@@ -87,6 +125,11 @@ abstract class Http2Message<T extends Http2Message<T>> {
     }
   }
 
+  /**
+   * Release the content of this message, if any.
+   */
+  public abstract void release();
+
   final void releaseHeaders() {
     if (headers != null) {
       Arrays.fill(headers, null);
@@ -0,0 +1,87 @@
+package io.norberg.http2;
+
+/**
+ * Receives connection, stream, frame and flow control events. Called on connection event loops, often several at the
+ * same time, so implementations must be thread safe and cheap. Striped counters such as {@link
+ * java.util.concurrent.atomic.LongAdder} are a good fit. All methods default to doing nothing.
+ */
+public interface Http2Metrics {
+
+  Http2Metrics NOOP = new Http2Metrics() {
+  };
+
+  /**
+   * A connection completed its handshake.
+   */
+  default void connectionOpened() {
+  }
+
+  /**
+   * A connection that completed its handshake was closed.
+   */
+  default void connectionClosed() {
+  }
+
+  /**
+   * A stream was opened.
+   */
+  default void streamOpened() {
+  }
+
+  /**
+   * A stream was closed, either normally, by a reset or with its connection.
+   */
+  default void streamClosed() {
+  }
+
+  /**
+   * A frame was received.
+   *
+   * @param type          The frame type, e.g. {@code 0x0} for DATA and {@code 0x1} for HEADERS.
+   * @param payloadLength The length of the frame payload.
+   */
+  default void frameRead(final int type, final int payloadLength) {
+  }
+
+  /**
+   * Bytes were received on a connection, after TLS decryption.
+   */
+  default void bytesRead(final int bytes) {
+  }
+
+  /**
+   * Bytes were written to a connection, before TLS encryption.
+   */
+  default void bytesWritten(final int bytes) {
+  }
+
+  /**
+   * A stream had data to send but its flow control window was exhausted.
+   */
+  default void streamWindowStalled() {
+  }
+
+  /**
+   * A stream had data to send but the connection flow control window was exhausted.
+   */
+  default void connectionWindowStalled() {
+  }
+
+  /**
+   * A PING round trip time was measured.
+   */
+  default void rtt(final long nanos) {
+  }
+
+  /**
+   * The size of the HPACK decoder dynamic table after a header block was decoded.
+   */
+  default void headerDecoderTableSize(final int bytes) {
+  }
+
+  /**
+   * The size of the HPACK encoder dynamic table after a header block was encoded.
+   */
+  default void headerEncoderTableSize(final int bytes) {
+  }
+}
@@ -0,0 +1,120 @@
+package io.norberg.http2;
+
+import io.netty.util.AsciiString;
+
+/**
+ * Extensible priorities, RFC 9218. Parses and formats priority field values, as carried by the priority header and
+ * PRIORITY_UPDATE frames.
+ */
+class Http2Priority {
+
+  static final AsciiString PRIORITY = AsciiString.cached("priority");
+
+  static final int DEFAULT_URGENCY = 3;
+  static final int MAX_URGENCY = 7;
+
+  private static final AsciiString[] VALUES = new AsciiString[(MAX_URGENCY + 1) * 2];
+
+  static {
+    for (int urgency = 0; urgency <= MAX_URGENCY; urgency++) {
+      VALUES[urgency * 2] = AsciiString.cached("u=" + urgency);
+      VALUES[urgency * 2 + 1] = AsciiString.cached("u=" + urgency + ", i");
+    }
+  }
+
+  static AsciiString format(final int urgency, final boolean incremental) {
+    if (urgency < 0 || urgency > MAX_URGENCY) {
+      throw new IllegalArgumentException("Invalid urgency: " + urgency);
+    }
+    return VALUES[urgency * 2 + (incremental ? 1 : 0)];
+  }
+
+  /**
+   * Apply the priority header of a message, if any, to a stream.
+   */
+  static void apply(final Http2Stream stream, final Http2Message<?> message) {
+    for (int i = 0; i < message.numHeaders(); i++) {
+      if (PRIORITY.contentEqualsIgnoreCase(message.headerName(i))) {
+        apply(stream, message.headerValue(i));
+        return;
+      }
+    }
+  }
+
+  /**
+   * Apply a priority field value to a stream. Parameters that are absent or invalid take their default values.
+   * Unknown parameters are ignored.
+   */
+  static void apply(final Http2Stream stream, final AsciiString value) {
+    int urgency = DEFAULT_URGENCY;
+    boolean incremental = false;
+    final int length = value.length();
+    int i = 0;
+    while (i < length) {
+      i = skipWhitespace(value, i);
+      if (i >= length) {
+        break;
+      }
+
+      // Member key and value, up to the next member
+      final int keyStart = i;
+      while (i < length && isKeyChar(value.byteAt(i))) {
+        i++;
+      }
+      final int keyEnd = i;
+      int valueStart = -1;
+      int valueEnd = -1;
+      if (i < length && value.byteAt(i) == '=') {
+        valueStart = ++i;
+        while (i < length && value.byteAt(i) != ';' && value.byteAt(i) != ',' && value.byteAt(i) != ' ') {
+          i++;
+        }
+        valueEnd = i;
+      }
+
+      // Skip member parameters
+      while (i < length && value.byteAt(i) != ',') {
+        i++;
+      }
+      i++;
+
+      if (keyEnd - keyStart != 1) {
+        continue;
+      }
+      switch (value.byteAt(keyStart)) {
+        case 'u':
+          if (valueEnd - valueStart == 1) {
+            final int u = value.byteAt(valueStart) - '0';
+            if (u >= 0 && u <= MAX_URGENCY) {
+              urgency = u;
+            }
+          }
+          break;
+        case 'i':
+          if (valueStart == -1) {
+            incremental = true;
+          } else if (valueEnd - valueStart == 2 && value.byteAt(valueStart) == '?') {
+            final byte b = value.byteAt(valueStart + 1);
+            if (b == '0' || b == '1') {
+              incremental = b == '1';
+            }
+          }
+          break;
+        default:
+      }
+    }
+    stream.urgency = urgency;
+    stream.incremental = incremental;
+  }
+
+  private static int skipWhitespace(final AsciiString value, int i) {
+    while (i < value.length() && (value.byteAt(i) == ' ' || value.byteAt(i) == '\t')) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isKeyChar(final byte b) {
+    return (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '_' || b == '-' || b == '.' || b == '*';
+  }
+}
@@ -4,6 +4,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.util.AsciiString;
+import java.util.concurrent.TimeUnit;
 
 public class Http2Request extends Http2Message<Http2Request> {
 
@@ -12,6 +13,8 @@ public class Http2Request extends Http2Message<Http2Request> {
   private AsciiString authority;
   private AsciiString path;
   private ByteBuf content;
+  private long timeoutNanos;
+  private Http2RequestTemplate template;
 
   Http2Request() {
   }
@@ -71,6 +74,31 @@ public class Http2Request extends Http2Message<Http2Request> {
     return this;
   }
 
+  /**
+   * Fail the request with a {@link RequestTimeoutException} and cancel it if the response has not been received within
+   * this time after it was sent. Overrides the default request timeout of the client.
+   */
+  public Http2Request timeout(final long timeout, final TimeUnit unit) {
+    this.timeoutNanos = unit.toNanos(timeout);
+    return this;
+  }
+
+  long timeoutNanos() {
+    return timeoutNanos;
+  }
+
+  /**
+   * The template this request was created from, or null. The method, scheme, authority and headers of the template are
+   * sent before the headers of the request.
+   */
+  Http2RequestTemplate template() {
+    return template;
+  }
+
+  void template(final Http2RequestTemplate template) {
+    this.template = template;
+  }
+
   public Http2Response response(final HttpResponseStatus status, final ByteBuf payload) {
     return new Http2Response(status, payload);
   }
@@ -79,6 +107,7 @@ public class Http2Request extends Http2Message<Http2Request> {
     return new Http2Response(status);
   }
 
+  @Override
   public void release() {
     releaseHeaders();
     if (hasContent()) {
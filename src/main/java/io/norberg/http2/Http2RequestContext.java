@@ -5,4 +5,10 @@ public interface Http2RequestContext {
   void respond(final Http2Response response);
 
   void fail();
+
+  /**
+   * Signal that request payload bytes not accounted for by {@link RequestPayloadHandler#data} have been consumed,
+   * allowing the client to send more. May be called from any thread.
+   */
+  void consumed(int bytes);
 }
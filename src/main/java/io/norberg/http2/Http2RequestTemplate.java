@@ -0,0 +1,52 @@
+package io.norberg.http2;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.util.AsciiString;
+
+/**
+ * A method and set of headers shared by many requests. The header block of a template is encoded once per connection,
+ * after which only the path and the headers added to each request are encoded. Created by {@link
+ * Http2Client#template(HttpMethod, Iterable)} and only valid for requests sent by that client.
+ */
+public final class Http2RequestTemplate {
+
+  private final Http2Client client;
+  private final HttpMethod method;
+  private final HpackTemplate headers;
+
+  Http2RequestTemplate(final Http2Client client, final HttpMethod method, final HpackTemplate headers) {
+    this.client = client;
+    this.method = method;
+    this.headers = headers;
+  }
+
+  public HttpMethod method() {
+    return method;
+  }
+
+  /**
+   * Create a request from this template. Headers added to the request are sent after the headers of the template.
+   */
+  public Http2Request request(final CharSequence path) {
+    return request(path, null);
+  }
+
+  /**
+   * Create a request with content from this template. Headers added to the request are sent after the headers of the
+   * template.
+   */
+  public Http2Request request(final CharSequence path, final ByteBuf content) {
+    final Http2Request request = new Http2Request(method, AsciiString.of(path), content);
+    request.template(this);
+    return request;
+  }
+
+  Http2Client client() {
+    return client;
+  }
+
+  HpackTemplate headers() {
+    return headers;
+  }
+}
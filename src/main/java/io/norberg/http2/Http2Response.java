@@ -41,6 +41,7 @@ public class Http2Response extends Http2Message<Http2Response> {
     return content;
   }
 
+  @Override
   public void release() {
     releaseHeaders();
     if (hasContent()) {
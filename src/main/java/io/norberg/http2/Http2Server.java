@@ -12,13 +12,16 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.AttributeKey;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,18 +32,36 @@ public class Http2Server {
   private final ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE, true);
 
   private final CompletableFuture<Void> closeFuture = new CompletableFuture<>();
+  private final Transport transport;
   private final EventLoopGroup group;
 
   private final ServerConnection.Builder connectionBuilder;
 
   private Http2Server(final Builder builder) {
-    this.group = Util.defaultEventLoopGroup();
+    this.transport = builder.transport.resolve();
+    this.group = transport.defaultEventLoopGroup();
     this.connectionBuilder = ServerConnection.builder()
-        .requestHandler(Objects.requireNonNull(builder.requestHandler, "requestHandler"))
-        .sslContext(Util.defaultServerSslContext())
+        .requestHandler(requestHandler(builder))
+        .sslContext(builder.cleartext ? null : Util.defaultServerSslContext())
         .maxConcurrentStreams(builder.maxConcurrentStreams)
         .connectionWindowSize(builder.connectionWindow)
-        .initialStreamWindowSize(builder.streamWindow);
+        .initialStreamWindowSize(builder.streamWindow)
+        .zeroCopyWriteThreshold(builder.zeroCopyWriteThreshold)
+        .metrics(builder.metrics)
+        .pingIntervalNanos(builder.pingIntervalNanos)
+        .pingTimeoutNanos(builder.pingTimeoutNanos)
+        .maxAdaptiveWindow(builder.maxAdaptiveWindow)
+        .headerCache(builder.headerCache)
+        .headerEncoding(builder.headerEncoding);
+  }
+
+  private static StreamingRequestHandler requestHandler(final Builder builder) {
+    if (builder.streamingRequestHandler != null) {
+      return builder.streamingRequestHandler;
+    }
+    return new AggregatingRequestHandler(
+        Objects.requireNonNull(builder.requestHandler, "requestHandler"), builder.pooledContent,
+        builder.requestExecutor);
   }
 
   public CompletableFuture<InetSocketAddress> bind(final int port) {
@@ -51,7 +72,7 @@ public class Http2Server {
     final ServerBootstrap b = new ServerBootstrap()
         .option(ChannelOption.SO_BACKLOG, 1024)
         .group(group)
-        .channel(NioServerSocketChannel.class)
+        .channel(transport.serverSocketChannelClass())
         .childHandler(new ConnectionInitializer());
     final ChannelFuture bindFuture = b.bind(address);
     final Channel channel = bindFuture.channel();
@@ -79,17 +100,69 @@ public class Http2Server {
     return new Builder();
   }
 
+  /**
+   * An executor that runs each task on a new virtual thread, for use with {@link Builder#requestExecutor(Executor)}.
+   *
+   * @throws UnsupportedOperationException if the JDK does not support virtual threads.
+   */
+  public static Executor virtualThreadExecutor() {
+    try {
+      return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new UnsupportedOperationException("Virtual threads are not supported by this JDK", e);
+    }
+  }
+
   public static class Builder {
 
     private Integer maxConcurrentStreams;
     private List<InetSocketAddress> bind;
     private RequestHandler requestHandler;
+    private StreamingRequestHandler streamingRequestHandler;
     private Integer connectionWindow;
     private Integer streamWindow;
+    private Integer zeroCopyWriteThreshold;
+    private Http2Metrics metrics;
+    private Integer maxAdaptiveWindow;
+    private Http2HeaderCache headerCache;
+    private Supplier<? extends Http2HeaderEncoding> headerEncoding;
+    private long pingIntervalNanos;
+    private long pingTimeoutNanos = AbstractConnection.DEFAULT_PING_TIMEOUT_NANOS;
+    private Transport transport = Transport.AUTO;
+    private boolean cleartext;
+    private boolean pooledContent;
+    private Executor requestExecutor;
 
     private Builder() {
     }
 
+    /**
+     * Aggregate request content into buffers from the pooled allocator of the connection, avoiding copies where
+     * possible. The request handler must then release the content of each request, e.g. using {@link
+     * Http2Request#release()}. Defaults to false.
+     */
+    public Builder pooledContent(final boolean pooledContent) {
+      this.pooledContent = pooledContent;
+      return this;
+    }
+
+    /**
+     * Speak HTTP/2 over plain TCP with prior knowledge (h2c) instead of over TLS. Only use this for traffic within a
+     * trusted network. Defaults to false.
+     */
+    public Builder cleartext(final boolean cleartext) {
+      this.cleartext = cleartext;
+      return this;
+    }
+
+    /**
+     * The network transport to use. Defaults to {@link Transport#AUTO}.
+     */
+    public Builder transport(final Transport transport) {
+      this.transport = Objects.requireNonNull(transport, "transport");
+      return this;
+    }
+
     public Builder maxConcurrentStreams(final Integer maxConcurrentStreams) {
       this.maxConcurrentStreams = maxConcurrentStreams;
       return this;
@@ -110,6 +183,30 @@ public class Http2Server {
 
     public Builder requestHandler(final RequestHandler requestHandler) {
       this.requestHandler = requestHandler;
+      this.streamingRequestHandler = null;
+      return this;
+    }
+
+    /**
+     * Handle requests as they arrive instead of aggregating the request payload. Replaces any {@link
+     * #requestHandler(RequestHandler)}.
+     */
+    public Builder streamingRequestHandler(final StreamingRequestHandler requestHandler) {
+      this.streamingRequestHandler = requestHandler;
+      this.requestHandler = null;
+      return this;
+    }
+
+    /**
+     * Run the {@link #requestHandler(RequestHandler)} on this executor instead of on the connection event loop, so
+     * that handlers that block or do heavy work do not stall other streams and connections. Responses can be sent from
+     * any thread. Requests are answered with 503 Service Unavailable if the executor rejects them, e.g. when a bounded
+     * pool is saturated. Streaming request handlers always run on the event loop. Defaults to the event loop.
+     *
+     * @see #virtualThreadExecutor()
+     */
+    public Builder requestExecutor(final Executor requestExecutor) {
+      this.requestExecutor = requestExecutor;
       return this;
     }
 
@@ -123,6 +220,70 @@ public class Http2Server {
       return this;
     }
 
+    /**
+     * DATA frame payloads of at least this many bytes are passed through to the network as slices of the response
+     * content instead of being copied. Only applies to direct buffers, heap buffers are always copied. Smaller payloads
+     * are copied and coalesced into a single write. Defaults to 8 KiB.
+     */
+    public Builder zeroCopyWriteThreshold(final Integer zeroCopyWriteThreshold) {
+      this.zeroCopyWriteThreshold = zeroCopyWriteThreshold;
+      return this;
+    }
+
+    /**
+     * Receive connection, stream, frame and flow control events, e.g. to tune window sizes and concurrency. The same
+     * instance is shared by all connections. Defaults to {@link Http2Metrics#NOOP}.
+     */
+    public Builder metrics(final Http2Metrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * Grow the connection and stream windows automatically, up to this size, when they limit the throughput of large
+     * requests. The bandwidth-delay product is estimated from the data received during the round trip of a PING, so this
+     * adapts to high latency links without reserving large windows up front. Disabled by default.
+     */
+    public Builder maxAdaptiveWindow(final Integer maxAdaptiveWindow) {
+      this.maxAdaptiveWindow = maxAdaptiveWindow;
+      return this;
+    }
+
+    /**
+     * Intern header names and values of received requests in this cache, shared by all connections. Defaults to a
+     * separate cache of 256 strings per connection.
+     */
+    public Builder headerCache(final Http2HeaderCache headerCache) {
+      this.headerCache = headerCache;
+      return this;
+    }
+
+    /**
+     * Decide how the headers of responses are HPACK encoded, e.g. using {@link Http2HeaderEncoding#adaptive()}. Called once
+     * for each connection. Defaults to {@link Http2HeaderEncoding#DEFAULT}.
+     */
+    public Builder headerEncoding(final Supplier<? extends Http2HeaderEncoding> headerEncoding) {
+      this.headerEncoding = headerEncoding;
+      return this;
+    }
+
+    /**
+     * Send a PING on connections that have not received anything for this long, to detect and close dead connections.
+     * Disabled by default.
+     */
+    public Builder pingInterval(final long interval, final TimeUnit unit) {
+      this.pingIntervalNanos = unit.toNanos(interval);
+      return this;
+    }
+
+    /**
+     * Close connections that do not answer a PING within this time. Defaults to 10 seconds.
+     */
+    public Builder pingTimeout(final long timeout, final TimeUnit unit) {
+      this.pingTimeoutNanos = unit.toNanos(timeout);
+      return this;
+    }
+
     public Http2Server build() {
       return new Http2Server(this);
     }
@@ -48,12 +48,42 @@ class Http2Stream {
    */
   boolean endOfStream;
 
+  /**
+   * Should the initial headers be written at the next flush?
+   */
+  boolean headersPending;
+
+  //================================================================================
+  // Scheduling
+  //================================================================================
+
+  /**
+   * The RFC 9218 urgency, 0 (highest) to 7 (lowest). More urgent streams are given window and written first.
+   */
+  int urgency = Http2Priority.DEFAULT_URGENCY;
+
+  /**
+   * Can this stream be interleaved with other incremental streams of the same urgency?
+   */
+  boolean incremental;
+
+  /**
+   * The flush at which this stream was last given window. Used to interleave incremental streams.
+   */
+  long lastScheduled;
+
   //================================================================================
   // Incoming (local) flow control
   //================================================================================
 
   int localWindow;
 
+  /**
+   * Octets received but not yet consumed by the application. These are not refunded to the peer stream window until
+   * consumed.
+   */
+  int localUnconsumed;
+
   Http2Stream(final int id) {
     this(id, null);
   }
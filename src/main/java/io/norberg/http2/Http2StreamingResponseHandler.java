@@ -0,0 +1,29 @@
+package io.norberg.http2;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Receives a response as it arrives: the status and headers first, followed by the payload of each DATA frame and
+ * finally the end of the stream. Callbacks are made on the connection event loop and must not block.
+ */
+public interface Http2StreamingResponseHandler {
+
+  /**
+   * Called when the response headers have been received. The response has no content. Trailing headers, if any, are
+   * added to the same response before {@link #end()} is called.
+   */
+  void headers(Http2Response response);
+
+  /**
+   * Called for each DATA frame payload. The buffer is owned by the connection and only valid for the duration of the
+   * call. Retain or copy it to keep it.
+   */
+  void data(ByteBuf data);
+
+  /**
+   * Called when the response is complete.
+   */
+  void end();
+
+  void failure(Throwable e);
+}
@@ -1,5 +1,7 @@
 package io.norberg.http2;
 
+import static io.norberg.http2.Http2FrameTypes.PING;
+import static io.norberg.http2.Http2FrameTypes.RST_STREAM;
 import static io.norberg.http2.Http2FrameTypes.SETTINGS;
 import static io.norberg.http2.Http2FrameTypes.WINDOW_UPDATE;
 
@@ -24,7 +26,9 @@ class Http2WireFormat {
   static final int FRAME_HEADER_LENGTH = 9;
 
   static final int WINDOW_UPDATE_FRAME_LENGTH = FRAME_HEADER_LENGTH + INT_FIELD_LENGTH;
+  static final int RST_STREAM_FRAME_LENGTH = FRAME_HEADER_LENGTH + INT_FIELD_LENGTH;
   static final int PING_FRAME_PAYLOAD_LENGTH = 8;
+  static final int PING_FRAME_LENGTH = FRAME_HEADER_LENGTH + PING_FRAME_PAYLOAD_LENGTH;
 
 
   static void writeFrameHeader(final ByteBuf buf, final int offset, final int length,
@@ -43,6 +47,22 @@ class Http2WireFormat {
     buf.writeInt(sizeIncrement);
   }
 
+  static void writeRstStream(final ByteBuf buf, final int streamId, final Http2Error error) {
+    final int offset = buf.writerIndex();
+    assert buf.writableBytes() >= RST_STREAM_FRAME_LENGTH;
+    writeFrameHeader(buf, offset, INT_FIELD_LENGTH, RST_STREAM, 0, streamId);
+    buf.writerIndex(offset + FRAME_HEADER_LENGTH);
+    buf.writeInt(error.code());
+  }
+
+  static void writePing(final ByteBuf buf, final long payload) {
+    final int offset = buf.writerIndex();
+    assert buf.writableBytes() >= PING_FRAME_LENGTH;
+    writeFrameHeader(buf, offset, PING_FRAME_PAYLOAD_LENGTH, PING, 0, 0);
+    buf.writerIndex(offset + FRAME_HEADER_LENGTH);
+    buf.writeLong(payload);
+  }
+
   static void writeSettings(final ByteBuf buf, final Http2Settings settings) {
     final int length = SETTING_ENTRY_LENGTH * settings.size();
     final int offset = buf.writerIndex();
@@ -1,6 +1,8 @@
 package io.norberg.http2;
 
 import static io.norberg.http2.HuffmanTable.CODES;
+import static io.norberg.http2.HuffmanTable.FAST_BITS;
+import static io.norberg.http2.HuffmanTable.FAST_DECODE;
 import static io.norberg.http2.HuffmanTable.LENGTHS;
 import static io.norberg.http2.HuffmanTable.TERMINAL;
 
@@ -14,6 +16,8 @@ class Huffman {
 
   private static final boolean UNALIGNED = PlatformDependent.isUnaligned();
 
+  private static final int FAST_MASK = (1 << FAST_BITS) - 1;
+
   static void encode(final ByteBuf out, final AsciiString s) {
     encode(out, s, 0, s.length());
   }
@@ -118,6 +122,20 @@ class Huffman {
   }
 
   static void decode(final ByteBuf in, final ByteBuf out, final int length) {
+    if (!out.hasArray()) {
+      decodeTree(in, out, length);
+      return;
+    }
+    // The shortest code is 5 bits, so the output is less than twice as long as the input
+    out.ensureWritable(length * 2);
+    final int n = decode(in, out.array(), out.arrayOffset() + out.writerIndex(), length);
+    out.writerIndex(out.writerIndex() + n);
+  }
+
+  /**
+   * Decode one symbol at a time, walking the 8 bit {@link HuffmanTable#DECODE} tables.
+   */
+  static void decodeTree(final ByteBuf in, final ByteBuf out, final int length) {
     long bits = 0;
     int n = 0;
     int i = 0;
@@ -218,6 +236,109 @@ class Huffman {
   }
 
   static int decode(final ByteBuf in, final byte[] out, final int length) {
+    return decode(in, out, 0, length);
+  }
+
+  /**
+   * Decode up to two symbols at a time using {@link HuffmanTable#FAST_DECODE}, falling back to the 8 bit tables for
+   * codes longer than {@link HuffmanTable#FAST_BITS}. The output must have room for {@code length * 2} bytes.
+   *
+   * @return The number of decoded bytes.
+   */
+  static int decode(final ByteBuf in, final byte[] out, final int offset, final int length) {
+    long bits = 0;
+    int n = 0;
+    int i = 0;
+    int j = offset;
+
+    while (true) {
+
+      // Refill, leaving at least 32 bits in the buffer unless the input is exhausted
+      if (n < 32) {
+        if (length - i >= 4) {
+          bits = (bits << 32) | in.readUnsignedInt();
+          n += 32;
+          i += 4;
+        } else {
+          while (i < length && n <= 56) {
+            bits = (bits << 8) | in.readUnsignedByte();
+            n += 8;
+            i++;
+          }
+        }
+      }
+
+      if (n < FAST_BITS) {
+        break;
+      }
+
+      final int entry = FAST_DECODE[(int) (bits >>> (n - FAST_BITS)) & FAST_MASK];
+      final int count = entry >>> 26;
+      if (count == 0) {
+        // Long code, all of it is in the buffer unless the input is truncated
+        final int symbol = decodeSymbol(bits, n);
+        out[j++] = (byte) symbol;
+        n -= symbol >>> 8;
+        continue;
+      }
+      // Always write both symbols, the second is overwritten if there is only one
+      out[j] = (byte) entry;
+      out[j + 1] = (byte) (entry >>> 8);
+      j += count;
+      n -= (entry >>> 21) & 0x1F;
+    }
+
+    // Decode the last symbols, followed by at most 7 bits of padding
+    while (n > 0) {
+      final int padding = (1 << n) - 1;
+      if (n < 8 && (bits & padding) == padding) {
+        break;
+      }
+      final int index = (int) ((bits << (FAST_BITS - n)) | (FAST_MASK >>> n)) & FAST_MASK;
+      final int entry = FAST_DECODE[index];
+      final int firstLength = (entry >>> 16) & 0x1F;
+      if ((entry >>> 26) == 0 || firstLength > n) {
+        throw new IllegalArgumentException();
+      }
+      out[j++] = (byte) entry;
+      n -= firstLength;
+    }
+    return j - offset;
+  }
+
+  /**
+   * Decode a single symbol from the top {@code n} bits of a buffer.
+   *
+   * @return (used bits << 8) | char
+   */
+  private static int decodeSymbol(final long bits, final int n) {
+    int table = 0;
+    int consumed = 0;
+    while (true) {
+      final int r = n - consumed - 8;
+      final int b = (r >= 0)
+          ? (int) (bits >>> r) & 0xFF
+          : (int) (bits << -r) & 0xFF | (0xFF >>> (8 + r));
+      final int node = HuffmanTable.node(table, b);
+      if ((node & TERMINAL) != 0) {
+        final int used = consumed + ((node ^ TERMINAL) >>> 8);
+        if (used > n) {
+          throw new IllegalArgumentException();
+        }
+        return (used << 8) | (node & 0xFF);
+      }
+      if (node == 0 || r <= 0) {
+        throw new IllegalArgumentException();
+      }
+      consumed += 8;
+      table = node;
+    }
+  }
+
+  /**
+   * Decode one symbol at a time, walking the 8 bit {@link HuffmanTable#DECODE} tables.
+   */
+  static int decodeTree(final ByteBuf in, final byte[] out, final int length) {
     long bits = 0;
     int n = 0;
     int i = 0;
@@ -1,5 +1,7 @@
 package io.norberg.http2;
 
+import java.util.Arrays;
+
 // https://http2.github.io/http2-spec/compression.html#huffman.code
 
 /*
@@ -858,4 +860,51 @@ class HuffmanTable {
   static short node(final int table, final int i) {
     return DECODE[table * 256 + i];
   }
+
+  static final int FAST_BITS = 12;
+
+  /**
+   * Decodes up to two symbols from the next {@link #FAST_BITS} bits at a time.
+   * (count << 26) | (used << 21) | (first length << 16) | (second char << 8) | first char. A count of zero means that
+   * the first code is longer than {@link #FAST_BITS}.
+   */
+  static final int[] FAST_DECODE = fastDecodeTable(CODES, LENGTHS);
+
+  private static int[] fastDecodeTable(final int[] codes, final byte[] lengths) {
+    final int size = 1 << FAST_BITS;
+
+    // The first symbol of every bit pattern, as (length << 8) | char, or -1 for long codes
+    final int[] single = new int[size];
+    Arrays.fill(single, -1);
+    for (int value = 0; value < 256; value++) {
+      final int length = lengths[value];
+      if (length > FAST_BITS) {
+        continue;
+      }
+      final int r = FAST_BITS - length;
+      final int prefix = codes[value] << r;
+      for (int p = 0; p < (1 << r); p++) {
+        single[prefix | p] = (length << 8) | value;
+      }
+    }
+
+    final int[] table = new int[size];
+    for (int i = 0; i < size; i++) {
+      final int first = single[i];
+      if (first == -1) {
+        continue;
+      }
+      final int firstLength = first >>> 8;
+      final int firstValue = first & 0xFF;
+      final int second = single[(i << firstLength) & (size - 1)];
+      final int secondLength = second >>> 8;
+      if (second != -1 && firstLength + secondLength <= FAST_BITS) {
+        table[i] = (2 << 26) | ((firstLength + secondLength) << 21) | (firstLength << 16)
+            | ((second & 0xFF) << 8) | firstValue;
+      } else {
+        table[i] = (1 << 26) | (firstLength << 21) | (firstLength << 16) | firstValue;
+      }
+    }
+    return table;
+  }
 }
@@ -0,0 +1,146 @@
+package io.norberg.http2;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A log-bucketed histogram of latencies in nanoseconds, in the style of HdrHistogram. Values below 32 ns are counted
+ * exactly, larger values in buckets that are at most 1/32 (~3%) of their value wide. Recording is lock-free and does
+ * not allocate, so it can be called from any number of threads.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Record a latency. Negative values are recorded as zero.
+   */
+  public void record(final long nanos) {
+    final long value = Math.max(nanos, 0);
+    counts.incrementAndGet(index(value));
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  /**
+   * Take a snapshot of the recorded latencies. Values recorded concurrently might or might not be included.
+   */
+  public Snapshot snapshot() {
+    final long[] snapshot = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      count += snapshot[i];
+    }
+    return new Snapshot(snapshot, count, sum.sum(), max.get());
+  }
+
+  /**
+   * Forget all recorded latencies. Values recorded concurrently might or might not be forgotten.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    sum.reset();
+    max.reset();
+  }
+
+  static int index(final long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    // The leading one bit selects the bucket, the following bits the sub bucket
+    final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+    final int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * The highest value that is counted in a bucket.
+   */
+  static long highestValue(final int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = index / SUB_BUCKETS - 1;
+    final long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+  public static final class Snapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    private Snapshot(final long[] counts, final long count, final long sum, final long max) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    /**
+     * The number of recorded latencies.
+     */
+    public long count() {
+      return count;
+    }
+
+    /**
+     * The highest recorded latency, in nanoseconds.
+     */
+    public long max() {
+      return max;
+    }
+
+    /**
+     * The mean latency, in nanoseconds. Zero if nothing has been recorded.
+     */
+    public double mean() {
+      return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * The latency at a percentile, e.g. 99.9, in nanoseconds. At most ~3% higher than the exact value. Zero if nothing
+     * has been recorded.
+     */
+    public long percentile(final double percentile) {
+      if (percentile < 0 || percentile > 100) {
+        throw new IllegalArgumentException("Invalid percentile: " + percentile);
+      }
+      if (count == 0) {
+        return 0;
+      }
+      final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(highestValue(i), max);
+        }
+      }
+      return max;
+    }
+
+    @Override
+    public String toString() {
+      return "Snapshot{" +
+          "count=" + count +
+          ", p50=" + percentile(50) +
+          ", p99=" + percentile(99) +
+          ", p999=" + percentile(99.9) +
+          ", max=" + max +
+          '}';
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package io.norberg.http2;
+
+/**
+ * Records the latency of requests sent by a {@link Http2Client}, as seen by the client. All latencies are measured
+ * from when the request is sent. Only requests that receive a response are recorded.
+ *
+ * @see Http2Client.Builder#latencyRecorder(LatencyRecorder)
+ */
+public final class LatencyRecorder {
+
+  private final LatencyHistogram queueTime = new LatencyHistogram();
+  private final LatencyHistogram timeToHeaders = new LatencyHistogram();
+  private final LatencyHistogram timeToLastByte = new LatencyHistogram();
+
+  /**
+   * The time until the request was picked up by a connection, waiting for a connection or a free stream.
+   */
+  public LatencyHistogram queueTime() {
+    return queueTime;
+  }
+
+  /**
+   * The time until the response headers were received.
+   */
+  public LatencyHistogram timeToHeaders() {
+    return timeToHeaders;
+  }
+
+  /**
+   * The time until the response was complete.
+   */
+  public LatencyHistogram timeToLastByte() {
+    return timeToLastByte;
+  }
+
+  /**
+   * Forget all recorded latencies.
+   */
+  public void reset() {
+    queueTime.reset();
+    timeToHeaders.reset();
+    timeToLastByte.reset();
+  }
+}
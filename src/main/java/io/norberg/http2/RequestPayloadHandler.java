@@ -0,0 +1,38 @@
+package io.norberg.http2;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AsciiString;
+
+/**
+ * Receives the payload of a request. Callbacks are made on the connection event loop and must not block.
+ */
+public interface RequestPayloadHandler {
+
+  /**
+   * Called for each DATA frame payload. The buffer is owned by the connection and only valid for the duration of the
+   * call. Retain or copy it to keep it.
+   *
+   * @return The number of bytes consumed. The client is not allowed to send more data in place of the remaining bytes
+   * until they are reported through {@link Http2RequestContext#consumed(int)}.
+   */
+  int data(ByteBuf data);
+
+  /**
+   * Called for each field of the request trailers, after the payload and before {@link #end()}. Trailers are ignored
+   * by default.
+   */
+  default void trailer(AsciiString name, AsciiString value) {
+  }
+
+  /**
+   * Called when the request is complete.
+   */
+  void end();
+
+  /**
+   * Called if the client resets the stream before the request is complete. Release any resources held for the request.
+   * A response to a reset stream is discarded.
+   */
+  default void reset() {
+  }
+}
@@ -0,0 +1,9 @@
+package io.norberg.http2;
+
+/**
+ * The response to a request was not received before the request deadline.
+ */
+public class RequestTimeoutException extends Exception {
+
+  private static final long serialVersionUID = 3093184523364718513L;
+}
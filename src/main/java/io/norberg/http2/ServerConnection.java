@@ -11,7 +11,6 @@ import static io.norberg.http2.PseudoHeaders.SCHEME;
 import static io.norberg.http2.PseudoHeaders.STATUS;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -29,7 +28,9 @@ class ServerConnection extends AbstractConnection<ServerConnection, ServerConnec
 
   private static final Logger log = LoggerFactory.getLogger(ServerConnection.class);
 
-  private final RequestHandler requestHandler;
+  private final StreamingRequestHandler requestHandler;
+
+  private int lastStreamId;
 
   private ServerConnection(final Builder builder, final Channel ch) {
     super(builder, ch, log);
@@ -81,15 +82,21 @@ class ServerConnection extends AbstractConnection<ServerConnection, ServerConnec
   }
 
   @Override
-  protected void readData(final ServerStream stream, final ByteBuf data, final int padding,
+  protected int readData(final ServerStream stream, final ByteBuf data, final int padding,
       final boolean endOfStream) throws Http2Exception {
-    // TODO: allow user to provide codec that can be used to parse payload directly without copying it
-
-    ByteBuf content = stream.request.content();
-    if (content == null) {
-      stream.request.content(Unpooled.copiedBuffer(data));
-    } else {
-      content.writeBytes(data);
+    final RequestPayloadHandler payloadHandler = stream.payloadHandler;
+    final int length = data.readableBytes();
+    if (payloadHandler == null) {
+      // Request handler failed, discard the payload
+      return length;
+    }
+    try {
+      return payloadHandler.data(data);
+    } catch (Exception e) {
+      log.error("Request payload handler threw exception", e);
+      stream.payloadHandler = null;
+      stream.fail();
+      return length;
     }
   }
 
@@ -99,23 +106,67 @@ class ServerConnection extends AbstractConnection<ServerConnection, ServerConnec
     if (stream == null) {
       final ServerStream newStream = new ServerStream(streamId, localInitialStreamWindow());
       registerStream(newStream);
+      lastStreamId = streamId;
       return newStream;
     }
     return stream;
   }
 
+  @Override
+  protected void goAway(final int lastStreamId, final long errorCode) {
+    // The server does not initiate streams and the client closes the connection when done, nothing to do
+  }
+
+  @Override
+  protected void rttMeasured(final long rttNanos, final long minRttNanos) {
+  }
+
+  @Override
+  protected void peerReset(final ServerStream stream, final long errorCode) {
+    stream.reset = true;
+    if (stream.request != null) {
+      stream.request.release();
+      stream.request = null;
+    }
+    if (stream.response != null) {
+      stream.response.release();
+      stream.response = null;
+    }
+    final RequestPayloadHandler payloadHandler = stream.payloadHandler;
+    stream.payloadHandler = null;
+    if (payloadHandler == null) {
+      return;
+    }
+    try {
+      payloadHandler.reset();
+    } catch (Exception e) {
+      log.error("Request payload handler threw exception", e);
+    }
+  }
+
+  @Override
+  protected boolean closed(final int streamId) {
+    // Stream ids are never reused, so lower ids belong to streams that have already completed
+    return streamId <= lastStreamId;
+  }
+
   @Override
   protected void inboundEnd(final ServerStream stream) throws Http2Exception {
-    // Hand off request to request handler
-    Http2Request request = stream.request;
-    stream.request = null;
+    stream.inboundEnded = true;
+    if (stream.outboundEnded) {
+      deregisterStream(stream.id);
+    }
+    final RequestPayloadHandler payloadHandler = stream.payloadHandler;
+    stream.payloadHandler = null;
+    if (payloadHandler == null) {
+      return;
+    }
     try {
-      requestHandler.handleRequest(stream, request);
+      payloadHandler.end();
     } catch (Exception e) {
       log.error("Request handler threw exception", e);
       stream.fail();
     }
-//    request.release();
   }
 
 
@@ -131,8 +182,15 @@ class ServerConnection extends AbstractConnection<ServerConnection, ServerConnec
     final ResponsePromise responsePromise = (ResponsePromise) promise;
     // TODO: handle duplicate responses
     final ServerStream stream = responsePromise.stream;
+    // The client is no longer interested in the response
+    if (stream.reset) {
+      response.release();
+      return null;
+    }
     stream.response = response;
     stream.data = response.content();
+    // The response may override the priority signalled by the client
+    Http2Priority.apply(stream, response);
     stream.endOfStream = true;
     return stream;
   }
@@ -141,12 +199,28 @@ class ServerConnection extends AbstractConnection<ServerConnection, ServerConnec
   protected void outboundEnd(final ServerStream stream) {
     stream.response.release();
     stream.response = null;
-    deregisterStream(stream.id);
+    stream.outboundEnded = true;
+    // Responding before the request is complete is allowed, keep the stream around to read the rest of the request
+    if (stream.inboundEnded) {
+      deregisterStream(stream.id);
+    }
   }
 
   @Override
   protected void endHeaders(final ServerStream stream, final boolean endOfStream)
       throws Http2Exception {
+    // Hand off request to request handler as soon as the headers are complete. Later header blocks are trailers.
+    final Http2Request request = stream.request;
+    if (request == null) {
+      return;
+    }
+    stream.request = null;
+    try {
+      stream.payloadHandler = requestHandler.handleRequest(stream, request);
+    } catch (Exception e) {
+      log.error("Request handler threw exception", e);
+      stream.fail();
+    }
   }
 
   @Override
@@ -157,12 +231,51 @@ class ServerConnection extends AbstractConnection<ServerConnection, ServerConnec
   @Override
   protected void readHeader(final ServerStream stream, final AsciiString name,
       final AsciiString value) throws Http2Exception {
-    stream.request.header(name, value);
+    final Http2Request request = stream.request;
+    if (request == null) {
+      readTrailer(stream, name, value);
+      return;
+    }
+    request.header(name, value);
+    if (name.contentEquals(Http2Priority.PRIORITY)) {
+      Http2Priority.apply(stream, value);
+    }
+  }
+
+  private void readTrailer(final ServerStream stream, final AsciiString name, final AsciiString value) {
+    final RequestPayloadHandler payloadHandler = stream.payloadHandler;
+    if (payloadHandler == null) {
+      // Request handler failed, discard the trailers
+      return;
+    }
+    try {
+      payloadHandler.trailer(name, value);
+    } catch (Exception e) {
+      log.error("Request payload handler threw exception", e);
+      stream.payloadHandler = null;
+      stream.fail();
+    }
+  }
+
+  @Override
+  protected void priorityUpdate(final int prioritizedStreamId, final AsciiString priorityFieldValue)
+      throws Http2Exception {
+    if (prioritizedStreamId == 0) {
+      throw connectionError(PROTOCOL_ERROR, "PRIORITY_UPDATE for stream 0");
+    }
+    // Updates for streams that are not open are ignored
+    final ServerStream stream = stream(prioritizedStreamId);
+    if (stream != null) {
+      Http2Priority.apply(stream, priorityFieldValue);
+    }
   }
 
   @Override
   protected void readPseudoHeader(final ServerStream stream, final AsciiString name,
       final AsciiString value) throws Http2Exception {
+    if (stream.request == null) {
+      throw connectionError(PROTOCOL_ERROR, "Got pseudo-header in trailers: " + name + "=" + value);
+    }
     if (name.length() < 5) {
       throw new IllegalArgumentException();
     }
@@ -205,6 +318,10 @@ class ServerConnection extends AbstractConnection<ServerConnection, ServerConnec
 
     private Http2Request request = new Http2Request();
     private Http2Response response;
+    private RequestPayloadHandler payloadHandler;
+    private boolean inboundEnded;
+    private boolean outboundEnded;
+    private boolean reset;
 
     public ServerStream(final int id, final int localWindow) {
       super(id);
@@ -219,6 +336,23 @@ class ServerConnection extends AbstractConnection<ServerConnection, ServerConnec
       // Return 500 for request handler errors
       respond(new Http2Response(INTERNAL_SERVER_ERROR));
     }
+
+    @Override
+    public void consumed(final int bytes) {
+      if (channel().eventLoop().inEventLoop()) {
+        consumed0(bytes);
+      } else {
+        channel().eventLoop().execute(() -> consumed0(bytes));
+      }
+    }
+
+    private void consumed0(final int bytes) {
+      // No need to replenish the window of a stream that the client has finished sending on or reset
+      if (inboundEnded || reset) {
+        return;
+      }
+      ServerConnection.this.consumed(this, bytes);
+    }
   }
 
   private static class ResponsePromise extends DefaultChannelPromise {
@@ -237,13 +371,13 @@ class ServerConnection extends AbstractConnection<ServerConnection, ServerConnec
 
   static class Builder extends AbstractConnection.Builder<Builder> {
 
-    private RequestHandler requestHandler;
+    private StreamingRequestHandler requestHandler;
 
-    RequestHandler requestHandler() {
+    StreamingRequestHandler requestHandler() {
       return requestHandler;
     }
 
-    Builder requestHandler(final RequestHandler requestHandler) {
+    Builder requestHandler(final StreamingRequestHandler requestHandler) {
       this.requestHandler = requestHandler;
       return this;
     }
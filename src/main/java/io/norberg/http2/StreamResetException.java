@@ -0,0 +1,28 @@
+package io.norberg.http2;
+
+/**
+ * The peer reset the stream of a request before responding.
+ */
+public class StreamResetException extends Exception {
+
+  private static final long serialVersionUID = -2738563716428011739L;
+
+  private final long errorCode;
+
+  public StreamResetException(final long errorCode) {
+    super("Stream reset by peer: " + errorName(errorCode));
+    this.errorCode = errorCode;
+  }
+
+  /**
+   * The HTTP/2 error code of the RST_STREAM frame, e.g. 0x7 (REFUSED_STREAM) or 0x8 (CANCEL).
+   */
+  public long errorCode() {
+    return errorCode;
+  }
+
+  private static String errorName(final long errorCode) {
+    final Http2Error error = Http2Error.of(errorCode);
+    return error != null ? error.name() : "0x" + Long.toHexString(errorCode);
+  }
+}
@@ -0,0 +1,14 @@
+package io.norberg.http2;
+
+/**
+ * Handles requests as they arrive, receiving the request headers before the request payload.
+ */
+public interface StreamingRequestHandler {
+
+  /**
+   * Called on the connection event loop when the request headers have been received. The request has no content.
+   *
+   * @return The handler that receives the request payload.
+   */
+  RequestPayloadHandler handleRequest(final Http2RequestContext context, Http2Request request);
+}
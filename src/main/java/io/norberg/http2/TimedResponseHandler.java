@@ -0,0 +1,51 @@
+package io.norberg.http2;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Records the latency of a request in a {@link LatencyRecorder} as its response arrives.
+ */
+class TimedResponseHandler implements Http2StreamingResponseHandler {
+
+  private final Http2StreamingResponseHandler responseHandler;
+  private final LatencyRecorder recorder;
+  private final long sendNanos;
+
+  private long startNanos;
+
+  TimedResponseHandler(final Http2StreamingResponseHandler responseHandler, final LatencyRecorder recorder) {
+    this.responseHandler = responseHandler;
+    this.recorder = recorder;
+    this.sendNanos = System.nanoTime();
+  }
+
+  /**
+   * Called on the event loop when a connection opens a stream for the request. A retried request is started again.
+   */
+  void started() {
+    startNanos = System.nanoTime();
+  }
+
+  @Override
+  public void headers(final Http2Response response) {
+    recorder.queueTime().record(startNanos - sendNanos);
+    recorder.timeToHeaders().record(System.nanoTime() - sendNanos);
+    responseHandler.headers(response);
+  }
+
+  @Override
+  public void data(final ByteBuf data) {
+    responseHandler.data(data);
+  }
+
+  @Override
+  public void end() {
+    recorder.timeToLastByte().record(System.nanoTime() - sendNanos);
+    responseHandler.end();
+  }
+
+  @Override
+  public void failure(final Throwable e) {
+    responseHandler.failure(e);
+  }
+}
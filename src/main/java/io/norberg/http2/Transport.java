@@ -0,0 +1,75 @@
+package io.norberg.http2;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * The network transport used by {@link Http2Client} and {@link Http2Server}.
+ */
+public enum Transport {
+
+  /**
+   * Use the native epoll transport if available, otherwise NIO.
+   */
+  AUTO,
+
+  /**
+   * Java NIO selector based transport. Available on all platforms.
+   */
+  NIO,
+
+  /**
+   * Native edge-triggered epoll transport. Only available on Linux.
+   */
+  EPOLL;
+
+  /**
+   * Resolve {@link #AUTO} to a concrete transport and verify that the transport is available.
+   */
+  Transport resolve() {
+    switch (this) {
+      case AUTO:
+        return Epoll.isAvailable() ? EPOLL : NIO;
+      case EPOLL:
+        if (!Epoll.isAvailable()) {
+          throw new IllegalStateException("epoll transport is not available", Epoll.unavailabilityCause());
+        }
+        return EPOLL;
+      default:
+        return this;
+    }
+  }
+
+  EventLoopGroup defaultEventLoopGroup() {
+    switch (resolve()) {
+      case EPOLL:
+        return Util.defaultEpollEventLoopGroup();
+      default:
+        return Util.defaultEventLoopGroup();
+    }
+  }
+
+  Class<? extends SocketChannel> socketChannelClass() {
+    switch (resolve()) {
+      case EPOLL:
+        return EpollSocketChannel.class;
+      default:
+        return NioSocketChannel.class;
+    }
+  }
+
+  Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+    switch (resolve()) {
+      case EPOLL:
+        return EpollServerSocketChannel.class;
+      default:
+        return NioServerSocketChannel.class;
+    }
+  }
+}
@@ -2,6 +2,7 @@ package io.norberg.http2;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.handler.ssl.ApplicationProtocolConfig;
 import io.netty.handler.ssl.ApplicationProtocolNames;
@@ -60,6 +61,12 @@ class Util {
         0, new DefaultThreadFactory(NioEventLoopGroup.class, true));
   }
 
+  private static class LazyDefaultEpollEventLoopGroup {
+
+    private static final EpollEventLoopGroup INSTANCE = new EpollEventLoopGroup(
+        0, new DefaultThreadFactory(EpollEventLoopGroup.class, true));
+  }
+
   static SslContext defaultClientSslContext() {
     final SslProvider provider = OpenSsl.isAlpnSupported() ? SslProvider.OPENSSL : SslProvider.JDK;
     try {
@@ -101,6 +108,10 @@ class Util {
     return LazyDefaultEventLoopGroup.INSTANCE;
   }
 
+  static EpollEventLoopGroup defaultEpollEventLoopGroup() {
+    return LazyDefaultEpollEventLoopGroup.INSTANCE;
+  }
+
   static <T> CompletableFuture<T> completableFuture(final Future<T> f) {
     final CompletableFuture<T> cf = new CompletableFuture<>();
     f.addListener(future -> {
@@ -0,0 +1,50 @@
+package io.norberg.http2;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import org.hamcrest.Matcher;
+import org.junit.Test;
+
+public class BackoffTest {
+
+  @Test
+  public void testExponentialWithJitter() {
+    final Backoff backoff = new Backoff(100, 1000);
+    assertThat(backoff.failure(), is(between(50, 100)));
+    assertThat(backoff.failure(), is(between(100, 200)));
+    assertThat(backoff.failure(), is(between(200, 400)));
+    assertThat(backoff.failure(), is(between(400, 800)));
+    assertThat(backoff.failure(), is(between(500, 1000)));
+  }
+
+  @Test
+  public void testCappedWithoutOverflow() {
+    final Backoff backoff = new Backoff(Long.MAX_VALUE / 4, Long.MAX_VALUE);
+    for (int i = 0; i < 100; i++) {
+      assertThat(backoff.failure(), is(between(Long.MAX_VALUE / 8, Long.MAX_VALUE)));
+    }
+  }
+
+  @Test
+  public void testSuccessResets() {
+    final Backoff backoff = new Backoff(100, 1000);
+    for (int i = 0; i < 10; i++) {
+      backoff.failure();
+    }
+    backoff.success();
+    assertThat(backoff.failure(), is(between(50, 100)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidMaxDelay() {
+    new Backoff(100, 99);
+  }
+
+  private static Matcher<Long> between(final long min, final long max) {
+    return allOf(greaterThanOrEqualTo(min), lessThanOrEqualTo(max));
+  }
+}
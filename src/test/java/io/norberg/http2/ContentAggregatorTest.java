@@ -0,0 +1,113 @@
+package io.norberg.http2;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.AsciiString;
+import org.junit.Test;
+
+public class ContentAggregatorTest {
+
+  @Test
+  public void testPresizedFromContentLength() {
+    final Http2Response response = new Http2Response(OK)
+        .header(CONTENT_LENGTH, AsciiString.of("10"));
+    final ByteBuf data = Unpooled.copiedBuffer("hello", UTF_8);
+
+    final ByteBuf content = ContentAggregator.aggregate(null, data, response, false);
+    assertThat(content.capacity(), is(10));
+    assertThat(ContentAggregator.aggregate(content, data, response, false), is(sameInstance(content)));
+    assertThat(content.capacity(), is(10));
+    assertThat(content.toString(UTF_8), is("hellohello"));
+
+    content.release();
+    data.release();
+  }
+
+  @Test
+  public void testPresizeIsCapped() {
+    final Http2Response response = new Http2Response(OK)
+        .header(CONTENT_LENGTH, AsciiString.of(String.valueOf(16 * 1024 * 1024)));
+    final ByteBuf data = Unpooled.wrappedBuffer(new byte[48 * 1024]);
+
+    // A large content-length only reserves a bounded buffer, which grows with the data received
+    final ByteBuf content = ContentAggregator.aggregate(null, data, response, false);
+    assertThat(content.capacity(), is(ContentAggregator.MAX_PRESIZED_CONTENT));
+    assertThat(ContentAggregator.aggregate(content, data, response, false), is(sameInstance(content)));
+    assertThat(content.readableBytes(), is(96 * 1024));
+
+    content.release();
+  }
+
+  @Test
+  public void testPooledPresizedFromContentLength() {
+    final Http2Response response = new Http2Response(OK)
+        .header(CONTENT_LENGTH, AsciiString.of("10"));
+    final ByteBuf data = PooledByteBufAllocator.DEFAULT.buffer().writeBytes("hello".getBytes(UTF_8));
+
+    final ByteBuf content = ContentAggregator.aggregate(null, data, response, true);
+    assertThat(content.alloc(), is(sameInstance(data.alloc())));
+    assertThat(content.capacity(), is(10));
+    assertThat(data.refCnt(), is(1));
+    assertThat(content.toString(UTF_8), is("hello"));
+
+    content.release();
+    data.release();
+  }
+
+  @Test
+  public void testPooledRetainsSlices() {
+    final Http2Response response = new Http2Response(OK);
+    final ByteBuf data = PooledByteBufAllocator.DEFAULT.buffer().writeBytes("hello".getBytes(UTF_8));
+
+    final ByteBuf content = ContentAggregator.aggregate(null, data, response, true);
+    assertThat(content, is(instanceOf(CompositeByteBuf.class)));
+    assertThat(ContentAggregator.aggregate(content, data, response, true), is(sameInstance(content)));
+    assertThat(data.refCnt(), is(3));
+    assertThat(content.toString(UTF_8), is("hellohello"));
+
+    content.release();
+    assertThat(data.refCnt(), is(1));
+    data.release();
+  }
+
+  @Test
+  public void testUnpooledCopies() {
+    final Http2Response response = new Http2Response(OK);
+    final ByteBuf data = PooledByteBufAllocator.DEFAULT.buffer().writeBytes("hello".getBytes(UTF_8));
+
+    final ByteBuf content = ContentAggregator.aggregate(null, data, response, false);
+    assertThat(content, is(not(instanceOf(CompositeByteBuf.class))));
+    assertThat(ContentAggregator.aggregate(content, data, response, false), is(sameInstance(content)));
+    assertThat(data.refCnt(), is(1));
+    assertThat(content.toString(UTF_8), is("hellohello"));
+
+    content.release();
+    data.release();
+  }
+
+  @Test
+  public void testContentLength() {
+    assertThat(ContentAggregator.contentLength(new Http2Response(OK)), is(-1));
+    assertThat(ContentAggregator.contentLength(contentLength("0")), is(0));
+    assertThat(ContentAggregator.contentLength(contentLength("4711")), is(4711));
+    assertThat(ContentAggregator.contentLength(contentLength("-1")), is(-1));
+    assertThat(ContentAggregator.contentLength(contentLength("foo")), is(-1));
+    assertThat(ContentAggregator.contentLength(contentLength("17179869184")),
+        is(ContentAggregator.MAX_PRESIZED_CONTENT));
+  }
+
+  private static Http2Response contentLength(final String value) {
+    return new Http2Response(OK).header(CONTENT_LENGTH, AsciiString.of(value));
+  }
+}
@@ -0,0 +1,149 @@
+package io.norberg.http2;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeadlineWheelTest {
+
+  private static final long TICK = SECONDS.toNanos(1);
+
+  @Mock EventExecutor executor;
+  @Mock ScheduledFuture<?> ticker;
+
+  private final List<String> expired = new ArrayList<>();
+
+  private DeadlineWheel<String> wheel;
+  private long now;
+
+  @Before
+  public void setUp() {
+    doReturn(ticker).when(executor).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any());
+    wheel = new DeadlineWheel<>(executor, expired::add, TICK, 8);
+    now = System.nanoTime();
+  }
+
+  @Test
+  public void testExpire() {
+    wheel.add("a", now + MILLISECONDS.toNanos(2500));
+    wheel.add("b", now + MILLISECONDS.toNanos(5500));
+    verify(executor).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any());
+    assertThat(wheel.size(), is(2));
+
+    // Deadlines never expire early
+    wheel.expire(now + SECONDS.toNanos(2));
+    assertThat(expired, is(emptyList()));
+
+    wheel.expire(now + SECONDS.toNanos(3));
+    assertThat(expired, is(asList("a")));
+
+    wheel.expire(now + SECONDS.toNanos(6));
+    assertThat(expired, is(asList("a", "b")));
+    assertThat(wheel.size(), is(0));
+
+    // Stop ticking when there is nothing left to expire
+    verify(ticker).cancel(false);
+  }
+
+  @Test
+  public void testCancel() {
+    final DeadlineWheel.Deadline<String> a = wheel.add("a", now + SECONDS.toNanos(1));
+    final DeadlineWheel.Deadline<String> b = wheel.add("b", now + SECONDS.toNanos(1));
+    final DeadlineWheel.Deadline<String> c = wheel.add("c", now + SECONDS.toNanos(1));
+
+    // Cancel from the middle, the head and the tail of the bucket
+    b.cancel();
+    c.cancel();
+    assertThat(wheel.size(), is(1));
+
+    wheel.expire(now + SECONDS.toNanos(2));
+    assertThat(expired, is(asList("a")));
+
+    // Cancelling an expired or already cancelled deadline is a no-op
+    a.cancel();
+    b.cancel();
+    assertThat(wheel.size(), is(0));
+  }
+
+  @Test
+  public void testCancelAllStopsTicking() {
+    final DeadlineWheel.Deadline<String> a = wheel.add("a", now + SECONDS.toNanos(1));
+    a.cancel();
+    verify(ticker).cancel(false);
+
+    // Ticking restarts with the next deadline
+    wheel.add("b", now + SECONDS.toNanos(1));
+    verify(executor, times(2)).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any());
+  }
+
+  @Test
+  public void testLaterRound() {
+    // Shares a bucket with tick 5 but is 2 rounds of the wheel later
+    wheel.add("a", now + MILLISECONDS.toNanos(20500));
+
+    wheel.expire(now + SECONDS.toNanos(6));
+    assertThat(expired, is(emptyList()));
+
+    // Skipping more than a round of ticks still visits every bucket once
+    wheel.expire(now + SECONDS.toNanos(20));
+    assertThat(expired, is(emptyList()));
+
+    wheel.expire(now + SECONDS.toNanos(21));
+    assertThat(expired, is(asList("a")));
+  }
+
+  @Test
+  public void testPastDeadlineExpiresAtNextTick() {
+    wheel.expire(now + SECONDS.toNanos(3));
+    wheel.add("a", now - SECONDS.toNanos(10));
+
+    wheel.expire(now + SECONDS.toNanos(3));
+    assertThat(expired, is(emptyList()));
+
+    wheel.expire(now + SECONDS.toNanos(4));
+    assertThat(expired, is(asList("a")));
+  }
+
+  @Test
+  public void testListenerCanAddDeadlines() {
+    wheel = new DeadlineWheel<>(executor, value -> {
+      expired.add(value);
+      if (value.equals("a")) {
+        wheel.add("b", now + MILLISECONDS.toNanos(1500));
+      }
+    }, TICK, 8);
+    now = System.nanoTime();
+
+    wheel.add("a", now + MILLISECONDS.toNanos(500));
+    wheel.expire(now + SECONDS.toNanos(1));
+    assertThat(expired, is(asList("a")));
+    assertThat(wheel.size(), is(1));
+
+    wheel.expire(now + SECONDS.toNanos(2));
+    assertThat(expired, is(asList("a", "b")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTicksPerWheelMustBePowerOfTwo() {
+    new DeadlineWheel<String>(executor, expired::add, TICK, 12);
+  }
+}
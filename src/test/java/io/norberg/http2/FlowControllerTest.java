@@ -5,6 +5,7 @@ import static io.norberg.http2.Http2Protocol.DEFAULT_INITIAL_WINDOW_SIZE;
 import static io.norberg.http2.TestUtil.randomByteBuf;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
@@ -21,6 +22,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
@@ -72,6 +74,17 @@ public class FlowControllerTest {
     assertThat(stream.started, is(true));
   }
 
+  @Test
+  public void testStop() throws Exception {
+    final Http2Stream stream = new Http2Stream(1, randomByteBuf(4711));
+    controller.start(stream);
+    controller.stop(stream);
+    assertThat(stream.pending, is(false));
+
+    // Verify that the stopped stream is not written
+    verifyFlush();
+  }
+
   @Test
   public void testRemoteInitialStreamWindow() throws Exception {
     final int remoteInitialStreamWindow = controller.remoteInitialStreamWindow();
@@ -462,6 +475,97 @@ public class FlowControllerTest {
         stream(stream1).estimate(20).write(20, END_OF_STREAM).pending(false));
   }
 
+  @Test
+  public void testConnectionWindowExhaustedByStreamWindowUpdatedStream() throws Exception {
+    controller = new FlowController<>(10, 10);
+
+    // Exhaust both the stream window and the connection window
+    final Http2Stream stream = startStream(1, 30);
+    verifyFlush(stream(stream).headers().estimate(10).write(10).pending(false));
+    assertThat(controller.remoteConnectionWindow(), is(0));
+
+    // Replenish the stream window and part of the connection window
+    verifyRemoteStreamWindowUpdate(20, stream);
+    verifyRemoteConnectionWindowUpdate(5, stream);
+
+    // The stream exhausts the connection window again and is written once
+    verifyFlush(stream(stream).estimate(5).write(5).pending(true));
+    assertThat(controller.remoteConnectionWindow(), is(0));
+
+    // Replenish the connection window
+    verifyRemoteConnectionWindowUpdate(1024, stream);
+    verifyFlush(stream(stream).estimate(15).write(15, END_OF_STREAM).pending(false));
+  }
+
+  @Test
+  public void testUrgentStreamIsGivenConnectionWindowFirst() throws Exception {
+    controller = new FlowController<>(10, DEFAULT_INITIAL_WINDOW_SIZE);
+
+    // Exhaust the connection window with a bulk transfer
+    final Http2Stream bulk = startStream(1, 30);
+    verifyFlush(stream(bulk).headers().estimate(10).write(10).pending(true));
+
+    // Start an urgent stream while the connection window is exhausted
+    final Http2Stream urgent = startStream(3, 5, 0, false);
+    verifyFlush(stream(urgent).headers().pending(true));
+
+    // The urgent stream gets the connection window and is written first
+    verifyRemoteConnectionWindowUpdate(10, bulk, urgent);
+    verifyFlush(
+        stream(urgent).estimate(5).write(5, END_OF_STREAM).pending(false),
+        stream(bulk).estimate(5).write(5).pending(true));
+  }
+
+  @Test
+  public void testNewUrgentStreamDataIsWrittenFirst() throws Exception {
+    final Http2Stream bulk = startStream(1, 10, 7, false);
+    final Http2Stream normal = startStream(3, 10);
+    final Http2Stream urgent = startStream(5, 10, 0, false);
+
+    // Headers are written for streams 1, 3 and 5 in that order, followed by the data in priority order
+    verifyFlush(
+        stream(urgent).headers().estimate(10).write(10, END_OF_STREAM).pending(false),
+        stream(normal).headers().estimate(10).write(10, END_OF_STREAM).pending(false),
+        stream(bulk).headers().estimate(10).write(10, END_OF_STREAM).pending(false));
+  }
+
+  @Test
+  public void testIncrementalStreamsTakeTurns() throws Exception {
+    controller = new FlowController<>(10, DEFAULT_INITIAL_WINDOW_SIZE);
+
+    final Http2Stream stream1 = startStream(1, 30, 3, true);
+    final Http2Stream stream2 = startStream(3, 30, 3, true);
+    verifyFlush(
+        stream(stream1).headers().estimate(10).write(10).pending(true),
+        stream(stream2).headers().pending(true));
+
+    verifyRemoteConnectionWindowUpdate(10, stream1, stream2);
+    verifyFlush(
+        stream(stream2).estimate(10).write(10).pending(true),
+        stream(stream1).pending(true));
+
+    verifyRemoteConnectionWindowUpdate(10, stream1, stream2);
+    verifyFlush(
+        stream(stream1).estimate(10).write(10).pending(true),
+        stream(stream2).pending(true));
+  }
+
+  @Test
+  public void testNonIncrementalStreamsDoNotTakeTurns() throws Exception {
+    controller = new FlowController<>(10, DEFAULT_INITIAL_WINDOW_SIZE);
+
+    final Http2Stream stream1 = startStream(1, 20);
+    final Http2Stream stream2 = startStream(3, 20);
+    verifyFlush(
+        stream(stream1).headers().estimate(10).write(10).pending(true),
+        stream(stream2).headers().pending(true));
+
+    verifyRemoteConnectionWindowUpdate(10, stream1, stream2);
+    verifyFlush(
+        stream(stream1).estimate(10).write(10, END_OF_STREAM).pending(false),
+        stream(stream2).pending(true));
+  }
+
   private Http2Stream startStream(final int id, final int size) {
     return startStream(id, size, true);
   }
@@ -473,6 +577,14 @@ public class FlowControllerTest {
     return stream;
   }
 
+  private Http2Stream startStream(final int id, final int size, final int urgency, final boolean incremental) {
+    final Http2Stream stream = new Http2Stream(id, randomByteBuf(size), true);
+    stream.urgency = urgency;
+    stream.incremental = incremental;
+    controller.start(stream);
+    return stream;
+  }
+
   private Http2Stream endStream(Http2Stream stream) {
     return continueStream(stream, 0, true);
   }
@@ -607,15 +719,21 @@ public class FlowControllerTest {
       assertThat(bufferSize, is(greaterThanOrEqualTo(expectedMinBufferSize)));
     }
 
-    // Verify expected data header and frame writes
-    for (final FlushOp op : ops) {
-      if (op.headers) {
-        final boolean endOfStream = op.headerFlags.contains(END_OF_STREAM);
-        inOrder.verify(writer).writeInitialHeadersFrame(ctx, buf, op.stream, endOfStream);
-        if (endOfStream) {
-          inOrder.verify(writer).streamEnd(op.stream);
-        }
+    // Verify expected header writes, new streams are opened in stream id order
+    final List<FlushOp> headerOps = ops.stream()
+        .filter(op -> op.headers)
+        .sorted(Comparator.comparingInt(op -> op.stream.id))
+        .collect(toList());
+    for (final FlushOp op : headerOps) {
+      final boolean endOfStream = op.headerFlags.contains(END_OF_STREAM);
+      inOrder.verify(writer).writeInitialHeadersFrame(ctx, buf, op.stream, endOfStream);
+      if (endOfStream) {
+        inOrder.verify(writer).streamEnd(op.stream);
       }
+    }
+
+    // Verify expected data frame writes
+    for (final FlushOp op : ops) {
       for (final FlushOp.Write write : op.writes) {
         final boolean endOfStream = write.flags.contains(END_OF_STREAM);
         inOrder.verify(writer, times(write.times)).writeDataFrame(ctx, buf, op.stream, write.bytes, endOfStream);
@@ -0,0 +1,25 @@
+package io.norberg.http2;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the HPACK microbenchmarks with the GC profiler enabled, reporting both ns/op and bytes allocated per op
+ * ({@code gc.alloc.rate.norm}). Arguments are passed on to JMH, e.g. {@code HpackDecoderBenchmark -p corpus=CHURN}.
+ */
+public class HpackBenchmarks {
+
+  public static void main(final String... args) throws Exception {
+    final CommandLineOptions cli = new CommandLineOptions(args);
+    final ChainedOptionsBuilder options = new OptionsBuilder()
+        .parent(cli)
+        .addProfiler(GCProfiler.class);
+    if (cli.getIncludes().isEmpty()) {
+      options.include(HpackBenchmarks.class.getPackage().getName() + "\\.(Hpack|Huffman).*Benchmark");
+    }
+    new Runner(options.build()).run();
+  }
+}
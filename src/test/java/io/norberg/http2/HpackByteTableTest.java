@@ -0,0 +1,80 @@
+package io.norberg.http2;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.netty.util.AsciiString;
+import java.util.Random;
+import org.junit.Test;
+
+public class HpackByteTableTest {
+
+  private final HpackByteTable table = new HpackByteTable();
+  private final HpackDynamicTable reference = new HpackDynamicTable();
+
+  @Test
+  public void singleHeader() {
+    final AsciiString name = AsciiString.of("foo");
+    final AsciiString value = AsciiString.of("bar");
+    table.addFirst(name, value);
+    assertThat(table.length(), is(1));
+    assertThat(table.size(0), is(38));
+    assertThat(table.header(0), is(Http2Header.of(name, value)));
+    assertThat(table.nameHash(0), is(name.hashCode()));
+    assertThat(table.valueHash(0), is(value.hashCode()));
+    assertThat(table.nameEquals(0, name), is(true));
+    assertThat(table.valueEquals(0, value), is(true));
+    assertThat(table.valueEquals(0, name), is(false));
+
+    table.removeLast();
+    assertThat(table.length(), is(0));
+  }
+
+  @Test
+  public void churn() {
+    // Entries of varying sizes wrap around and grow the rings
+    final Random r = new Random(4711);
+    final HpackDynamicTableIndex index = new HpackDynamicTableIndex(table);
+    int size = 0;
+    for (int i = 0; i < 16 * 1024; i++) {
+      final int maxSize = (i < 8 * 1024) ? 1024 : 4096;
+      final Http2Header header;
+      if (reference.length() > 0 && r.nextInt(10) == 0) {
+        header = reference.header(r.nextInt(reference.length()));
+      } else {
+        header = Http2Header.of("name-" + r.nextInt(100), randomValue(r));
+      }
+      while (reference.length() > 0 && size + header.size() > maxSize) {
+        final Http2Header removed = reference.removeLast();
+        assertThat(table.size(table.length() - 1), is(removed.size()));
+        table.removeLast();
+        index.remove(removed);
+        size -= removed.size();
+      }
+      reference.addFirst(header);
+      table.addFirst(header.name(), header.value());
+      index.insert();
+      size += header.size();
+
+      assertThat(table.length(), is(reference.length()));
+      assertThat(table.header(0), is(header));
+      final int j = r.nextInt(table.length());
+      assertThat(table.header(j), is(reference.header(j)));
+      assertThat(table.nameEquals(j, 0), is(reference.header(j).name().equals(header.name())));
+      assertThat(table.valueEquals(j, 0), is(reference.header(j).value().equals(header.value())));
+      if (i % 1024 == 0) {
+        index.validate();
+      }
+    }
+    index.validate();
+  }
+
+  private static String randomValue(final Random r) {
+    final StringBuilder s = new StringBuilder();
+    final int length = r.nextInt(200);
+    for (int i = 0; i < length; i++) {
+      s.append((char) ('a' + r.nextInt(4)));
+    }
+    return s.toString();
+  }
+}
@@ -0,0 +1,137 @@
+package io.norberg.http2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Deterministic header block corpora for the HPACK benchmarks. Public as JMH generates code in a subpackage.
+ */
+public enum HpackCorpus {
+
+  /**
+   * API requests from a handful of clients. Most fields repeat and should be served from the dynamic table.
+   */
+  REQUEST {
+    @Override
+    Http2Header[] block(final Random r, final int i) {
+      final boolean post = r.nextInt(4) == 0;
+      final List<Http2Header> headers = new ArrayList<>();
+      headers.add(Http2Header.of(":method", post ? "POST" : "GET"));
+      headers.add(Http2Header.of(":scheme", "https"));
+      headers.add(Http2Header.of(":authority", "api.example.com"));
+      headers.add(Http2Header.of(":path", "/v1/users/" + (1000 + r.nextInt(16)) + "/orders?limit=50"));
+      headers.add(Http2Header.of("accept", "application/json"));
+      headers.add(Http2Header.of("accept-encoding", "gzip, deflate, br"));
+      headers.add(Http2Header.of("accept-language", "en-US,en;q=0.9"));
+      headers.add(Http2Header.of("user-agent", USER_AGENTS[r.nextInt(USER_AGENTS.length)]));
+      headers.add(Http2Header.of("authorization", "Bearer " + TOKENS[r.nextInt(TOKENS.length)]));
+      headers.add(Http2Header.of("cookie", "session=" + TOKENS[r.nextInt(TOKENS.length)] + "; theme=dark"));
+      if (post) {
+        headers.add(Http2Header.of("content-type", "application/json"));
+        headers.add(Http2Header.of("content-length", Integer.toString(100 + r.nextInt(900))));
+      }
+      return headers.toArray(new Http2Header[0]);
+    }
+  },
+
+  /**
+   * Responses to {@link #REQUEST}. A few status codes, content lengths and etags.
+   */
+  RESPONSE {
+    @Override
+    Http2Header[] block(final Random r, final int i) {
+      final List<Http2Header> headers = new ArrayList<>();
+      headers.add(Http2Header.of(":status", STATUSES[r.nextInt(STATUSES.length)]));
+      headers.add(Http2Header.of("content-type", "application/json; charset=utf-8"));
+      headers.add(Http2Header.of("content-length", Integer.toString(128 * (1 + r.nextInt(8)))));
+      headers.add(Http2Header.of("date", "Sat, 17 Oct 2026 12:00:" + (10 + i / 16) + " GMT"));
+      headers.add(Http2Header.of("server", "http2"));
+      headers.add(Http2Header.of("cache-control", "private, max-age=0, no-cache"));
+      headers.add(Http2Header.of("etag", "\"" + TOKENS[r.nextInt(TOKENS.length)].substring(0, 16) + "\""));
+      headers.add(Http2Header.of("vary", "accept-encoding"));
+      return headers.toArray(new Http2Header[0]);
+    }
+  },
+
+  /**
+   * Requests carrying per-request unique values (request ids, trace context, timestamps) that never hit the dynamic
+   * table.
+   */
+  HIGH_CARDINALITY {
+    @Override
+    Http2Header[] block(final Random r, final int i) {
+      final List<Http2Header> headers = new ArrayList<>();
+      headers.add(Http2Header.of(":method", "GET"));
+      headers.add(Http2Header.of(":scheme", "https"));
+      headers.add(Http2Header.of(":authority", "api.example.com"));
+      headers.add(Http2Header.of(":path", "/v1/items/" + new UUID(r.nextLong(), r.nextLong())));
+      headers.add(Http2Header.of("accept", "application/json"));
+      headers.add(Http2Header.of("x-request-id", new UUID(r.nextLong(), r.nextLong()).toString()));
+      headers.add(Http2Header.of("traceparent", String.format("00-%016x%016x-%016x-01",
+          r.nextLong(), r.nextLong(), r.nextLong())));
+      headers.add(Http2Header.of("x-client-timestamp", Long.toString(1_792_000_000_000L + r.nextInt())));
+      return headers.toArray(new Http2Header[0]);
+    }
+  },
+
+  /**
+   * Blocks of distinct custom headers that overflow the default 4096 byte table every few blocks, forcing constant
+   * eviction.
+   */
+  CHURN {
+    @Override
+    Http2Header[] block(final Random r, final int i) {
+      final Http2Header[] headers = new Http2Header[8];
+      for (int j = 0; j < headers.length; j++) {
+        headers[j] = Http2Header.of("x-custom-" + r.nextInt(64), randomToken(r, 48));
+      }
+      return headers;
+    }
+  };
+
+  static final int BLOCKS = 128;
+
+  private static final String[] STATUSES = {"200", "200", "200", "204", "304", "404"};
+
+  private static final String[] USER_AGENTS = {
+      "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/16.1 Safari/605.1.15",
+      "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/118.0.0.0 Safari/537.36",
+      "okhttp/4.10.0",
+      "curl/8.1.2",
+  };
+
+  private static final String[] TOKENS = tokens(new Random(4711), 8, 64);
+
+  abstract Http2Header[] block(Random r, int i);
+
+  /**
+   * The {@link #BLOCKS} header blocks of this corpus, in encoding order.
+   */
+  Http2Header[][] blocks() {
+    final Random r = new Random(17 + ordinal());
+    final Http2Header[][] blocks = new Http2Header[BLOCKS][];
+    for (int i = 0; i < BLOCKS; i++) {
+      blocks[i] = block(r, i);
+    }
+    return blocks;
+  }
+
+  private static String[] tokens(final Random r, final int n, final int length) {
+    final String[] tokens = new String[n];
+    for (int i = 0; i < n; i++) {
+      tokens[i] = randomToken(r, length);
+    }
+    return tokens;
+  }
+
+  private static String randomToken(final Random r, final int length) {
+    final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    final StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,139 @@
+package io.norberg.http2;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.twitter.hpack.Decoder;
+import com.twitter.hpack.Encoder;
+import com.twitter.hpack.HeaderListener;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.util.AsciiString;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decodes the whole corpus per invocation with a fresh decoder, as the encoded blocks refer to dynamic table entries
+ * added by earlier blocks. Results are reported per header block.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HpackDecoderBenchmark {
+
+  private static final int MAX_TABLE_SIZE = 4096;
+  private static final int MAX_HEADER_SIZE = 8192;
+
+  @Param
+  public HpackCorpus corpus;
+
+  private ByteBuf[] encoded;
+  private ByteBuf[] twitterEncoded;
+  private ByteBufInputStream[] twitterIn;
+
+  private final Sink sink = new Sink();
+
+  // Long lived, like the header cache of a connection
+  private final Http2HeaderCache cache = new Http2HeaderCache(Http2HeaderCache.DEFAULT_SIZE);
+
+  @Setup
+  public void setup() throws Exception {
+    final Http2Header[][] blocks = corpus.blocks();
+    final HpackEncoder encoder = new HpackEncoder(MAX_TABLE_SIZE);
+    final Encoder twitterEncoder = new Encoder(MAX_TABLE_SIZE);
+    encoded = new ByteBuf[blocks.length];
+    twitterEncoded = new ByteBuf[blocks.length];
+    twitterIn = new ByteBufInputStream[blocks.length];
+    for (int i = 0; i < blocks.length; i++) {
+      final ByteBuf buf = Unpooled.directBuffer();
+      final ByteBuf twitterBuf = Unpooled.directBuffer();
+      final ByteBufOutputStream twitterOut = new ByteBufOutputStream(twitterBuf);
+      for (final Http2Header header : blocks[i]) {
+        encoder.encodeHeader(buf, header.name(), header.value(), false);
+        twitterEncoder.encodeHeader(twitterOut, header.name().toByteArray(), header.value().toByteArray(), false);
+      }
+      encoded[i] = buf;
+      twitterEncoded[i] = twitterBuf;
+      twitterIn[i] = new ByteBufInputStream(twitterBuf);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    for (int i = 0; i < encoded.length; i++) {
+      encoded[i].release();
+      twitterEncoded[i].release();
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(HpackCorpus.BLOCKS)
+  public int decode() throws Http2Exception {
+    final HpackDecoder decoder = new HpackDecoder(MAX_TABLE_SIZE);
+    sink.n = 0;
+    for (final ByteBuf block : encoded) {
+      block.readerIndex(0);
+      decoder.decode(block, sink);
+    }
+    return sink.n;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(HpackCorpus.BLOCKS)
+  public int decodeCached() throws Http2Exception {
+    final HpackDecoder decoder = new HpackDecoder(MAX_TABLE_SIZE, cache);
+    sink.n = 0;
+    for (final ByteBuf block : encoded) {
+      block.readerIndex(0);
+      decoder.decode(block, sink);
+    }
+    return sink.n;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(HpackCorpus.BLOCKS)
+  public int decodeTwitter() throws IOException {
+    final Decoder decoder = new Decoder(MAX_HEADER_SIZE, MAX_TABLE_SIZE);
+    sink.n = 0;
+    for (int i = 0; i < twitterEncoded.length; i++) {
+      twitterEncoded[i].readerIndex(0);
+      decoder.decode(twitterIn[i], sink);
+      decoder.endHeaderBlock();
+    }
+    return sink.n;
+  }
+
+  /**
+   * Touches every decoded header so that decoding cannot be optimized away.
+   */
+  private static class Sink implements HpackDecoder.Listener, HeaderListener {
+
+    private int n;
+
+    @Override
+    public void header(final AsciiString name, final AsciiString value, final boolean sensitive) {
+      n += name.length() + value.length();
+    }
+
+    @Override
+    public void addHeader(final byte[] name, final byte[] value, final boolean sensitive) {
+      n += name.length + value.length;
+    }
+  }
+}
@@ -2,15 +2,21 @@ package io.norberg.http2;
 
 import static io.netty.handler.codec.http.HttpMethod.GET;
 import static io.norberg.http2.PseudoHeaders.METHOD;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 
+import com.google.common.base.Strings;
 import com.google.common.io.BaseEncoding;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.util.AsciiString;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
@@ -36,19 +42,99 @@ public class HpackDecoderTest {
     final HpackDecoder decoder = new HpackDecoder(0);
     decoder.decode(block, listener);
 
-    verify(listener).header(Http2Header.of(METHOD, GET.asciiName(), false));
+    verify(listener).header(METHOD, GET.asciiName(), false);
+  }
+
+  @Test
+  public void testDecodeIndexedPassesTableStrings() throws Exception {
+    final ByteBuf block = Unpooled.buffer();
+    Hpack.writeLiteralHeaderFieldIncrementalIndexingNewName(block, FOO, BAR, true);
+    Hpack.writeIndexedHeaderField(block, DYNAMIC_TABLE_START_IX);
+    Hpack.writeIndexedHeaderField(block, HpackStaticTable.headerIndex(METHOD, GET.asciiName()));
+
+    final List<AsciiString> strings = new ArrayList<>();
+    final HpackDecoder decoder = new HpackDecoder(Integer.MAX_VALUE);
+    decoder.decode(block, (name, value, sensitive) -> {
+      strings.add(name);
+      strings.add(value);
+    });
+
+    assertThat(strings, contains(FOO, BAR, FOO, BAR, METHOD, GET.asciiName()));
+    assertThat(strings.get(2), is(sameInstance(strings.get(0))));
+    assertThat(strings.get(3), is(sameInstance(strings.get(1))));
+    assertThat(strings.get(4), is(sameInstance(HpackStaticTable.header(2).name())));
+    assertThat(strings.get(5), is(sameInstance(HpackStaticTable.header(2).value())));
+  }
+
+  @Test
+  public void testDecodeHuffmanValuesAreExactlySized() throws Exception {
+    final AsciiString shortValue = AsciiString.of("www.example.com");
+    final AsciiString longValue = AsciiString.of(Strings.repeat("0123456789abcdef", 100));
+    final ByteBuf block = Unpooled.buffer();
+    Hpack.writeLiteralHeaderFieldWithoutIndexingNewName(block, FOO, shortValue, true);
+    Hpack.writeLiteralHeaderFieldWithoutIndexingNewName(block, FOO, longValue, true);
+    Hpack.writeLiteralHeaderFieldWithoutIndexingNewName(block, FOO, shortValue, true);
+
+    final List<AsciiString> values = new ArrayList<>();
+    final HpackDecoder decoder = new HpackDecoder(0);
+    decoder.decode(block, (name, value, sensitive) -> values.add(value));
+
+    assertThat(values, contains(shortValue, longValue, shortValue));
+    for (final AsciiString value : values) {
+      assertThat(value.arrayOffset(), is(0));
+      assertThat(value.array().length, is(value.length()));
+    }
+  }
+
+  @Test
+  public void testInternsLiterals() throws Exception {
+    final AsciiString contentType = AsciiString.of("content-type");
+    final AsciiString longValue = AsciiString.of(Strings.repeat("0123456789abcdef", 10));
+    final ByteBuf block = Unpooled.buffer();
+    Hpack.writeLiteralHeaderFieldWithoutIndexingNewName(block, contentType, BAR, true);
+    Hpack.writeLiteralHeaderFieldWithoutIndexingNewName(block, FOO, longValue, true);
+
+    // Connections sharing a cache get the same instances
+    final Http2HeaderCache cache = new Http2HeaderCache(16);
+    final List<AsciiString> strings = new ArrayList<>();
+    final HpackDecoder.Listener listener = (name, value, sensitive) -> {
+      strings.add(name);
+      strings.add(value);
+    };
+    new HpackDecoder(0, cache).decode(block.duplicate(), listener);
+    new HpackDecoder(0, cache).decode(block.duplicate(), listener);
+    new HpackDecoder(0, cache).decode(block.duplicate(), listener);
+
+    assertThat(strings, contains(contentType, BAR, FOO, longValue, contentType, BAR, FOO, longValue,
+        contentType, BAR, FOO, longValue));
+    assertThat(strings.get(0), is(sameInstance(HpackStaticTable.header(31).name())));
+    assertThat(strings.get(4), is(sameInstance(strings.get(0))));
+
+    // Strings are cached the second time they are seen
+    assertThat(strings.get(5), is(not(sameInstance(strings.get(1)))));
+    assertThat(strings.get(6), is(not(sameInstance(strings.get(2)))));
+    assertThat(strings.get(9), is(sameInstance(strings.get(5))));
+    assertThat(strings.get(10), is(sameInstance(strings.get(6))));
+
+    // Long strings are not cached
+    assertThat(strings.get(11), is(not(sameInstance(strings.get(7)))));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCacheSize() {
+    new Http2HeaderCache(0);
   }
 
   @Test
   public void testDecodeUnindexedNewName() throws Exception {
     final ByteBuf block = Unpooled.buffer();
 
-    Hpack.writeLiteralHeaderFieldWithoutIndexingNewName(block, FOO, BAR);
+    Hpack.writeLiteralHeaderFieldWithoutIndexingNewName(block, FOO, BAR, true);
 
     final HpackDecoder decoder = new HpackDecoder(0);
     decoder.decode(block, listener);
 
-    verify(listener).header(Http2Header.of(FOO, BAR, false));
+    verify(listener).header(FOO, BAR, false);
 
     // Verify that the header did not get indexed
     assertThat(decoder.tableLength(), is(0));
@@ -58,14 +144,14 @@ public class HpackDecoderTest {
   public void testDecodeSensitiveIndexedName() throws Exception {
     final ByteBuf block = Unpooled.buffer();
 
-    Hpack.writeLiteralHeaderFieldIncrementalIndexingNewName(block, FOO, BAR);
-    Hpack.writeLiteralHeaderFieldNeverIndexed(block, DYNAMIC_TABLE_START_IX, BAZ);
+    Hpack.writeLiteralHeaderFieldIncrementalIndexingNewName(block, FOO, BAR, true);
+    Hpack.writeLiteralHeaderFieldNeverIndexed(block, DYNAMIC_TABLE_START_IX, BAZ, true);
 
     final HpackDecoder decoder = new HpackDecoder(Integer.MAX_VALUE);
     decoder.decode(block, listener);
 
-    verify(listener).header(Http2Header.of(FOO, BAR, false));
-    verify(listener).header(Http2Header.of(FOO, BAZ, true));
+    verify(listener).header(FOO, BAR, false);
+    verify(listener).header(FOO, BAZ, true);
 
     // Verify that only the indexable header got indexed
     assertThat(decoder.tableLength(), is(1));
@@ -78,14 +164,14 @@ public class HpackDecoderTest {
 
     final ByteBuf block = Unpooled.buffer();
 
-    Hpack.writeLiteralHeaderFieldIncrementalIndexingNewName(block, FOO, BAR);
-    Hpack.writeLiteralHeaderFieldWithoutIndexing(block, DYNAMIC_TABLE_START_IX, QUUX);
+    Hpack.writeLiteralHeaderFieldIncrementalIndexingNewName(block, FOO, BAR, true);
+    Hpack.writeLiteralHeaderFieldWithoutIndexing(block, DYNAMIC_TABLE_START_IX, QUUX, true);
 
     final HpackDecoder decoder = new HpackDecoder(maxHeaderTableSize);
     decoder.decode(block, listener);
 
-    verify(listener).header(Http2Header.of(FOO, BAR, false));
-    verify(listener).header(Http2Header.of(FOO, QUUX, false));
+    verify(listener).header(FOO, BAR, false);
+    verify(listener).header(FOO, QUUX, false);
 
     // Verify that only the indexable header got indexed
     assertThat(decoder.tableLength(), is(1));
@@ -97,16 +183,16 @@ public class HpackDecoderTest {
 
     // Encode and decode first block - literal
     final ByteBuf block1 = Unpooled.buffer();
-    Hpack.writeLiteralHeaderFieldIncrementalIndexingNewName(block1, FOO, BAR);
+    Hpack.writeLiteralHeaderFieldIncrementalIndexingNewName(block1, FOO, BAR, true);
     decoder.decode(block1, listener);
-    verify(listener).header(Http2Header.of(FOO, BAR, false));
+    verify(listener).header(FOO, BAR, false);
     reset(listener);
 
     // Encode and decode first block - indexed
     final ByteBuf block2 = Unpooled.buffer();
     Hpack.writeIndexedHeaderField(block2, DYNAMIC_TABLE_START_IX);
     decoder.decode(block2, listener);
-    verify(listener).header(Http2Header.of(FOO, BAR, false));
+    verify(listener).header(FOO, BAR, false);
   }
 
   @Test
@@ -126,7 +212,7 @@ public class HpackDecoderTest {
     final HpackDecoder decoder = new HpackDecoder(Integer.MAX_VALUE);
     final ByteBuf block = Unpooled.wrappedBuffer(BaseEncoding.base16().lowerCase().decode("08033230300f0d03313038"));
     decoder.decode(block, listener);
-    verify(listener).header(Http2Header.of(":status", AsciiString.of(String.valueOf(200))));
-    verify(listener).header(Http2Header.of("content-length", AsciiString.of(String.valueOf(108))));
+    verify(listener).header(AsciiString.of(":status"), AsciiString.of(String.valueOf(200)), false);
+    verify(listener).header(AsciiString.of("content-length"), AsciiString.of(String.valueOf(108)), false);
   }
 }
\ No newline at end of file
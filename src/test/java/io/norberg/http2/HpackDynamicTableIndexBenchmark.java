@@ -0,0 +1,98 @@
+package io.norberg.http2;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import io.netty.util.AsciiString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups and insert/evict churn against a full dynamic table of {@link #length} entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HpackDynamicTableIndexBenchmark {
+
+  @Param({"16", "64", "256"})
+  public int length;
+
+  private HpackDynamicTable table;
+  private HpackDynamicTableIndex index;
+
+  // Twice the table length, so that the next header to insert is never already in the table
+  private Http2Header[] headers;
+  private Http2Header[] misses;
+  private AsciiString[] missingNames;
+  private int next;
+  private int i;
+
+  @Setup
+  public void setup() {
+    headers = new Http2Header[length * 2];
+    misses = new Http2Header[length];
+    missingNames = new AsciiString[length];
+    for (int i = 0; i < headers.length; i++) {
+      headers[i] = Http2Header.of("x-header-" + i, "value-" + i);
+    }
+    for (int i = 0; i < misses.length; i++) {
+      misses[i] = Http2Header.of("x-header-" + i, "other-value-" + i);
+      missingNames[i] = AsciiString.of("x-missing-" + i);
+    }
+    table = new HpackDynamicTable();
+    index = new HpackDynamicTableIndex(table);
+    for (next = 0; next < length; next++) {
+      table.addFirst(headers[next]);
+      index.insert();
+    }
+  }
+
+  @Benchmark
+  public int lookupHeaderHit() {
+    return index.lookup(table.header(nextIndex()));
+  }
+
+  @Benchmark
+  public int lookupNameHit() {
+    return index.lookup(table.header(nextIndex()).name());
+  }
+
+  @Benchmark
+  public int lookupHeaderMiss() {
+    return index.lookup(misses[nextIndex()]);
+  }
+
+  @Benchmark
+  public int lookupNameMiss() {
+    return index.lookup(missingNames[nextIndex()]);
+  }
+
+  @Benchmark
+  public int insertEvict() {
+    final Http2Header removed = table.removeLast();
+    index.remove(removed);
+    final Http2Header header = headers[next];
+    next = (next + 1) % headers.length;
+    table.addFirst(header);
+    index.insert();
+    return table.length();
+  }
+
+  private int nextIndex() {
+    final int ix = i;
+    i = (i + 1) % length;
+    return ix;
+  }
+}
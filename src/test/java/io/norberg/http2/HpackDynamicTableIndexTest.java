@@ -27,7 +27,7 @@ public class HpackDynamicTableIndexTest {
     assertThat(index.lookup(header.name()), is(0));
 
     table.addFirst(header);
-    index.insert(header);
+    index.insert();
     assertThat(index.lookup(header), is(1));
     assertThat(index.lookup(header.name()), is(1));
 
@@ -38,7 +38,7 @@ public class HpackDynamicTableIndexTest {
     assertThat(index.lookup(header.name()), is(0));
 
     table.addFirst(header);
-    index.insert(header);
+    index.insert();
     assertThat(index.lookup(header), is(1));
     assertThat(index.lookup(header.name()), is(1));
   }
@@ -66,7 +66,7 @@ public class HpackDynamicTableIndexTest {
         removed = null;
       }
       table.addFirst(header);
-      index.insert(header);
+      index.insert();
       index.validate();
       expectedHeaderIndices.clear();
       expectedNameIndices.clear();
@@ -99,7 +99,7 @@ public class HpackDynamicTableIndexTest {
     for (int i = 0; i < 1024; i++) {
       Http2Header header = Http2Header.of("name-" + i, "value-" + i);
       table.addFirst(header);
-      index.insert(header);
+      index.insert();
       index.validate();
       for (int j = 0; j < table.length(); j++) {
         final Http2Header h = table.header(j);
@@ -143,7 +143,7 @@ public class HpackDynamicTableIndexTest {
           index.remove(removed);
         }
         table.addFirst(header);
-        index.insert(header);
+        index.insert();
         i = (i + 1) & MASK;
       }
       final long end = System.nanoTime();
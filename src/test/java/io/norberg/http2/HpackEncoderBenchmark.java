@@ -0,0 +1,109 @@
+package io.norberg.http2;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.twitter.hpack.Encoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes one header block per operation with a long lived encoder, cycling through the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HpackEncoderBenchmark {
+
+  private static final int MAX_TABLE_SIZE = 4096;
+
+  @Param
+  public HpackCorpus corpus;
+
+  private Http2Header[][] blocks;
+  private byte[][][] twitterBlocks;
+  private int i;
+
+  private HpackEncoder encoder;
+  private HpackEncoder adaptiveEncoder;
+  private Encoder twitterEncoder;
+
+  private ByteBuf out;
+  private ByteBufOutputStream twitterOut;
+
+  @Setup
+  public void setup() {
+    blocks = corpus.blocks();
+    twitterBlocks = new byte[blocks.length][][];
+    for (int i = 0; i < blocks.length; i++) {
+      final Http2Header[] block = blocks[i];
+      twitterBlocks[i] = new byte[block.length * 2][];
+      for (int j = 0; j < block.length; j++) {
+        twitterBlocks[i][j * 2] = block[j].name().toByteArray();
+        twitterBlocks[i][j * 2 + 1] = block[j].value().toByteArray();
+      }
+    }
+    encoder = new HpackEncoder(MAX_TABLE_SIZE);
+    adaptiveEncoder = new HpackEncoder(MAX_TABLE_SIZE, Http2HeaderEncoding.adaptive());
+    twitterEncoder = new Encoder(MAX_TABLE_SIZE);
+    out = Unpooled.directBuffer(16 * 1024);
+    twitterOut = new ByteBufOutputStream(out);
+  }
+
+  @TearDown
+  public void tearDown() {
+    out.release();
+  }
+
+  @Benchmark
+  public int encode() throws HpackEncodingException {
+    final Http2Header[] block = blocks[next()];
+    out.clear();
+    for (final Http2Header header : block) {
+      encoder.encodeHeader(out, header.name(), header.value(), false);
+    }
+    return out.writerIndex();
+  }
+
+  @Benchmark
+  public int encodeAdaptive() throws HpackEncodingException {
+    final Http2Header[] block = blocks[next()];
+    out.clear();
+    for (final Http2Header header : block) {
+      adaptiveEncoder.encodeHeader(out, header.name(), header.value(), false);
+    }
+    return out.writerIndex();
+  }
+
+  @Benchmark
+  public int encodeTwitter() throws IOException {
+    final byte[][] block = twitterBlocks[next()];
+    out.clear();
+    for (int j = 0; j < block.length; j += 2) {
+      twitterEncoder.encodeHeader(twitterOut, block[j], block[j + 1], false);
+    }
+    return out.writerIndex();
+  }
+
+  private int next() {
+    final int ix = i;
+    i = (i + 1) % HpackCorpus.BLOCKS;
+    return ix;
+  }
+}
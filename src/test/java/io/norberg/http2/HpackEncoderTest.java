@@ -6,6 +6,7 @@ import static io.norberg.http2.PseudoHeaders.AUTHORITY;
 import static io.norberg.http2.PseudoHeaders.METHOD;
 import static io.norberg.http2.PseudoHeaders.PATH;
 import static io.norberg.http2.PseudoHeaders.SCHEME;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThat;
@@ -19,7 +20,11 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.Unpooled;
 import io.netty.util.AsciiString;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
@@ -113,6 +118,148 @@ public class HpackEncoderTest {
     verifyNoMoreInteractions(listener);
   }
 
+  @Test
+  public void testEncodeTemplate() throws Exception {
+    final HpackTemplate template = new HpackTemplate(Arrays.asList(
+        Http2Header.of(METHOD, GET.asciiName()),
+        Http2Header.of(SCHEME, HTTPS.name()),
+        Http2Header.of(AUTHORITY, "www.test.com"),
+        Http2Header.of(FOO, BAR),
+        Http2Header.of(BAR, BAZ)));
+    final List<String> expected = Arrays.asList(
+        ":method=GET", ":scheme=https", ":authority=www.test.com", ":path=/1", "foo=bar", "bar=baz");
+
+    final HpackEncoder encoder = new HpackEncoder(4096);
+    final Decoder decoder = new Decoder(1024, 4096);
+
+    final ByteBuf block1 = Unpooled.buffer();
+    encoder.encodeRequest(block1, template, AsciiString.of("/1"));
+    final int size1 = block1.readableBytes();
+    assertThat(decode(decoder, block1), is(expected));
+
+    // The second time around the template fields are all indexed
+    final ByteBuf block2 = Unpooled.buffer();
+    encoder.encodeRequest(block2, template, AsciiString.of("/1"));
+    assertThat(block2.readableBytes(), is(template.length() + 1));
+    assertThat(block2.readableBytes(), is(lessThan(size1)));
+    assertThat(decode(decoder, block2), is(expected));
+  }
+
+  @Test
+  public void testEncodeTemplateAfterEviction() throws Exception {
+    final HpackTemplate template = new HpackTemplate(Arrays.asList(
+        Http2Header.of(METHOD, GET.asciiName()),
+        Http2Header.of(FOO, BAR),
+        Http2Header.of(BAR, BAZ)));
+    final List<String> expected = Arrays.asList(":method=GET", ":path=/", "foo=bar", "bar=baz");
+
+    final HpackEncoder encoder = new HpackEncoder(256);
+    final Decoder decoder = new Decoder(1024, 256);
+
+    for (int i = 0; i < 10; i++) {
+      final ByteBuf block = Unpooled.buffer();
+      encoder.encodeRequest(block, template, AsciiString.of("/"));
+      assertThat(decode(decoder, block), is(expected));
+
+      // Push some or all of the template fields out of the table
+      final ByteBuf filler = Unpooled.buffer();
+      for (int j = 0; j < i; j++) {
+        encoder.encodeHeader(filler, AsciiString.of("filler" + i), AsciiString.of("value" + j));
+      }
+      decode(decoder, filler);
+
+      // Shrinking the table evicts entries as well
+      if (i == 5) {
+        encoder.setMaxTableSize(64);
+        decoder.setMaxHeaderTableSize(64);
+        final ByteBuf update = Unpooled.buffer();
+        Hpack.writeDynamicTableSizeUpdate(update, 64);
+        decode(decoder, update);
+      }
+    }
+  }
+
+  @Test
+  public void testEncodeSensitiveNewName() throws Exception {
+    final HpackEncoder encoder = new HpackEncoder(1024);
+    final ByteBuf block = Unpooled.buffer();
+    encoder.encodeHeader(block, FOO, BAR, true);
+    assertThat(encoder.tableLength(), is(0));
+
+    final Decoder decoder = new Decoder(1024, 1024);
+    decoder.decode(new ByteBufInputStream(block), listener);
+    verify(listener).addHeader(FOO.array(), BAR.array(), true);
+    verifyNoMoreInteractions(listener);
+  }
+
+  @Test
+  public void testEncodingWithoutIndexingOrHuffman() throws Exception {
+    final Http2HeaderEncoding encoding = new Http2HeaderEncoding() {
+      @Override
+      public Indexing indexing(final AsciiString name, final AsciiString value) {
+        return name.equals(FOO) ? Indexing.NONE : Indexing.NEVER;
+      }
+
+      @Override
+      public boolean huffman(final AsciiString name, final AsciiString value) {
+        return false;
+      }
+    };
+    final HpackEncoder encoder = new HpackEncoder(1024, encoding);
+    final ByteBuf block = Unpooled.buffer();
+    encoder.encodeHeader(block, FOO, BAR, false);
+    assertThat(block.readableBytes(), is(1 + 1 + FOO.length() + 1 + BAR.length()));
+    encoder.encodeHeader(block, BAR, BAZ, false);
+    encoder.encodeRequest(block, GET.asciiName(), HTTPS.name(), AsciiString.of("www.test.com"), AsciiString.of("/1"));
+    assertThat(encoder.tableLength(), is(0));
+
+    final Decoder decoder = new Decoder(1024, 1024);
+    decoder.decode(new ByteBufInputStream(block), listener);
+    verify(listener).addHeader(FOO.array(), BAR.array(), false);
+    verify(listener).addHeader(BAR.array(), BAZ.array(), true);
+    verify(listener).addHeader(METHOD.array(), GET.asciiName().array(), false);
+    verify(listener).addHeader(SCHEME.array(), HTTPS.name().array(), false);
+    verify(listener).addHeader(AUTHORITY.array(), "www.test.com".getBytes(US_ASCII), true);
+    verify(listener).addHeader(PATH.array(), "/1".getBytes(US_ASCII), true);
+    verifyNoMoreInteractions(listener);
+  }
+
+  @Test
+  public void testAdaptiveEncoding() throws Exception {
+    final AsciiString requestId = AsciiString.of("x-request-id");
+    final AsciiString tenant = AsciiString.of("x-tenant");
+    final HpackEncoder encoder = new HpackEncoder(4096, Http2HeaderEncoding.adaptive());
+    final Decoder decoder = new Decoder(1024, 4096);
+
+    for (int i = 0; i < 256; i++) {
+      final ByteBuf block = Unpooled.buffer();
+      encoder.encodeHeader(block, requestId, AsciiString.of("request-" + i), false);
+      encoder.encodeHeader(block, tenant, AsciiString.of("tenant-" + i % 3), false);
+      assertThat(decode(decoder, block), is(Arrays.asList("x-request-id=request-" + i, "x-tenant=tenant-" + i % 3)));
+    }
+
+    // Request ids stopped being indexed once they were known to be unique, while the tenants stayed indexed
+    assertThat(encoder.tableLength(), is(lessThan(AdaptiveHeaderEncoding.MIN_SAMPLES + 3)));
+    final ByteBuf block = Unpooled.buffer();
+    encoder.encodeHeader(block, tenant, AsciiString.of("tenant-0"), false);
+    assertThat(block.readableBytes(), is(1));
+
+    // A request id that is seen again soon is indexed
+    final int tableLength = encoder.tableLength();
+    final ByteBuf repeated = Unpooled.buffer();
+    encoder.encodeHeader(repeated, requestId, AsciiString.of("request-255"), false);
+    assertThat(encoder.tableLength(), is(tableLength + 1));
+    assertThat(decode(decoder, repeated), is(Arrays.asList("x-request-id=request-255")));
+  }
+
+  private static List<String> decode(final Decoder decoder, final ByteBuf block) throws IOException {
+    final List<String> headers = new ArrayList<>();
+    decoder.decode(new ByteBufInputStream(block),
+        (name, value, sensitive) -> headers.add(new String(name, US_ASCII) + "=" + new String(value, US_ASCII)));
+    decoder.endHeaderBlock();
+    return headers;
+  }
+
   @Test
   public void testOverflow() throws Exception {
     final int n = 16 * 1024;
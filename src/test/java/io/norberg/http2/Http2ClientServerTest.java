@@ -1,30 +1,62 @@
 package io.norberg.http2;
 
 import static com.google.common.collect.Maps.immutableEntry;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
 import static io.netty.handler.codec.http.HttpMethod.GET;
+import static io.netty.handler.codec.http.HttpMethod.POST;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
 import static io.netty.util.CharsetUtil.UTF_8;
 import static io.norberg.http2.TestUtil.randomByteBuf;
+import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.stream.Collectors.toList;
+import static io.norberg.http2.Http2WireFormat.writeFrameHeader;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
+import com.google.common.util.concurrent.Uninterruptibles;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.util.AsciiString;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
@@ -84,6 +116,35 @@ public class Http2ClientServerTest {
     }
   }
 
+  @Test
+  public void testReqRepCleartext() throws Exception {
+
+    final RequestHandler requestHandler = (context, request) ->
+        context.respond(request.response(
+            OK, Unpooled.copiedBuffer("hello: " + request.scheme() + " " + request.path(), UTF_8)));
+
+    // Start server
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler(requestHandler)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .address("127.0.0.1", port)
+            .cleartext(true)
+            .build());
+
+    final CompletableFuture<Http2Response> future = client.get("/world/1");
+    final Http2Response response = future.get(30, SECONDS);
+    assertThat(response.status(), is(OK));
+    final String payload = response.content().toString(UTF_8);
+    assertThat(payload, is("hello: http /world/1"));
+  }
+
   @Test
   public void testHeaderFragmentation() throws Exception {
 
@@ -120,6 +181,99 @@ public class Http2ClientServerTest {
     assertThat(payload, is("hello: /world/1"));
   }
 
+  @Test
+  public void testRequestTemplate() throws Exception {
+
+    final RequestHandler requestHandler = (context, request) -> {
+      Http2Response response = request.response(
+          OK, Unpooled.copiedBuffer(request.method() + " " + request.authority() + request.path(), UTF_8));
+      request.forEachHeader(response::header);
+      context.respond(response);
+    };
+
+    // Start server
+    final Http2Server server = autoClosing(Http2Server.create(requestHandler));
+    final int port = server.bind(0).get().getPort();
+
+    // Start client
+    final Http2Client client = autoClosing(Http2Client.of("127.0.0.1", port));
+
+    final AsciiString foo = AsciiString.of("foo");
+    final AsciiString bar = AsciiString.of("bar");
+    final AsciiString requestId = AsciiString.of("x-request-id");
+    final Http2RequestTemplate template = client.template(POST, singletonMap(foo, bar).entrySet());
+
+    // The template headers are only encoded as literals by the first request
+    for (int i = 0; i < 3; i++) {
+      final Http2Request request = template.request("/world/" + i)
+          .header(requestId, AsciiString.of(String.valueOf(i)));
+      final Http2Response response = client.send(request).get(30, SECONDS);
+      assertThat(response.status(), is(OK));
+      assertThat(response.numHeaders(), is(2));
+      assertThat(response.headerName(0), is(foo));
+      assertThat(response.headerValue(0), is(bar));
+      assertThat(response.headerName(1), is(requestId));
+      assertThat(response.headerValue(1), is(AsciiString.of(String.valueOf(i))));
+      assertThat(response.content().toString(UTF_8), is("POST 127.0.0.1:" + port + "/world/" + i));
+      response.release();
+    }
+
+    // Templates can only be used with the client that created them
+    final Http2Client other = autoClosing(Http2Client.of("127.0.0.1", port));
+    final CompletableFuture<Http2Response> failure = other.send(template.request("/world"));
+    try {
+      failure.get(30, SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), is(instanceOf(IllegalArgumentException.class)));
+    }
+  }
+
+  @Test
+  public void testAdaptiveHeaderEncoding() throws Exception {
+
+    final RequestHandler requestHandler = (context, request) -> {
+      final Http2Response response = request.response(OK);
+      request.forEachHeader(response::header);
+      request.release();
+      context.respond(response);
+    };
+
+    // Start server
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler(requestHandler)
+            .headerEncoding(Http2HeaderEncoding::adaptive)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .address("127.0.0.1", port)
+            .headerEncoding(Http2HeaderEncoding::adaptive)
+            .cleartext(true)
+            .build());
+
+    // Unique request ids soon stop being indexed, without affecting the headers received
+    final AsciiString requestId = AsciiString.of("x-request-id");
+    final AsciiString accept = AsciiString.of("accept");
+    final AsciiString json = AsciiString.of("application/json");
+    for (int i = 0; i < 64; i++) {
+      final AsciiString id = AsciiString.of(Integer.toHexString(i * 7919));
+      final Http2Request request = Http2Request.of(GET, AsciiString.of("/items/" + i))
+          .header(requestId, id)
+          .header(accept, json);
+      final Http2Response response = client.send(request).get(30, SECONDS);
+      assertThat(response.status(), is(OK));
+      assertThat(response.numHeaders(), is(2));
+      assertThat(response.headerValue(0), is(id));
+      assertThat(response.headerValue(1), is(json));
+      response.release();
+    }
+  }
+
   @Test
   public void testReqRepManyHeaders() throws Exception {
 
@@ -235,6 +389,1069 @@ public class Http2ClientServerTest {
     client.get("/hello2").get(30, SECONDS);
   }
 
+  @Test
+  public void testConnectionPool() throws Exception {
+    final RequestHandler requestHandler = (context, request) ->
+        context.respond(request.response(
+            OK, Unpooled.copiedBuffer("hello: " + request.path(), UTF_8)));
+
+    // Start server
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler(requestHandler)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client with a pool of connections
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .listener(listener)
+            .address("127.0.0.1", port)
+            .cleartext(true)
+            .minConnections(2)
+            .maxConnections(4)
+            .build());
+    verify(listener, timeout(30_000).times(2)).connectionEstablished(client);
+
+    // Make requests spread over the pooled connections
+    final List<CompletableFuture<Http2Response>> futures = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      futures.add(client.get("/world/" + i));
+    }
+    for (int i = 0; i < futures.size(); i++) {
+      final Http2Response response = futures.get(i).get(30, SECONDS);
+      assertThat(response.status(), is(OK));
+      assertThat(response.content().toString(UTF_8), is("hello: /world/" + i));
+    }
+  }
+
+  @Test
+  public void testPoolGrowsForSaturatedConnection() throws Exception {
+    final CompletableFuture<Http2RequestContext> held = new CompletableFuture<>();
+    final RequestHandler requestHandler = (context, request) -> {
+      if (request.path().toString().equals("/hold")) {
+        held.complete(context);
+        return;
+      }
+      context.respond(request.response(OK));
+    };
+
+    // Start server allowing one stream per connection
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler(requestHandler)
+            .maxConcurrentStreams(1)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client with a single connection that can grow to two
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .listener(listener)
+            .address("127.0.0.1", port)
+            .cleartext(true)
+            .minConnections(1)
+            .maxConnections(2)
+            .build());
+    verify(listener, timeout(30_000)).connectionEstablished(client);
+    verify(listener, timeout(30_000)).peerSettingsChanged(eq(client), any(Http2Settings.class));
+
+    // Saturate the first connection
+    final CompletableFuture<Http2Response> first = client.get("/hold");
+    final Http2RequestContext context = held.get(30, SECONDS);
+
+    // The second request is held for the new connection instead of queueing behind the first
+    final Http2Response second = client.get("/next").get(30, SECONDS);
+    assertThat(second.status(), is(OK));
+    verify(listener, timeout(30_000).times(2)).connectionEstablished(client);
+    assertThat(first.isDone(), is(false));
+
+    context.respond(new Http2Response(OK));
+    assertThat(first.get(30, SECONDS).status(), is(OK));
+  }
+
+  @Test
+  public void testFixedPoolReportsLoad() throws Exception {
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler((context, request) -> context.respond(request.response(OK)))
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .listener(listener)
+            .address("127.0.0.1", port)
+            .cleartext(true)
+            .minConnections(2)
+            .maxConnections(2)
+            .build());
+    verify(listener, timeout(30_000).times(2)).connectionEstablished(client);
+    verify(listener, timeout(30_000).atLeast(2)).connectionLoad(eq(client), anyString(), anyInt(), anyLong());
+  }
+
+  @Test
+  public void testConcurrentSends() throws Exception {
+    final ExecutorService responders = Executors.newFixedThreadPool(4);
+    final ExecutorService senders = Executors.newFixedThreadPool(4);
+    try {
+      // Respond from outside the event loop
+      final RequestHandler requestHandler = (context, request) -> responders.execute(() ->
+          context.respond(request.response(
+              OK, Unpooled.copiedBuffer("hello: " + request.path(), UTF_8))));
+
+      // Start server
+      final Http2Server server = autoClosing(
+          Http2Server.builder()
+              .requestHandler(requestHandler)
+              .cleartext(true)
+              .build());
+      final int port = server.bind(0).get().getPort();
+
+      // Start client
+      final Http2Client client = autoClosing(
+          Http2Client.builder()
+              .address("127.0.0.1", port)
+              .cleartext(true)
+              .build());
+
+      // Send batches of requests from several threads at once
+      final List<Future<?>> results = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        final int thread = t;
+        results.add(senders.submit(() -> {
+          for (int batch = 0; batch < 25; batch++) {
+            final List<CompletableFuture<Http2Response>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+              futures.add(client.get("/" + thread + "/" + batch + "/" + i));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+              final Http2Response response = futures.get(i).get(30, SECONDS);
+              assertThat(response.content().toString(UTF_8), is("hello: /" + thread + "/" + batch + "/" + i));
+            }
+          }
+          return null;
+        }));
+      }
+      for (final Future<?> result : results) {
+        result.get(60, SECONDS);
+      }
+    } finally {
+      responders.shutdownNow();
+      senders.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testMixedPriorities() throws Exception {
+
+    final RequestHandler requestHandler = (context, request) ->
+        context.respond(request.response(
+            OK, Unpooled.copiedBuffer("hello: " + request.path(), UTF_8)));
+
+    // Start server
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler(requestHandler)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .address("127.0.0.1", port)
+            .cleartext(true)
+            .build());
+
+    // Send batches of requests that are more urgent than the requests before them, every request is answered
+    for (int batch = 0; batch < 20; batch++) {
+      final List<CompletableFuture<Http2Response>> futures = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        final Http2Request request = new Http2Request(GET, "/" + batch + "/" + i)
+            .priority(7 - i % 8, false);
+        futures.add(client.send(request));
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        final Http2Response response = futures.get(i).get(30, SECONDS);
+        assertThat(response.content().toString(UTF_8), is("hello: /" + batch + "/" + i));
+      }
+    }
+  }
+
+  @Test
+  public void testRequestExecutor() throws Exception {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch unblock = new CountDownLatch(1);
+    final ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, SECONDS, new SynchronousQueue<>());
+    try {
+      // A blocking handler would stall the connection if it ran on the event loop
+      final RequestHandler requestHandler = (context, request) -> {
+        if (request.path().toString().equals("/blocking")) {
+          blocked.countDown();
+          Uninterruptibles.awaitUninterruptibly(unblock);
+        }
+        context.respond(request.response(OK, Unpooled.copiedBuffer("hello: " + request.path(), UTF_8)));
+      };
+
+      // Start server
+      final Http2Server server = autoClosing(
+          Http2Server.builder()
+              .requestHandler(requestHandler)
+              .requestExecutor(executor)
+              .cleartext(true)
+              .build());
+      final int port = server.bind(0).get().getPort();
+
+      // Start client
+      final Http2Client client = autoClosing(
+          Http2Client.builder()
+              .address("127.0.0.1", port)
+              .cleartext(true)
+              .build());
+
+      // Occupy the only executor thread, trying again if it was shed because the thread was still busy
+      CompletableFuture<Http2Response> blocking = client.get("/blocking");
+      while (!blocked.await(10, MILLISECONDS)) {
+        if (blocking.isDone()) {
+          blocking = client.get("/blocking");
+        }
+      }
+
+      // Requests that the saturated executor rejects are shed, without stalling the connection
+      while (true) {
+        final Http2Response response = client.get("/fast").get(30, SECONDS);
+        if (response.status().equals(SERVICE_UNAVAILABLE)) {
+          break;
+        }
+        assertThat(blocking.isDone(), is(false));
+      }
+
+      // The blocked request completes when the handler unblocks
+      unblock.countDown();
+      assertThat(blocking.get(30, SECONDS).content().toString(UTF_8), is("hello: /blocking"));
+      assertThat(client.get("/fast").get(30, SECONDS).content().toString(UTF_8), is("hello: /fast"));
+    } finally {
+      unblock.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testStreamingResponse() throws Exception {
+    final ByteBuf payload = randomByteBuf(1024 * 1024);
+
+    final RequestHandler requestHandler = (context, request) ->
+        context.respond(request.response(
+            OK, Unpooled.copiedBuffer(payload)));
+
+    // Start server
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler(requestHandler)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .address("127.0.0.1", port)
+            .cleartext(true)
+            .build());
+
+    // Receive the response payload in chunks
+    final CompletableFuture<Http2Response> headers = new CompletableFuture<>();
+    final CompletableFuture<ByteBuf> body = new CompletableFuture<>();
+    final List<Integer> chunks = new ArrayList<>();
+    final ByteBuf received = Unpooled.buffer();
+    client.send(Http2Request.of(GET, "/stream"), new Http2StreamingResponseHandler() {
+      @Override
+      public void headers(final Http2Response response) {
+        headers.complete(response);
+      }
+
+      @Override
+      public void data(final ByteBuf data) {
+        chunks.add(data.readableBytes());
+        received.writeBytes(data);
+      }
+
+      @Override
+      public void end() {
+        body.complete(received);
+      }
+
+      @Override
+      public void failure(final Throwable e) {
+        headers.completeExceptionally(e);
+        body.completeExceptionally(e);
+      }
+    });
+
+    final Http2Response response = headers.get(30, SECONDS);
+    assertThat(response.status(), is(OK));
+    assertThat(response.hasContent(), is(false));
+    assertThat(body.get(30, SECONDS), is(payload));
+    assertThat(chunks.size() > 1, is(true));
+  }
+
+  @Test
+  public void testStreamingRequest() throws Exception {
+    final int streamWindow = 64 * 1024;
+    final int size = 1024 * 1024;
+
+    // Count the request payload as it arrives but only consume it once told to
+    final AtomicInteger received = new AtomicInteger();
+    final AtomicBoolean consume = new AtomicBoolean();
+    final CountDownLatch windowExhausted = new CountDownLatch(1);
+    final CompletableFuture<Http2RequestContext> requestContext = new CompletableFuture<>();
+    final StreamingRequestHandler requestHandler = (context, request) -> {
+      requestContext.complete(context);
+      return new RequestPayloadHandler() {
+        @Override
+        public int data(final ByteBuf data) {
+          final int n = data.readableBytes();
+          if (received.addAndGet(n) >= streamWindow) {
+            windowExhausted.countDown();
+          }
+          return consume.get() ? n : 0;
+        }
+
+        @Override
+        public void end() {
+          context.respond(request.response(
+              OK, Unpooled.copiedBuffer("received: " + received.get(), UTF_8)));
+        }
+      };
+    };
+
+    // Start server
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .streamingRequestHandler(requestHandler)
+            .streamWindow(streamWindow)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .address("127.0.0.1", port)
+            .cleartext(true)
+            .build());
+
+    // The request handler gets the request before the payload has been consumed
+    final CompletableFuture<Http2Response> future = client.post("/upload", randomByteBuf(size));
+    final Http2RequestContext context = requestContext.get(30, SECONDS);
+
+    // The client sends exactly the stream window and then has to wait for the server to replenish it
+    assertThat(windowExhausted.await(30, SECONDS), is(true));
+    assertThat(received.get(), is(streamWindow));
+    assertThat(future.isDone(), is(false));
+
+    // Consume the payload to let the client send the rest of it, further data is consumed as it arrives
+    consume.set(true);
+    context.consumed(streamWindow);
+    final Http2Response response = future.get(30, SECONDS);
+    assertThat(response.status(), is(OK));
+    assertThat(response.content().toString(UTF_8), is("received: " + size));
+  }
+
+  @Test
+  public void testRequestTrailers() throws Exception {
+
+    // Echo the request content and its checksum trailer
+    final RequestHandler requestHandler = (context, request) -> {
+      final String checksum = request.headers()
+          .filter(header -> header.getKey().contentEquals("x-checksum"))
+          .map(header -> header.getValue().toString())
+          .findFirst().orElse("missing");
+      final String content = request.content().toString(UTF_8);
+      request.release();
+      context.respond(request.response(OK, Unpooled.copiedBuffer(content + ": " + checksum, UTF_8)));
+    };
+
+    // Start server
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler(requestHandler)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    try (final Socket socket = new Socket("127.0.0.1", port)) {
+      final DataInputStream in = new DataInputStream(socket.getInputStream());
+      final OutputStream out = socket.getOutputStream();
+
+      // Send a POST with content followed by trailers. The request headers are the HPACK static table entries for
+      // :method POST, :scheme http and :path /, the trailer is a literal field without indexing.
+      final ByteBuf buf = Unpooled.buffer();
+      ByteBufUtil.writeAscii(buf, Http2Protocol.CLIENT_PREFACE);
+      Http2WireFormat.writeSettings(buf, new Http2Settings());
+      writeHeaders(buf, 1, Http2Flags.END_HEADERS, 0x83, 0x86, 0x84);
+      writeFrameHeader(buf, buf.writerIndex(), 5, Http2FrameTypes.DATA, 0, 1);
+      buf.writerIndex(buf.writerIndex() + Http2WireFormat.FRAME_HEADER_LENGTH);
+      buf.writeCharSequence("hello", UTF_8);
+      writeHeaders(buf, 1, Http2Flags.END_HEADERS | Http2Flags.END_STREAM,
+          0x00, 10, 'x', '-', 'c', 'h', 'e', 'c', 'k', 's', 'u', 'm', 3, 'a', 'b', 'c');
+      out.write(ByteBufUtil.getBytes(buf));
+      out.flush();
+      buf.release();
+
+      // Read the response content
+      final ByteBuf content = Unpooled.buffer();
+      while (true) {
+        final int length = (in.readUnsignedShort() << 8) | in.readUnsignedByte();
+        final int type = in.readUnsignedByte();
+        final int flags = in.readUnsignedByte();
+        final int streamId = in.readInt();
+        final byte[] payload = new byte[length];
+        in.readFully(payload);
+        if (streamId != 1) {
+          continue;
+        }
+        if (type == Http2FrameTypes.DATA) {
+          content.writeBytes(payload);
+        }
+        if ((flags & Http2Flags.END_STREAM) != 0) {
+          break;
+        }
+      }
+      assertThat(content.toString(UTF_8), is("hello: abc"));
+      content.release();
+    }
+  }
+
+  @Test
+  public void testPooledContent() throws Exception {
+
+    // Echo the pooled request content back, the response takes ownership of it
+    final RequestHandler requestHandler = (context, request) ->
+        context.respond(request.response(OK, request.content()));
+
+    // Start server
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler(requestHandler)
+            .pooledContent(true)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .address("127.0.0.1", port)
+            .pooledContent(true)
+            .cleartext(true)
+            .build());
+
+    final int size = 256 * 1024;
+
+    // Without content-length
+    {
+      final ByteBuf payload = randomByteBuf(size);
+      final Http2Response response = client.post("/echo", Unpooled.copiedBuffer(payload)).get(30, SECONDS);
+      assertThat(response.content(), is(payload));
+      response.release();
+    }
+
+    // With content-length
+    {
+      final ByteBuf payload = randomByteBuf(size);
+      final Http2Request request = Http2Request.of(POST, AsciiString.of("/echo"), Unpooled.copiedBuffer(payload))
+          .header(CONTENT_LENGTH, AsciiString.of(Integer.toString(size)));
+      final Http2Response response = client.send(request).get(30, SECONDS);
+      assertThat(response.content(), is(payload));
+      response.release();
+    }
+  }
+
+  @Test
+  public void testZeroCopyWrites() throws Exception {
+
+    // Echo the request content back in a direct buffer so that the response is also written without copying
+    final RequestHandler requestHandler = (context, request) -> {
+      final ByteBuf content = Unpooled.directBuffer(request.content().readableBytes())
+          .writeBytes(request.content());
+      request.release();
+      context.respond(request.response(OK, content));
+    };
+
+    // Start server
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler(requestHandler)
+            .zeroCopyWriteThreshold(1024)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .address("127.0.0.1", port)
+            .zeroCopyWriteThreshold(1024)
+            .cleartext(true)
+            .build());
+
+    // Large enough to span many frames and window updates, with some frames below the threshold
+    final int size = 1024 * 1024 + 17;
+    final ByteBuf payload = randomByteBuf(size);
+    final ByteBuf direct = Unpooled.directBuffer(size).writeBytes(payload, 0, size);
+    final Http2Response response = client.post("/echo", direct).get(30, SECONDS);
+    assertThat(response.content(), is(payload));
+    assertThat(direct.refCnt(), is(0));
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    final LongAdderMetrics serverMetrics = new LongAdderMetrics();
+    final LongAdderMetrics clientMetrics = new LongAdderMetrics();
+
+    final RequestHandler requestHandler = (context, request) -> {
+      request.release();
+      context.respond(request.response(OK));
+    };
+
+    // Start server
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler(requestHandler)
+            .metrics(serverMetrics)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .address("127.0.0.1", port)
+            .metrics(clientMetrics)
+            .cleartext(true)
+            .build());
+
+    // Larger than the default windows, so that the upload stalls until the server sends window updates
+    final int size = 256 * 1024;
+    final Http2Request request = Http2Request.of(POST, AsciiString.of("/upload"), randomByteBuf(size))
+        .header(AsciiString.of("x-test"), AsciiString.of("metrics"));
+    assertThat(client.send(request).get(30, SECONDS).status(), is(OK));
+
+    assertThat(clientMetrics.connectionsOpened(), is(1L));
+    assertThat(clientMetrics.streamsOpened(), is(1L));
+    assertThat(clientMetrics.activeStreams(), is(0L));
+    assertThat(clientMetrics.framesRead(Http2FrameTypes.SETTINGS), is(greaterThan(0L)));
+    assertThat(clientMetrics.framesRead(Http2FrameTypes.WINDOW_UPDATE), is(greaterThan(0L)));
+    assertThat(clientMetrics.framesRead(Http2FrameTypes.HEADERS), is(1L));
+    assertThat(clientMetrics.windowStalls(), is(greaterThan(0L)));
+    assertThat(clientMetrics.bytesWritten(), is(greaterThan((long) size)));
+    assertThat(clientMetrics.maxHeaderEncoderTableSize(), is(greaterThan(0L)));
+
+    assertThat(serverMetrics.connectionsOpened(), is(1L));
+    assertThat(serverMetrics.streamsOpened(), is(1L));
+    assertThat(serverMetrics.framesRead(Http2FrameTypes.HEADERS), is(1L));
+    assertThat(serverMetrics.framesRead(Http2FrameTypes.DATA), is(greaterThan(0L)));
+    assertThat(serverMetrics.bytesRead(), is(greaterThan((long) size)));
+    assertThat(serverMetrics.maxHeaderDecoderTableSize(), is(greaterThan(0L)));
+
+    // Closing the client closes the connection on both ends
+    client.close().get(30, SECONDS);
+    assertThat(clientMetrics.activeConnections(), is(0L));
+    while (serverMetrics.activeConnections() != 0) {
+      Thread.sleep(10);
+    }
+    assertThat(serverMetrics.activeStreams(), is(0L));
+  }
+
+  @Test
+  public void testLatencyRecorder() throws Exception {
+    final RequestHandler requestHandler = (context, request) -> {
+      context.respond(request.response(OK, Unpooled.copiedBuffer("hello: " + request.path(), UTF_8)));
+      request.release();
+    };
+
+    // Start server
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler(requestHandler)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client
+    final LatencyRecorder recorder = new LatencyRecorder();
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .address("127.0.0.1", port)
+            .latencyRecorder(recorder)
+            .cleartext(true)
+            .build());
+
+    final int n = 10;
+    for (int i = 0; i < n; i++) {
+      assertThat(client.get("/hello").get(30, SECONDS).content().toString(UTF_8), is("hello: /hello"));
+    }
+
+    final LatencyHistogram.Snapshot queueTime = recorder.queueTime().snapshot();
+    final LatencyHistogram.Snapshot timeToHeaders = recorder.timeToHeaders().snapshot();
+    final LatencyHistogram.Snapshot timeToLastByte = recorder.timeToLastByte().snapshot();
+    assertThat(queueTime.count(), is((long) n));
+    assertThat(timeToHeaders.count(), is((long) n));
+    assertThat(timeToLastByte.count(), is((long) n));
+    assertThat(timeToHeaders.max(), is(greaterThan(queueTime.max())));
+    assertThat(timeToLastByte.max(), is(greaterThanOrEqualTo(timeToHeaders.max())));
+    assertThat(timeToLastByte.percentile(99.9), is(lessThanOrEqualTo(timeToLastByte.max())));
+
+    recorder.reset();
+    assertThat(recorder.timeToLastByte().snapshot().count(), is(0L));
+  }
+
+  @Test
+  public void testRequestTimeout() throws Exception {
+
+    // Hold on to slow requests and only respond when told to
+    final CompletableFuture<Http2RequestContext> slow = new CompletableFuture<>();
+    final RequestHandler requestHandler = (context, request) -> {
+      if (request.path().toString().equals("/slow")) {
+        slow.complete(context);
+        request.release();
+      } else {
+        context.respond(request.response(OK, Unpooled.copiedBuffer("hello: " + request.path(), UTF_8)));
+      }
+    };
+
+    // Start server
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler(requestHandler)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .address("127.0.0.1", port)
+            .requestTimeout(100, MILLISECONDS)
+            .cleartext(true)
+            .build());
+
+    // The slow request times out
+    final CompletableFuture<Http2Response> slowResponse = client.get("/slow");
+    try {
+      slowResponse.get(30, SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), is(instanceOf(RequestTimeoutException.class)));
+    }
+
+    // Respond late, the response to the cancelled stream should be ignored by the client
+    slow.get(30, SECONDS).respond(new Http2Response(OK, Unpooled.copiedBuffer("late", UTF_8)));
+
+    // The connection is still usable, with a per request timeout
+    final Http2Request request = new Http2Request(GET, "/fast").timeout(30, SECONDS);
+    final CompletableFuture<Http2Response> fastResponse = client.send(request);
+    assertThat(fastResponse.get(30, SECONDS).content().toString(UTF_8), is("hello: /fast"));
+  }
+
+  @Test
+  public void testCancelledRequestIsResetOnServer() throws Exception {
+
+    // Never consume the payload so that the request cannot complete
+    final CompletableFuture<Void> reset = new CompletableFuture<>();
+    final StreamingRequestHandler requestHandler = (context, request) -> new RequestPayloadHandler() {
+      @Override
+      public int data(final ByteBuf data) {
+        return 0;
+      }
+
+      @Override
+      public void end() {
+        context.respond(request.response(OK));
+      }
+
+      @Override
+      public void reset() {
+        reset.complete(null);
+      }
+    };
+
+    // Start server
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .streamingRequestHandler(requestHandler)
+            .streamWindow(64 * 1024)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .address("127.0.0.1", port)
+            .requestTimeout(500, MILLISECONDS)
+            .cleartext(true)
+            .build());
+
+    // The request times out while blocked on the stream window
+    final ByteBuf payload = randomByteBuf(1024 * 1024);
+    final CompletableFuture<Http2Response> future = client.post("/upload", payload);
+    try {
+      future.get(30, SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), is(instanceOf(RequestTimeoutException.class)));
+    }
+    assertThat(payload.refCnt(), is(0));
+
+    // The server is told that the client is no longer interested
+    reset.get(30, SECONDS);
+  }
+
+  @Test
+  public void testPeerResetStream() throws Exception {
+    try (final ServerSocket serverSocket = new ServerSocket(0)) {
+
+      // Start client
+      final Http2Client client = autoClosing(
+          Http2Client.builder()
+              .address("127.0.0.1", serverSocket.getLocalPort())
+              .cleartext(true)
+              .build());
+      final CompletableFuture<Http2Response> future = client.get("/refused");
+
+      try (final Socket socket = serverSocket.accept()) {
+        final DataInputStream in = new DataInputStream(socket.getInputStream());
+        final OutputStream out = socket.getOutputStream();
+
+        in.readFully(new byte[Http2Protocol.CLIENT_PREFACE.length()]);
+        final int streamId = readRequestHeaders(in);
+
+        // Refuse the request
+        final ByteBuf buf = Unpooled.buffer();
+        Http2WireFormat.writeSettings(buf, new Http2Settings());
+        Http2WireFormat.writeRstStream(buf, streamId, Http2Error.REFUSED_STREAM);
+        out.write(ByteBufUtil.getBytes(buf));
+        out.flush();
+        buf.release();
+
+        try {
+          future.get(30, SECONDS);
+          fail();
+        } catch (ExecutionException e) {
+          assertThat(e.getCause(), is(instanceOf(StreamResetException.class)));
+          assertThat(((StreamResetException) e.getCause()).errorCode(), is((long) Http2Error.REFUSED_STREAM.code()));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPingRtt() throws Exception {
+    final RequestHandler requestHandler = (context, request) -> {
+      request.release();
+      context.respond(request.response(OK));
+    };
+
+    // Start server, pinging idle connections as well
+    final Http2Server server = autoClosing(
+        Http2Server.builder()
+            .requestHandler(requestHandler)
+            .pingInterval(100, MILLISECONDS)
+            .cleartext(true)
+            .build());
+    final int port = server.bind(0).get().getPort();
+
+    // Start client
+    final Http2Client client = autoClosing(
+        Http2Client.builder()
+            .address("127.0.0.1", port)
+            .listener(listener)
+            .pingInterval(100, MILLISECONDS)
+            .cleartext(true)
+            .build());
+
+    // The connection is pinged when established and then again while idle
+    verify(listener, timeout(30_000).atLeast(3))
+        .connectionRtt(eq(client), anyString(), longThat(rtt -> rtt > 0), longThat(minRtt -> minRtt > 0));
+    assertThat(client.get("/hello").get(30, SECONDS).status(), is(OK));
+    verify(listener, never()).connectionClosed(client);
+  }
+
+  @Test
+  public void testPingTimeoutClosesConnection() throws Exception {
+    try (final ServerSocket serverSocket = new ServerSocket(0)) {
+
+      // Start client
+      final Http2Client client = autoClosing(
+          Http2Client.builder()
+              .address("127.0.0.1", serverSocket.getLocalPort())
+              .listener(listener)
+              .pingInterval(100, MILLISECONDS)
+              .pingTimeout(200, MILLISECONDS)
+              .cleartext(true)
+              .build());
+
+      try (final Socket socket = serverSocket.accept()) {
+        final DataInputStream in = new DataInputStream(socket.getInputStream());
+        in.readFully(new byte[Http2Protocol.CLIENT_PREFACE.length()]);
+
+        // Never answer the PING
+        while (true) {
+          final int length = (in.readUnsignedShort() << 8) | in.readUnsignedByte();
+          final int type = in.readUnsignedByte();
+          in.readUnsignedByte();
+          in.readInt();
+          in.readFully(new byte[length]);
+          if (type == Http2FrameTypes.PING) {
+            break;
+          }
+        }
+
+        // The client gives up on the connection
+        verify(listener, timeout(30_000)).connectionClosed(client);
+        while (in.read() != -1) {
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testAdaptiveWindow() throws Exception {
+    try (final ServerSocket serverSocket = new ServerSocket(0)) {
+
+      // Start client
+      final Http2Client client = autoClosing(
+          Http2Client.builder()
+              .address("127.0.0.1", serverSocket.getLocalPort())
+              .maxAdaptiveWindow(1024 * 1024)
+              .cleartext(true)
+              .build());
+      final CompletableFuture<Http2Response> future = client.get("/download");
+
+      try (final Socket socket = serverSocket.accept()) {
+        final DataInputStream in = new DataInputStream(socket.getInputStream());
+        final OutputStream out = socket.getOutputStream();
+
+        in.readFully(new byte[Http2Protocol.CLIENT_PREFACE.length()]);
+        final int streamId = readRequestHeaders(in);
+
+        // Use up the whole default window
+        final int window = Http2Protocol.DEFAULT_INITIAL_WINDOW_SIZE;
+        final ByteBuf buf = Unpooled.buffer();
+        Http2WireFormat.writeSettings(buf, new Http2Settings());
+        writeFrameHeader(buf, buf.writerIndex(), 1, Http2FrameTypes.HEADERS, Http2Flags.END_HEADERS, streamId);
+        buf.writerIndex(buf.writerIndex() + Http2WireFormat.FRAME_HEADER_LENGTH);
+        buf.writeByte(0x88);
+        for (int remaining = window; remaining > 0; ) {
+          final int length = Math.min(remaining, Http2Protocol.DEFAULT_MAX_FRAME_SIZE);
+          writeFrameHeader(buf, buf.writerIndex(), length, Http2FrameTypes.DATA, 0, streamId);
+          buf.writerIndex(buf.writerIndex() + Http2WireFormat.FRAME_HEADER_LENGTH);
+          buf.writeZero(length);
+          remaining -= length;
+        }
+        out.write(ByteBufUtil.getBytes(buf));
+        out.flush();
+        buf.clear();
+
+        // The client measures the bandwidth-delay product with a PING. Ack it after the whole window was received.
+        int settingsWindow = 0;
+        while (settingsWindow == 0) {
+          final int length = (in.readUnsignedShort() << 8) | in.readUnsignedByte();
+          final int type = in.readUnsignedByte();
+          final int flags = in.readUnsignedByte();
+          in.readInt();
+          final byte[] payload = new byte[length];
+          in.readFully(payload);
+          if (type == Http2FrameTypes.PING && (flags & Http2Flags.ACK) == 0) {
+            writeFrameHeader(buf, buf.writerIndex(), payload.length, Http2FrameTypes.PING, Http2Flags.ACK, 0);
+            buf.writerIndex(buf.writerIndex() + Http2WireFormat.FRAME_HEADER_LENGTH);
+            buf.writeBytes(payload);
+            out.write(ByteBufUtil.getBytes(buf));
+            out.flush();
+            buf.clear();
+          } else if (type == Http2FrameTypes.SETTINGS && (flags & Http2Flags.ACK) == 0) {
+            final ByteBuf settings = Unpooled.wrappedBuffer(payload);
+            while (settings.isReadable()) {
+              final int identifier = settings.readUnsignedShort();
+              final long value = settings.readUnsignedInt();
+              if (identifier == Http2Settings.INITIAL_WINDOW_SIZE) {
+                settingsWindow = (int) value;
+              }
+            }
+          }
+        }
+
+        // The peer used the whole window in a round trip, so the client doubles it
+        assertThat(settingsWindow, is(2 * window));
+
+        writeFrameHeader(buf, buf.writerIndex(), 0, Http2FrameTypes.DATA, Http2Flags.END_STREAM, streamId);
+        buf.writerIndex(buf.writerIndex() + Http2WireFormat.FRAME_HEADER_LENGTH);
+        out.write(ByteBufUtil.getBytes(buf));
+        out.flush();
+        buf.release();
+
+        final Http2Response response = future.get(30, SECONDS);
+        assertThat(response.status(), is(OK));
+        assertThat(response.content().readableBytes(), is(window));
+        response.release();
+      }
+    }
+  }
+
+  @Test
+  public void testGoAway() throws Exception {
+    try (final ServerSocket serverSocket = new ServerSocket(0)) {
+
+      // Start client
+      final Http2Client client = autoClosing(
+          Http2Client.builder()
+              .address("127.0.0.1", serverSocket.getLocalPort())
+              .cleartext(true)
+              .build());
+      final CompletableFuture<Http2Response> first = client.get("/first");
+      final CompletableFuture<Http2Response> second = client.get("/second");
+
+      try (final Socket socket = serverSocket.accept()) {
+        final DataInputStream in = new DataInputStream(socket.getInputStream());
+        final OutputStream out = socket.getOutputStream();
+        in.readFully(new byte[Http2Protocol.CLIENT_PREFACE.length()]);
+        final int firstStreamId = readRequestHeaders(in);
+        final int secondStreamId = readRequestHeaders(in);
+        assertThat(secondStreamId, is(greaterThan(firstStreamId)));
+
+        // Go away after the first request and only respond to that one
+        final ByteBuf buf = Unpooled.buffer();
+        Http2WireFormat.writeSettings(buf, new Http2Settings());
+        writeFrameHeader(buf, buf.writerIndex(), 8, Http2FrameTypes.GOAWAY, 0, 0);
+        buf.writerIndex(buf.writerIndex() + Http2WireFormat.FRAME_HEADER_LENGTH);
+        buf.writeInt(firstStreamId);
+        buf.writeInt(Http2Error.NO_ERROR.code());
+        writeStatusOk(buf, firstStreamId);
+        out.write(ByteBufUtil.getBytes(buf));
+        out.flush();
+        buf.release();
+
+        assertThat(first.get(30, SECONDS).status(), is(OK));
+
+        // The second request is retried on a new connection
+        try (final Socket replacement = serverSocket.accept()) {
+          final DataInputStream replacementIn = new DataInputStream(replacement.getInputStream());
+          replacementIn.readFully(new byte[Http2Protocol.CLIENT_PREFACE.length()]);
+          final int retriedStreamId = readRequestHeaders(replacementIn);
+          final ByteBuf response = Unpooled.buffer();
+          writeStatusOk(response, retriedStreamId);
+          replacement.getOutputStream().write(ByteBufUtil.getBytes(response));
+          replacement.getOutputStream().flush();
+          response.release();
+          assertThat(second.get(30, SECONDS).status(), is(OK));
+        }
+
+        // The drained connection is closed by the client
+        while (in.read() != -1) {
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testStandbyConnectionPromotedOnGoAway() throws Exception {
+    try (final ServerSocket serverSocket = new ServerSocket(0)) {
+
+      // Start client
+      final Http2Client client = autoClosing(
+          Http2Client.builder()
+              .address("127.0.0.1", serverSocket.getLocalPort())
+              .standbyConnection(true)
+              .listener(listener)
+              .cleartext(true)
+              .build());
+
+      // The standby connection is established after the active connection
+      try (final Socket active = serverSocket.accept();
+          final Socket standby = serverSocket.accept()) {
+        verify(listener, timeout(30_000).times(2)).connectionEstablished(client);
+
+        // Shut down the active connection
+        final ByteBuf buf = Unpooled.buffer();
+        writeFrameHeader(buf, buf.writerIndex(), 8, Http2FrameTypes.GOAWAY, 0, 0);
+        buf.writerIndex(buf.writerIndex() + Http2WireFormat.FRAME_HEADER_LENGTH);
+        buf.writeInt(0);
+        buf.writeInt(Http2Error.NO_ERROR.code());
+        active.getOutputStream().write(ByteBufUtil.getBytes(buf));
+        active.getOutputStream().flush();
+        buf.release();
+
+        // The drained active connection is closed by the client
+        final DataInputStream activeIn = new DataInputStream(active.getInputStream());
+        while (activeIn.read() != -1) {
+        }
+
+        // Requests go to the promoted standby connection without waiting for a new connection
+        final CompletableFuture<Http2Response> future = client.get("/promoted");
+        final DataInputStream standbyIn = new DataInputStream(standby.getInputStream());
+        standbyIn.readFully(new byte[Http2Protocol.CLIENT_PREFACE.length()]);
+        final int streamId = readRequestHeaders(standbyIn);
+        final ByteBuf response = Unpooled.buffer();
+        writeStatusOk(response, streamId);
+        standby.getOutputStream().write(ByteBufUtil.getBytes(response));
+        standby.getOutputStream().flush();
+        response.release();
+        assertThat(future.get(30, SECONDS).status(), is(OK));
+
+        // A new standby connection is established
+        try (final Socket replacement = serverSocket.accept()) {
+          assertThat(replacement.isConnected(), is(true));
+          verify(listener, timeout(30_000).times(3)).connectionEstablished(client);
+        }
+      }
+    }
+  }
+
+  /**
+   * Skip frames until a HEADERS frame has been read.
+   *
+   * @return The stream id of the HEADERS frame.
+   */
+  private static int readRequestHeaders(final DataInputStream in) throws IOException {
+    while (true) {
+      final int length = (in.readUnsignedShort() << 8) | in.readUnsignedByte();
+      final int type = in.readUnsignedByte();
+      in.readUnsignedByte();
+      final int streamId = in.readInt();
+      in.readFully(new byte[length]);
+      if (type == Http2FrameTypes.HEADERS) {
+        return streamId;
+      }
+    }
+  }
+
+  /**
+   * Write a complete 200 response without content, using the HPACK static table entry for :status 200.
+   */
+  private static void writeStatusOk(final ByteBuf buf, final int streamId) {
+    writeFrameHeader(buf, buf.writerIndex(), 1, Http2FrameTypes.HEADERS,
+        Http2Flags.END_HEADERS | Http2Flags.END_STREAM, streamId);
+    buf.writerIndex(buf.writerIndex() + Http2WireFormat.FRAME_HEADER_LENGTH);
+    buf.writeByte(0x88);
+  }
+
+  /**
+   * Write a HEADERS frame with the given HPACK encoded header block.
+   */
+  private static void writeHeaders(final ByteBuf buf, final int streamId, final int flags, final int... block) {
+    writeFrameHeader(buf, buf.writerIndex(), block.length, Http2FrameTypes.HEADERS, flags, streamId);
+    buf.writerIndex(buf.writerIndex() + Http2WireFormat.FRAME_HEADER_LENGTH);
+    for (final int b : block) {
+      buf.writeByte(b);
+    }
+  }
+
   private Http2Server autoClosing(final Http2Server server) {
     servers.add(server);
     return server;
@@ -0,0 +1,88 @@
+package io.norberg.http2;
+
+import static io.netty.handler.codec.http.HttpMethod.GET;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.norberg.http2.Http2Priority.DEFAULT_URGENCY;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.netty.util.AsciiString;
+import org.junit.Test;
+
+public class Http2PriorityTest {
+
+  @Test
+  public void testFormat() {
+    assertThat(Http2Priority.format(0, false), is(AsciiString.of("u=0")));
+    assertThat(Http2Priority.format(7, true), is(AsciiString.of("u=7, i")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFormatInvalidUrgency() {
+    Http2Priority.format(8, false);
+  }
+
+  @Test
+  public void testParse() {
+    assertPriority("", DEFAULT_URGENCY, false);
+    assertPriority("u=0", 0, false);
+    assertPriority("i", DEFAULT_URGENCY, true);
+    assertPriority("u=5, i", 5, true);
+    assertPriority("i,u=1", 1, true);
+    assertPriority("u=2, i=?1", 2, true);
+    assertPriority("u=2, i=?0", 2, false);
+  }
+
+  @Test
+  public void testParseIgnoresInvalidAndUnknownParameters() {
+    assertPriority("u=8", DEFAULT_URGENCY, false);
+    assertPriority("u=-1, i", DEFAULT_URGENCY, true);
+    assertPriority("u=12", DEFAULT_URGENCY, false);
+    assertPriority("u=a", DEFAULT_URGENCY, false);
+    assertPriority("i=1", DEFAULT_URGENCY, false);
+    assertPriority("foo=bar, u=1;x=y, ux=2, i", 1, true);
+  }
+
+  @Test
+  public void testParseResetsToDefaults() {
+    final Http2Stream stream = new Http2Stream(1);
+    Http2Priority.apply(stream, AsciiString.of("u=1, i"));
+    Http2Priority.apply(stream, AsciiString.of("u=6"));
+    assertThat(stream.urgency, is(6));
+    assertThat(stream.incremental, is(false));
+  }
+
+  @Test
+  public void testApplyMessage() {
+    final Http2Stream stream = new Http2Stream(1);
+    Http2Priority.apply(stream, Http2Request.of(GET, "/").priority(1, true));
+    assertThat(stream.urgency, is(1));
+    assertThat(stream.incremental, is(true));
+
+    // No priority header, leave the stream as is
+    Http2Priority.apply(stream, new Http2Response(OK));
+    assertThat(stream.urgency, is(1));
+    assertThat(stream.incremental, is(true));
+  }
+
+  @Test
+  public void testPriorityReplacesHeader() {
+    final AsciiString foo = AsciiString.of("foo");
+    final Http2Request request = Http2Request.of(GET, "/")
+        .header(AsciiString.of("Priority"), AsciiString.of("u=0"))
+        .header(foo, foo)
+        .header(Http2Priority.PRIORITY, AsciiString.of("u=7"))
+        .priority(1, true)
+        .priority(2, false);
+    assertThat(request.numHeaders(), is(2));
+    assertThat(request.headerValue(0), is(AsciiString.of("u=2")));
+    assertThat(request.headerName(1), is(foo));
+  }
+
+  private static void assertPriority(final String value, final int urgency, final boolean incremental) {
+    final Http2Stream stream = new Http2Stream(1);
+    Http2Priority.apply(stream, AsciiString.of(value));
+    assertThat(value, stream.urgency, is(urgency));
+    assertThat(value, stream.incremental, is(incremental));
+  }
+}
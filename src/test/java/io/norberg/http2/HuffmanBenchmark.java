@@ -0,0 +1,112 @@
+package io.norberg.http2;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.AsciiString;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Huffman codes one header value of the corpus per operation. The array decode benchmarks compare the multi symbol
+ * table decoder used by {@link HpackDecoder} with the reference tree decoder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HuffmanBenchmark {
+
+  @Param
+  public HpackCorpus corpus;
+
+  private AsciiString[] values;
+  private ByteBuf[] encoded;
+  private int i;
+
+  private ByteBuf out;
+  private byte[] array;
+
+  @Setup
+  public void setup() {
+    final List<AsciiString> values = new ArrayList<>();
+    for (final Http2Header[] block : corpus.blocks()) {
+      for (final Http2Header header : block) {
+        values.add(header.value());
+      }
+    }
+    this.values = values.toArray(new AsciiString[0]);
+    encoded = new ByteBuf[this.values.length];
+    for (int i = 0; i < this.values.length; i++) {
+      encoded[i] = Unpooled.directBuffer();
+      Huffman.encode(encoded[i], this.values[i]);
+    }
+    out = Unpooled.directBuffer(1024);
+    array = new byte[8 * 1024];
+  }
+
+  @TearDown
+  public void tearDown() {
+    for (final ByteBuf buf : encoded) {
+      buf.release();
+    }
+    out.release();
+  }
+
+  @Benchmark
+  public int encode() {
+    final AsciiString value = values[i];
+    i = (i + 1) % values.length;
+    out.clear();
+    Huffman.encode(out, value);
+    return out.writerIndex();
+  }
+
+  @Benchmark
+  public int decode() {
+    final ByteBuf in = encoded[i];
+    i = (i + 1) % encoded.length;
+    in.readerIndex(0);
+    out.clear();
+    Huffman.decode(in, out);
+    return out.writerIndex();
+  }
+
+  @Benchmark
+  public int decodeArray() {
+    final ByteBuf in = encoded[i];
+    i = (i + 1) % encoded.length;
+    in.readerIndex(0);
+    return Huffman.decode(in, array, in.readableBytes());
+  }
+
+  @Benchmark
+  public int decodeArrayTree() {
+    final ByteBuf in = encoded[i];
+    i = (i + 1) % encoded.length;
+    in.readerIndex(0);
+    return Huffman.decodeTree(in, array, in.readableBytes());
+  }
+
+  @Benchmark
+  public int encodedLength() {
+    final AsciiString value = values[i];
+    i = (i + 1) % values.length;
+    return Huffman.encodedLength(value);
+  }
+}
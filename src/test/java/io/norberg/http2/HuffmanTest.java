@@ -68,6 +68,94 @@ public class HuffmanTest {
     }
   }
 
+  @Test
+  public void testFastDecodeMatchesTreeDecode() throws Exception {
+    final ByteBuf encoded = releaseLater(Unpooled.buffer());
+    final byte[] data = new byte[128];
+    final Random r = new Random(4711);
+    for (int i = 0; i < 10000; i++) {
+      r.nextBytes(data);
+      final int length = 1 + r.nextInt(data.length);
+      encoded.clear();
+      Huffman.encode(encoded, Unpooled.wrappedBuffer(data, 0, length));
+      assertThat(fastDecode(encoded), is(treeDecode(encoded)));
+    }
+    for (final HpackCorpus corpus : HpackCorpus.values()) {
+      for (final Http2Header[] block : corpus.blocks()) {
+        for (final Http2Header header : block) {
+          encoded.clear();
+          Huffman.encode(encoded, header.value());
+          assertThat(fastDecode(encoded), is(header.value()));
+          assertThat(treeDecode(encoded), is(header.value()));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFastDecodeArbitraryInput() throws Exception {
+    // Mostly invalid codes and padding. The tree decoder accepts some input that is not a valid encoding, e.g. more
+    // than 7 bits of padding, but whenever the fast decoder accepts input both decoders must agree.
+    final ByteBuf encoded = releaseLater(Unpooled.buffer());
+    final ByteBuf reencoded = releaseLater(Unpooled.buffer());
+    final byte[] data = new byte[16];
+    final Random r = new Random(4711);
+    for (int i = 0; i < 100000; i++) {
+      r.nextBytes(data);
+      final int length = 1 + r.nextInt(data.length);
+      if (r.nextBoolean()) {
+        final int ones = r.nextInt(16);
+        for (int j = 0; j < ones && j < length; j++) {
+          data[length - 1 - j] = (byte) 0xFF;
+        }
+      }
+      encoded.clear();
+      encoded.writeBytes(data, 0, length);
+      final AsciiString fast = fastDecode(encoded);
+      final AsciiString tree = treeDecode(encoded);
+      if (fast != null) {
+        assertThat(fast, is(tree));
+      } else if (tree != null) {
+        // Rejected input must not be a valid encoding
+        reencoded.clear();
+        Huffman.encode(reencoded, tree);
+        assertThat(reencoded.equals(encoded), is(false));
+      }
+    }
+  }
+
+  @Test
+  public void testFastDecodeDirectOutput() throws Exception {
+    final ByteBuf encoded = releaseLater(Unpooled.buffer());
+    final ByteBuf decoded = releaseLater(PooledByteBufAllocator.DEFAULT.directBuffer());
+    final AsciiString input = AsciiString.of("https://www.example.com/foo/bar?baz=quux");
+    Huffman.encode(encoded, input);
+    Huffman.decode(encoded, decoded);
+    assertThat(new AsciiString(decoded.nioBuffer()), is(input));
+  }
+
+  private static AsciiString fastDecode(final ByteBuf encoded) {
+    final int length = encoded.readableBytes();
+    final byte[] out = new byte[length * 2];
+    try {
+      final int n = Huffman.decode(encoded.duplicate(), out, length);
+      return new AsciiString(out, 0, n, false);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static AsciiString treeDecode(final ByteBuf encoded) {
+    final int length = encoded.readableBytes();
+    final byte[] out = new byte[length * 2];
+    try {
+      final int n = Huffman.decodeTree(encoded.duplicate(), out, length);
+      return new AsciiString(out, 0, n, false);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
   @Ignore
   @Test
   public void benchmarkEncodeDecodeBinary1() throws Exception {
@@ -0,0 +1,99 @@
+package io.norberg.http2;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.hamcrest.Matcher;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBuckets() {
+    // Every value falls within its bucket and buckets are contiguous
+    long previousHighest = -1;
+    for (int i = 0; i < 64 * 1024; i++) {
+      assertThat(LatencyHistogram.index(i), is(greaterThanOrEqualTo(0)));
+      assertThat(i, is(lessThanOrEqualTo((int) LatencyHistogram.highestValue(LatencyHistogram.index(i)))));
+    }
+    for (int i = 0; i <= LatencyHistogram.index(Long.MAX_VALUE); i++) {
+      final long highest = LatencyHistogram.highestValue(i);
+      assertThat(LatencyHistogram.index(previousHighest + 1), is(i));
+      assertThat(LatencyHistogram.index(highest), is(i));
+      previousHighest = highest;
+    }
+    assertThat(previousHighest, is(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testPercentiles() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10_000; i++) {
+      histogram.record(i * 1000L);
+    }
+    final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.count(), is(10_000L));
+    assertThat(snapshot.max(), is(10_000_000L));
+    assertThat(snapshot.mean(), is(closeTo(5_000_500, 0.1)));
+    assertThat(snapshot.percentile(50), is(within(5_000_000)));
+    assertThat(snapshot.percentile(99), is(within(9_900_000)));
+    assertThat(snapshot.percentile(99.9), is(within(9_990_000)));
+    assertThat(snapshot.percentile(100), is(10_000_000L));
+    assertThat(snapshot.percentile(0), is(within(1000)));
+  }
+
+  @Test
+  public void testRandomValues() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final List<Long> values = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      final long value = ThreadLocalRandom.current().nextLong(MINUTES.toNanos(1));
+      values.add(value);
+      histogram.record(value);
+    }
+    values.sort(Long::compare);
+    final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.percentile(50), is(within(values.get(499))));
+    assertThat(snapshot.percentile(99), is(within(values.get(989))));
+    assertThat(snapshot.max(), is(values.get(999)));
+  }
+
+  @Test
+  public void testReset() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(4711);
+    histogram.record(-1);
+    final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.count(), is(2L));
+    assertThat(snapshot.percentile(50), is(0L));
+
+    histogram.reset();
+    final LatencyHistogram.Snapshot empty = histogram.snapshot();
+    assertThat(empty.count(), is(0L));
+    assertThat(empty.max(), is(0L));
+    assertThat(empty.percentile(99), is(0L));
+
+    // Snapshots are not affected by later changes
+    assertThat(snapshot.count(), is(2L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPercentile() {
+    new LatencyHistogram().snapshot().percentile(101);
+  }
+
+  /**
+   * No lower than the exact value and at most 1/32 higher.
+   */
+  private static Matcher<Long> within(final long exact) {
+    return allOf(greaterThanOrEqualTo(exact), lessThanOrEqualTo(exact + exact / 32));
+  }
+}
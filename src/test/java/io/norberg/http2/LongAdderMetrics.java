@@ -0,0 +1,124 @@
+package io.norberg.http2;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A reference {@link Http2Metrics} implementation that keeps striped counters, which stay cheap when many event loops
+ * update them at the same time.
+ */
+class LongAdderMetrics implements Http2Metrics {
+
+  private final LongAdder connectionsOpened = new LongAdder();
+  private final LongAdder connectionsClosed = new LongAdder();
+  private final LongAdder streamsOpened = new LongAdder();
+  private final LongAdder streamsClosed = new LongAdder();
+  private final LongAdder[] framesRead = new LongAdder[256];
+  private final LongAdder bytesRead = new LongAdder();
+  private final LongAdder bytesWritten = new LongAdder();
+  private final LongAdder streamWindowStalls = new LongAdder();
+  private final LongAdder connectionWindowStalls = new LongAdder();
+  private final LongAccumulator maxHeaderDecoderTableSize = new LongAccumulator(Math::max, 0);
+  private final LongAccumulator maxHeaderEncoderTableSize = new LongAccumulator(Math::max, 0);
+
+  LongAdderMetrics() {
+    for (int i = 0; i < framesRead.length; i++) {
+      framesRead[i] = new LongAdder();
+    }
+  }
+
+  @Override
+  public void connectionOpened() {
+    connectionsOpened.increment();
+  }
+
+  @Override
+  public void connectionClosed() {
+    connectionsClosed.increment();
+  }
+
+  @Override
+  public void streamOpened() {
+    streamsOpened.increment();
+  }
+
+  @Override
+  public void streamClosed() {
+    streamsClosed.increment();
+  }
+
+  @Override
+  public void frameRead(final int type, final int payloadLength) {
+    framesRead[type & 0xFF].increment();
+  }
+
+  @Override
+  public void bytesRead(final int bytes) {
+    bytesRead.add(bytes);
+  }
+
+  @Override
+  public void bytesWritten(final int bytes) {
+    bytesWritten.add(bytes);
+  }
+
+  @Override
+  public void streamWindowStalled() {
+    streamWindowStalls.increment();
+  }
+
+  @Override
+  public void connectionWindowStalled() {
+    connectionWindowStalls.increment();
+  }
+
+  @Override
+  public void headerDecoderTableSize(final int bytes) {
+    maxHeaderDecoderTableSize.accumulate(bytes);
+  }
+
+  @Override
+  public void headerEncoderTableSize(final int bytes) {
+    maxHeaderEncoderTableSize.accumulate(bytes);
+  }
+
+  long connectionsOpened() {
+    return connectionsOpened.sum();
+  }
+
+  long activeConnections() {
+    return connectionsOpened.sum() - connectionsClosed.sum();
+  }
+
+  long streamsOpened() {
+    return streamsOpened.sum();
+  }
+
+  long activeStreams() {
+    return streamsOpened.sum() - streamsClosed.sum();
+  }
+
+  long framesRead(final int type) {
+    return framesRead[type].sum();
+  }
+
+  long bytesRead() {
+    return bytesRead.sum();
+  }
+
+  long bytesWritten() {
+    return bytesWritten.sum();
+  }
+
+  long windowStalls() {
+    return streamWindowStalls.sum() + connectionWindowStalls.sum();
+  }
+
+  long maxHeaderDecoderTableSize() {
+    return maxHeaderDecoderTableSize.get();
+  }
+
+  long maxHeaderEncoderTableSize() {
+    return maxHeaderEncoderTableSize.get();
+  }
+}
@@ -2,6 +2,7 @@ package io.norberg.http2.benchmarks;
 
 import static io.netty.handler.codec.http.HttpMethod.POST;
 import static io.netty.util.ResourceLeakDetector.Level.DISABLED;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import com.spotify.logging.LoggingConfigurator;
@@ -15,6 +16,9 @@ import io.norberg.http2.Http2Request;
 import io.norberg.http2.Http2Response;
 import io.norberg.http2.Http2ResponseHandler;
 import io.norberg.http2.Http2Settings;
+import io.norberg.http2.LatencyHistogram;
+import io.norberg.http2.LatencyRecorder;
+import io.norberg.http2.Transport;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
@@ -36,10 +40,10 @@ class BenchmarkClient {
   public static void main(final String... args) throws Exception {
     LoggingConfigurator.configureNoLogging();
     ResourceLeakDetector.setLevel(DISABLED);
-    run();
+    run(BenchmarkUtil.transport(args));
   }
 
-  static void run() throws Exception {
+  static void run(final Transport transport) throws Exception {
 
     final AtomicLong maxConcurrentStreams = new AtomicLong(2000L);
 
@@ -52,18 +56,26 @@ class BenchmarkClient {
       }
     };
 
+    final LatencyRecorder latency = new LatencyRecorder();
+
     final Http2Client client = Http2Client.builder()
         .listener(listener)
+        .latencyRecorder(latency)
         .maxConcurrentStreams(maxConcurrentStreams.intValue())
         .connectionWindow(1024 * 1024)
         .address("127.0.0.1", 4711)
+        .transport(transport)
         .build();
 
+    System.out.println("Client connecting to 127.0.0.1:4711 (transport: " + transport + ")");
+
     final ProgressMeter meter = new ProgressMeter();
     final ProgressMeter.Metric requests = meter.group("throughput").metric("requests", "requests");
     final ProgressMeter.Metric errors = meter.group("throughput").metric("errors", "errors");
     final ProgressMeter.Metric data = meter.group("throughput").metric("data", "bytes");
 
+    scheduler.scheduleAtFixedRate(() -> printLatency(latency), 1, 1, SECONDS);
+
     final List<AsciiString> headers = new ArrayList<>();
     final int numHeaders = 16;
     for (int i = 0; i < numHeaders; i++) {
@@ -125,6 +137,22 @@ class BenchmarkClient {
     });
   }
 
+  private static void printLatency(final LatencyRecorder latency) {
+    final LatencyHistogram.Snapshot queueTime = latency.queueTime().snapshot();
+    final LatencyHistogram.Snapshot timeToHeaders = latency.timeToHeaders().snapshot();
+    final LatencyHistogram.Snapshot timeToLastByte = latency.timeToLastByte().snapshot();
+    latency.reset();
+    System.out.printf("latency (us): queue %s, headers %s, last byte %s%n",
+        percentiles(queueTime), percentiles(timeToHeaders), percentiles(timeToLastByte));
+  }
+
+  private static String percentiles(final LatencyHistogram.Snapshot snapshot) {
+    return String.format("p50=%d p99=%d p999=%d",
+        NANOSECONDS.toMicros(snapshot.percentile(50)),
+        NANOSECONDS.toMicros(snapshot.percentile(99)),
+        NANOSECONDS.toMicros(snapshot.percentile(99.9)));
+  }
+
   private static ByteBuf payload() {
     return Unpooled.wrappedBuffer(ARRAY_PAYLOADS[ThreadLocalRandom.current().nextInt(ARRAY_PAYLOADS.length)]);
 //    return PAYLOADS[ThreadLocalRandom.current().nextInt(PAYLOADS.length)].duplicate();
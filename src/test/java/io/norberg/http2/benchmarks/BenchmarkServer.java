@@ -11,6 +11,7 @@ import io.netty.util.ResourceLeakDetector;
 import io.norberg.http2.Http2Response;
 import io.norberg.http2.Http2Server;
 import io.norberg.http2.RequestHandler;
+import io.norberg.http2.Transport;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
@@ -24,13 +25,13 @@ class BenchmarkServer {
   public static void main(final String... args) throws Exception {
     LoggingConfigurator.configureNoLogging();
     ResourceLeakDetector.setLevel(DISABLED);
-    run();
+    run(BenchmarkUtil.transport(args));
     while (true) {
       Thread.sleep(1000);
     }
   }
 
-  static void run() throws Exception {
+  static void run(final Transport transport) throws Exception {
 
     final ProgressMeter meter = new ProgressMeter();
     final ProgressMeter.Metric requests = meter.group("throughput").metric("requests", "requests");
@@ -71,10 +72,11 @@ class BenchmarkServer {
     final Http2Server server = Http2Server.builder()
         .requestHandler(requestHandler)
         .connectionWindow(1024 * 1024)
+        .transport(transport)
         .build();
     final int port = server.bind(4711).get().getPort();
 
-    System.out.println("Server listening on 0.0.0.0:" + port);
+    System.out.println("Server listening on 0.0.0.0:" + port + " (transport: " + transport + ")");
   }
 
   private static ByteBuf payload() {
@@ -3,11 +3,23 @@ package io.norberg.http2.benchmarks;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.base64.Base64;
+import io.norberg.http2.Transport;
+import java.util.Locale;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 
 class BenchmarkUtil {
 
+  /**
+   * Parse the transport to benchmark from the first command line argument, e.g. "nio" or "epoll".
+   */
+  static Transport transport(final String... args) {
+    if (args.length == 0) {
+      return Transport.AUTO;
+    }
+    return Transport.valueOf(args[0].toUpperCase(Locale.ROOT));
+  }
+
   static ByteBuf[] payloads(final int size, final int n) {
     return IntStream.range(0, n).mapToObj(i -> payload(size)).toArray(ByteBuf[]::new);
   }
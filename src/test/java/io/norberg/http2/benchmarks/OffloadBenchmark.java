@@ -0,0 +1,126 @@
+package io.norberg.http2.benchmarks;
+
+import static io.netty.handler.codec.http.HttpMethod.GET;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.util.ResourceLeakDetector.Level.DISABLED;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.spotify.logging.LoggingConfigurator;
+import io.netty.util.AsciiString;
+import io.netty.util.ResourceLeakDetector;
+import io.norberg.http2.Http2Client;
+import io.norberg.http2.Http2Request;
+import io.norberg.http2.Http2Server;
+import io.norberg.http2.RequestHandler;
+import io.norberg.http2.Transport;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures the latency of fast requests that share a connection with requests whose handler blocks, with the request
+ * handler running on the event loop and offloaded to an executor.
+ */
+public class OffloadBenchmark {
+
+  private static final AsciiString FAST = AsciiString.of("/fast");
+  private static final AsciiString SLOW = AsciiString.of("/slow");
+
+  private static final long SLOW_HANDLER_MILLIS = 5;
+  private static final int SLOW_CONCURRENCY = 4;
+  private static final int FAST_REQUESTS = 10_000;
+
+  public static void main(final String... args) throws Exception {
+    LoggingConfigurator.configureNoLogging();
+    ResourceLeakDetector.setLevel(DISABLED);
+    final Transport transport = BenchmarkUtil.transport(args);
+
+    run("event loop", transport, null);
+
+    final ExecutorService pool = Executors.newFixedThreadPool(64);
+    run("thread pool", transport, pool);
+    pool.shutdownNow();
+
+    try {
+      run("virtual threads", transport, Http2Server.virtualThreadExecutor());
+    } catch (UnsupportedOperationException e) {
+      System.out.println("virtual threads: not supported by this JDK");
+    }
+  }
+
+  private static void run(final String mode, final Transport transport, final Executor executor) throws Exception {
+    final RequestHandler requestHandler = (context, request) -> {
+      if (request.path().equals(SLOW)) {
+        try {
+          Thread.sleep(SLOW_HANDLER_MILLIS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      request.release();
+      context.respond(request.response(OK));
+    };
+
+    final Http2Server server = Http2Server.builder()
+        .requestHandler(requestHandler)
+        .requestExecutor(executor)
+        .transport(transport)
+        .cleartext(true)
+        .build();
+    final int port = server.bind(0).get().getPort();
+
+    final Http2Client client = Http2Client.builder()
+        .address("127.0.0.1", port)
+        .transport(transport)
+        .cleartext(true)
+        .build();
+
+    // Warm up
+    for (int i = 0; i < 1000; i++) {
+      client.send(Http2Request.of(GET, FAST)).get(10, SECONDS);
+    }
+
+    // Keep slow requests in flight in the background
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final List<CompletableFuture<?>> slow = new ArrayList<>();
+    for (int i = 0; i < SLOW_CONCURRENCY; i++) {
+      slow.add(slowLoop(client, running));
+    }
+
+    // Measure fast requests sent one at a time
+    final long[] latencies = new long[FAST_REQUESTS];
+    for (int i = 0; i < FAST_REQUESTS; i++) {
+      final long start = System.nanoTime();
+      client.send(Http2Request.of(GET, FAST)).get(10, SECONDS);
+      latencies[i] = System.nanoTime() - start;
+    }
+
+    running.set(false);
+    CompletableFuture.allOf(slow.toArray(new CompletableFuture<?>[0])).get(10, SECONDS);
+    client.close().get(10, SECONDS);
+    server.close().get(10, SECONDS);
+
+    Arrays.sort(latencies);
+    System.out.printf("%s: fast request latency p50=%dus p99=%dus p999=%dus max=%dus%n", mode,
+        micros(latencies, 0.5), micros(latencies, 0.99), micros(latencies, 0.999), micros(latencies, 1.0));
+  }
+
+  private static CompletableFuture<Void> slowLoop(final Http2Client client, final AtomicBoolean running) {
+    if (!running.get()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return client.send(Http2Request.of(GET, SLOW))
+        .thenCompose(response -> slowLoop(client, running));
+  }
+
+  private static long micros(final long[] sorted, final double quantile) {
+    final int index = Math.min(sorted.length - 1, (int) (sorted.length * quantile));
+    return NANOSECONDS.toMicros(sorted[index]);
+  }
+}
@@ -4,14 +4,16 @@ import static io.netty.util.ResourceLeakDetector.Level.DISABLED;
 
 import com.spotify.logging.LoggingConfigurator;
 import io.netty.util.ResourceLeakDetector;
+import io.norberg.http2.Transport;
 
 public class ReqRepBenchmark {
 
   public static void main(final String... args) throws Exception {
     LoggingConfigurator.configureNoLogging();
     ResourceLeakDetector.setLevel(DISABLED);
-    BenchmarkServer.run();
-    BenchmarkClient.run();
+    final Transport transport = BenchmarkUtil.transport(args);
+    BenchmarkServer.run(transport);
+    BenchmarkClient.run(transport);
     while (true) {
       Thread.sleep(1000);
     }